@@ -0,0 +1,207 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic email addresses from a fixed seed, so that every run of a benchmark sees the same inputs.
+ *
+ * Roughly half of the generated addresses belong to a handful of popular mail providers. The remainder use generated
+ * domains with between two and five labels, weighted towards shallow domains. Localparts mix the common
+ * first.last, first_last, initial-last, name-with-digits, role account and plus-tagged shapes.
+ *
+ * Internationalized addresses have a Unicode localpart, and a Unicode domain under a Unicode or ASCII top level
+ * domain, in one of a few scripts.
+ */
+public class EmailAddressGenerator {
+    private static final String[] PROVIDERS = {"gmail.com", "yahoo.com", "outlook.com", "hotmail.com", "icloud.com", "aol.com"};
+    private static final String[] TLDS = {"com", "com", "com", "net", "org", "io", "de", "co.uk", "com.au"};
+    private static final String[] ROLES = {"info", "sales", "support", "admin", "noreply", "billing", "jobs"};
+    private static final String[] TAGS = {"news", "shopping", "spam", "work", "2016"};
+    private static final String[][] UNICODE_SYLLABLES = {
+            {"用", "户", "例", "子", "邮", "件", "测", "试", "网", "络"},
+            {"по", "ль", "зо", "ва", "те", "при", "мер", "поч", "та", "ки"},
+            {"δο", "κι", "μή", "πα", "ρά", "δει", "γμα", "τα", "χυ"},
+            {"मे", "ल", "डा", "टा", "उप", "यो", "ग", "क", "र्ता"}};
+    private static final String[][] UNICODE_TLDS = {{"中国", "广告", "com"}, {"рф", "рус", "com"}, {"ελ", "com"}, {"भारत", "in"}};
+    private static final String[] SYLLABLES = {"an", "ber", "co", "da", "el", "fi", "gan", "ho", "is", "jo", "ka", "li",
+            "mar", "no", "ol", "pe", "qu", "ro", "son", "ta", "ul", "vi", "wes", "xi", "yo", "zen"};
+
+    private final Random random;
+
+    public EmailAddressGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generate the given number of inputs.
+     * @param count the number of inputs to generate
+     * @param malformedRatio the fraction of inputs, between 0 and 1, which should be malformed
+     * @return the generated inputs
+     */
+    public String[] generate(int count, double malformedRatio) {
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            inputs[i] = random.nextDouble() < malformedRatio ? nextMalformed() : next();
+        }
+        return inputs;
+    }
+
+    /**
+     * @return a well formed address
+     */
+    public String next() {
+        return localpart() + "@" + domain();
+    }
+
+    /**
+     * @param count the number of inputs to generate
+     * @param unicodeRatio the fraction of inputs, between 0 and 1, which should be internationalized addresses
+     * @return well formed addresses, internationalized or ASCII
+     */
+    public String[] generateInternational(int count, double unicodeRatio) {
+        String[] inputs = new String[count];
+        for (int i = 0; i < count; i++) {
+            inputs[i] = random.nextDouble() < unicodeRatio ? nextInternational() : next();
+        }
+        return inputs;
+    }
+
+    /**
+     * @return an internationalized address
+     */
+    public String nextInternational() {
+        final int script = random.nextInt(UNICODE_SYLLABLES.length);
+        StringBuilder address = new StringBuilder(unicodeName(script));
+        if (random.nextInt(4) == 0) {
+            address.append('.').append(unicodeName(script));
+        }
+        address.append('@');
+        if (random.nextInt(4) == 0) {
+            address.append(unicodeName(script)).append('.');
+        }
+        address.append(unicodeName(script)).append('.');
+        final String[] tlds = UNICODE_TLDS[script];
+        return address.append(tlds[random.nextInt(tlds.length)]).toString();
+    }
+
+    /**
+     * @return a malformed address
+     */
+    public String nextMalformed() {
+        final String address = next();
+        final int at = address.indexOf('@');
+        switch (random.nextInt(5)) {
+            case 0:
+                // missing '@'
+                return address.substring(0, at) + address.substring(at + 1);
+            case 1:
+                // multiple '@'
+                return address.substring(0, at) + "@" + address.replace('.', '@');
+            case 2:
+                // display name which was not split off
+                return name() + " " + name() + " <" + address + ">";
+            case 3:
+                // missing top level domain
+                return address.substring(0, address.lastIndexOf('.'));
+            default:
+                // long junk
+                StringBuilder junk = new StringBuilder();
+                final int words = 10 + random.nextInt(90);
+                for (int i = 0; i < words; i++) {
+                    junk.append(name()).append(' ');
+                }
+                return junk.toString();
+        }
+    }
+
+
+    /**
+     * @param count the number of words to generate
+     * @return distinct words of one to four syllables, from which the names in localparts are made
+     */
+    public String[] words(int count) {
+        final Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            StringBuilder word = new StringBuilder();
+            final int syllables = 1 + random.nextInt(4);
+            for (int i = 0; i < syllables; i++) {
+                word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            words.add(word.toString());
+        }
+        return words.toArray(new String[count]);
+    }
+
+
+    private String localpart() {
+        final String localpart;
+        final int shape = random.nextInt(100);
+        if (shape < 35) {
+            localpart = name() + "." + name();
+        } else if (shape < 55) {
+            localpart = name() + name() + (1950 + random.nextInt(60));
+        } else if (shape < 65) {
+            localpart = name() + "_" + name();
+        } else if (shape < 80) {
+            localpart = name().charAt(0) + name();
+        } else if (shape < 90) {
+            localpart = ROLES[random.nextInt(ROLES.length)];
+        } else {
+            localpart = name() + "-" + name() + "-" + random.nextInt(1000);
+        }
+        if (random.nextInt(10) == 0) {
+            return localpart + "+" + TAGS[random.nextInt(TAGS.length)];
+        }
+        return localpart;
+    }
+
+
+    private String domain() {
+        if (random.nextBoolean()) {
+            return PROVIDERS[random.nextInt(PROVIDERS.length)];
+        }
+        final int depth = random.nextInt(100);
+        final int labels;
+        if (depth < 60) {
+            labels = 1;
+        } else if (depth < 88) {
+            labels = 2;
+        } else if (depth < 97) {
+            labels = 3;
+        } else {
+            labels = 4;
+        }
+        StringBuilder domain = new StringBuilder();
+        for (int i = 0; i < labels; i++) {
+            domain.append(name());
+            if (i == 0 && random.nextInt(5) == 0) {
+                domain.append('-').append(name());
+            }
+            domain.append('.');
+        }
+        return domain.append(TLDS[random.nextInt(TLDS.length)]).toString();
+    }
+
+
+    private String unicodeName(int script) {
+        final String[] syllables = UNICODE_SYLLABLES[script];
+        StringBuilder name = new StringBuilder();
+        final int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            name.append(syllables[random.nextInt(syllables.length)]);
+        }
+        return name.toString();
+    }
+
+
+    private String name() {
+        StringBuilder name = new StringBuilder();
+        final int syllables = 1 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return name.toString();
+    }
+}
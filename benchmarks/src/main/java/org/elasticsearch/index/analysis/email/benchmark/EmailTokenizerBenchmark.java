@@ -0,0 +1,73 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of tokenizing a single document with a reused tokenizer, as Elasticsearch does when indexing,
+ * for each meaningful {@link org.elasticsearch.index.analysis.EmailTokenizerFactory} configuration.
+ *
+ * Run with {@code -prof gc} to also measure the allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EmailTokenizerBenchmark {
+    static final long SEED = 0x5eed;
+    static final int CORPUS_SIZE = 10000;
+
+    /**
+     * Fraction of the inputs which are malformed when malformed addresses are allowed.
+     */
+    static final double MALFORMED_RATIO = 0.1;
+
+    @Param({"all", "part_whole", "part_localpart", "part_domain", "no_tokenize_domain", "no_split_on_plus",
+            "split_localpart_1", "split_localpart_3", "split_localpart_6", "split_localpart_combined",
+            "domain_depth", "domain_reversed", "registrable_domain", "edge_ngrams", "localpart_dictionary", "canonicalize", "allow_unicode", "hash_tokens",
+            "allow_malformed"})
+    public String configuration;
+
+    private String[] corpus;
+    private int next;
+    private Tokenizer tokenizer;
+    private final ReusableStringReader reader = new ReusableStringReader();
+
+    @Setup
+    public void setUp() {
+        final double malformedRatio = "allow_malformed".equals(configuration) ? MALFORMED_RATIO : 0;
+        corpus = new EmailAddressGenerator(SEED).generate(CORPUS_SIZE, malformedRatio);
+        tokenizer = EmailTokenizerFactories.create(configuration).create();
+    }
+
+    @Benchmark
+    public int tokenize() throws IOException {
+        if (next == corpus.length) {
+            next = 0;
+        }
+        tokenizer.setReader(reader.setValue(corpus[next++]));
+        tokenizer.reset();
+        int tokens = 0;
+        while (tokenizer.incrementToken()) {
+            tokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return tokens;
+    }
+}
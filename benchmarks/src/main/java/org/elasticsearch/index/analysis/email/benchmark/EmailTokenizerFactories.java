@@ -0,0 +1,141 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStatsService;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.settings.IndexSettingsService;
+
+/**
+ * Builds {@link EmailTokenizerFactory} instances outside of a node, for each of the configurations being benchmarked.
+ */
+public final class EmailTokenizerFactories {
+    private static final Index INDEX = new Index("benchmark");
+    private static final Settings INDEX_SETTINGS = Settings.builder()
+            .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+            .build();
+    private static final EmailTokenizerStatsService STATS_SERVICE = new EmailTokenizerStatsService(Settings.EMPTY);
+    private static final Environment ENVIRONMENT;
+    private static final PublicSuffixListService PUBLIC_SUFFIXES;
+
+    static {
+        // there is no list in the temporary config directory, so the bundled list is used
+        Settings nodeSettings = Settings.builder().put("path.home", System.getProperty("java.io.tmpdir")).build();
+        ENVIRONMENT = new Environment(nodeSettings);
+        PUBLIC_SUFFIXES = new PublicSuffixListService(nodeSettings, ENVIRONMENT);
+    }
+
+    private EmailTokenizerFactories() { }
+
+    /**
+     * @param configuration the name of a benchmarked configuration
+     * @return the tokenizer settings for the given configuration
+     */
+    public static Settings settings(String configuration) {
+        Settings.Builder builder = Settings.builder().put("type", "email");
+        switch (configuration) {
+            case "all":
+                break;
+            case "part_whole":
+                builder.put("part", "whole");
+                break;
+            case "part_localpart":
+                builder.put("part", "localpart");
+                break;
+            case "part_domain":
+                builder.put("part", "domain");
+                break;
+            case "no_tokenize_domain":
+                builder.put("tokenize_domain", false);
+                break;
+            case "no_split_on_plus":
+                builder.put("split_on_plus", false);
+                break;
+            case "split_localpart_1":
+                builder.putArray("split_localpart", ".");
+                break;
+            case "split_localpart_3":
+                builder.putArray("split_localpart", ".", "-", "_");
+                break;
+            case "split_localpart_6":
+                builder.putArray("split_localpart", ".", "-", "_", "+", "--", "__");
+                break;
+            case "split_localpart_combined":
+                builder.putArray("split_localpart", ".", "-", "_", "+", "--", "__");
+                builder.put("split_localpart_combined", true);
+                break;
+            case "domain_depth":
+                builder.put("min_domain_depth", 2);
+                builder.put("max_domain_depth", 3);
+                break;
+            case "domain_reversed":
+                builder.put("domain_format", "reversed");
+                break;
+            case "allow_unicode":
+                builder.put("allow_unicode", true);
+                break;
+            case "idn_ascii":
+                builder.put("allow_unicode", true);
+                builder.put("idn_format", "ascii");
+                break;
+            case "idn_both":
+                builder.put("allow_unicode", true);
+                builder.put("idn_format", "both");
+                break;
+            case "token_cache":
+                builder.put("token_cache_size", 1024);
+                break;
+            case "hash_tokens_cached":
+                builder.put("hash_tokens", true);
+                builder.put("token_cache_size", 1024);
+                break;
+            case "hash_tokens":
+                builder.put("hash_tokens", true);
+                break;
+            case "canonicalize":
+                builder.put("canonicalize", true);
+                builder.putArray("canonical_rules", "gmail.com, googlemail.com: lowercase ignore_dots strip_tag alias=gmail.com",
+                        "*: strip_tag");
+                break;
+            case "edge_ngrams":
+                builder.put("edge_ngrams", true);
+                builder.put("min_gram", 2);
+                builder.put("max_gram", 8);
+                break;
+            case "localpart_dictionary":
+                builder.putArray("localpart_dictionary", new EmailAddressGenerator(EmailTokenizerBenchmark.SEED).words(10000));
+                break;
+            case "registrable_domain":
+                builder.put("registrable_domain", true);
+                break;
+            case "allow_malformed":
+                builder.put("allow_malformed", true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown configuration: " + configuration);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param configuration the name of a benchmarked configuration
+     * @return a factory for the given configuration
+     */
+    public static EmailTokenizerFactory create(String configuration) {
+        return create(configuration, settings(configuration));
+    }
+
+    /**
+     * @param name the name of the tokenizer
+     * @param settings the tokenizer's settings
+     * @return a factory for the given settings
+     */
+    public static EmailTokenizerFactory create(String name, Settings settings) {
+        return new EmailTokenizerFactory(INDEX, new IndexSettingsService(INDEX, INDEX_SETTINGS), ENVIRONMENT, STATS_SERVICE,
+                PUBLIC_SUFFIXES, name, settings);
+    }
+}
@@ -0,0 +1,79 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of tokenizing internationalized addresses, on corpora of only ASCII addresses, of one
+ * internationalized address in ten, and of only internationalized addresses. The cost of accepting Unicode on ASCII
+ * input is measured against the default configuration by the {@code all} and {@code allow_unicode} configurations of
+ * {@link EmailTokenizerBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InternationalEmailBenchmark {
+    @Param({"ascii", "mixed", "unicode"})
+    public String corpus;
+
+    @Param({"allow_unicode", "idn_ascii", "idn_both"})
+    public String configuration;
+
+    private String[] inputs;
+    private int next;
+    private Tokenizer tokenizer;
+    private final ReusableStringReader reader = new ReusableStringReader();
+
+    @Setup
+    public void setUp() {
+        final double unicodeRatio;
+        switch (corpus) {
+            case "ascii":
+                unicodeRatio = 0;
+                break;
+            case "mixed":
+                unicodeRatio = 0.1;
+                break;
+            case "unicode":
+                unicodeRatio = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+        inputs = new EmailAddressGenerator(EmailTokenizerBenchmark.SEED)
+                .generateInternational(EmailTokenizerBenchmark.CORPUS_SIZE, unicodeRatio);
+        tokenizer = EmailTokenizerFactories.create(configuration).create();
+    }
+
+    @Benchmark
+    public int tokenize() throws IOException {
+        if (next == inputs.length) {
+            next = 0;
+        }
+        tokenizer.setReader(reader.setValue(inputs[next++]));
+        tokenizer.reset();
+        int tokens = 0;
+        while (tokenizer.incrementToken()) {
+            tokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return tokens;
+    }
+}
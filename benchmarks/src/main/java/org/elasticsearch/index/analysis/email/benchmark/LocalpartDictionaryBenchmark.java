@@ -0,0 +1,74 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.analysis.email.LocalpartDictionary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures localpart segmentation with dictionaries of a thousand to a hundred thousand words, against the default
+ * configuration. The heap used by each compiled dictionary is printed when it is built, as it is shared by every
+ * tokenizer of a factory rather than paid per document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class LocalpartDictionaryBenchmark {
+    @Param({"0", "1000", "10000", "100000"})
+    public int words;
+
+    private String[] inputs;
+    private int next;
+    private Tokenizer tokenizer;
+    private final ReusableStringReader reader = new ReusableStringReader();
+
+    @Setup
+    public void setUp() {
+        inputs = new EmailAddressGenerator(EmailTokenizerBenchmark.SEED).generate(EmailTokenizerBenchmark.CORPUS_SIZE, 0);
+        final Settings.Builder settings = Settings.builder().put(EmailTokenizerFactories.settings("all"));
+        if (words > 0) {
+            settings.putArray("localpart_dictionary", new EmailAddressGenerator(EmailTokenizerBenchmark.SEED).words(words));
+        }
+        final EmailTokenizerFactory factory = EmailTokenizerFactories.create("localpart_dictionary", settings.build());
+        final LocalpartDictionary dictionary = factory.getLocalpartDictionary();
+        if (dictionary != null) {
+            System.out.println(String.format(Locale.ROOT, "localpart dictionary of %d words: %d bytes, %.1f bytes per word",
+                    dictionary.wordCount(), dictionary.ramBytesUsed(), (double) dictionary.ramBytesUsed() / dictionary.wordCount()));
+        }
+        tokenizer = factory.create();
+    }
+
+    @Benchmark
+    public int tokenize() throws IOException {
+        if (next == inputs.length) {
+            next = 0;
+        }
+        tokenizer.setReader(reader.setValue(inputs[next++]));
+        tokenizer.reset();
+        int tokens = 0;
+        while (tokenizer.incrementToken()) {
+            tokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return tokens;
+    }
+}
@@ -0,0 +1,33 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import java.io.Reader;
+
+/**
+ * A {@link Reader} over a string which can be pointed at a new string without allocating, so that benchmarks measure
+ * the tokenizer rather than the creation of readers.
+ */
+public final class ReusableStringReader extends Reader {
+    private String value;
+    private int position;
+
+    public ReusableStringReader setValue(String value) {
+        this.value = value;
+        this.position = 0;
+        return this;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+        if (position >= value.length()) {
+            return -1;
+        }
+        final int count = Math.min(length, value.length() - position);
+        value.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
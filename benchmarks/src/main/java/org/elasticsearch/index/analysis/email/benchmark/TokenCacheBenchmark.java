@@ -0,0 +1,68 @@
+package org.elasticsearch.index.analysis.email.benchmark;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the token cache on inputs which repeat a given number of distinct addresses, from a few senders which fit
+ * in the cache many times over, to more distinct addresses than the cache holds, which mostly miss.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TokenCacheBenchmark {
+    @Param({"16", "1024", "10000"})
+    public int distinct;
+
+    @Param({"all", "token_cache", "hash_tokens", "hash_tokens_cached"})
+    public String configuration;
+
+    private String[] inputs;
+    private int next;
+    private Tokenizer tokenizer;
+    private final ReusableStringReader reader = new ReusableStringReader();
+
+    @Setup
+    public void setUp() {
+        final String[] addresses = new EmailAddressGenerator(EmailTokenizerBenchmark.SEED).generate(distinct, 0);
+        final Random random = new Random(EmailTokenizerBenchmark.SEED);
+        inputs = new String[EmailTokenizerBenchmark.CORPUS_SIZE];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = addresses[random.nextInt(addresses.length)];
+        }
+        tokenizer = EmailTokenizerFactories.create(configuration).create();
+    }
+
+    @Benchmark
+    public int tokenize() throws IOException {
+        if (next == inputs.length) {
+            next = 0;
+        }
+        tokenizer.setReader(reader.setValue(inputs[next++]));
+        tokenizer.reset();
+        int tokens = 0;
+        while (tokenizer.incrementToken()) {
+            tokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+        return tokens;
+    }
+}
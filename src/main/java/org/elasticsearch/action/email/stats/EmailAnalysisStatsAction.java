@@ -0,0 +1,26 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Retrieves the {@link org.elasticsearch.index.analysis.email.TokenizerStats} of the email tokenizers on each node.
+ */
+public class EmailAnalysisStatsAction extends Action<EmailAnalysisStatsRequest, EmailAnalysisStatsResponse, EmailAnalysisStatsRequestBuilder> {
+    public static final EmailAnalysisStatsAction INSTANCE = new EmailAnalysisStatsAction();
+    public static final String NAME = "cluster:monitor/email_analysis/stats";
+
+    private EmailAnalysisStatsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public EmailAnalysisStatsResponse newResponse() {
+        return new EmailAnalysisStatsResponse();
+    }
+
+    @Override
+    public EmailAnalysisStatsRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new EmailAnalysisStatsRequestBuilder(client, this);
+    }
+}
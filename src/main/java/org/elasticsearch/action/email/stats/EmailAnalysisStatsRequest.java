@@ -0,0 +1,14 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodesRequest;
+
+/**
+ * A request for the email tokenizer stats of the given nodes, or of all nodes if none are given.
+ */
+public class EmailAnalysisStatsRequest extends BaseNodesRequest<EmailAnalysisStatsRequest> {
+    public EmailAnalysisStatsRequest() { }
+
+    public EmailAnalysisStatsRequest(String... nodesIds) {
+        super(nodesIds);
+    }
+}
@@ -0,0 +1,10 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.support.nodes.NodesOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class EmailAnalysisStatsRequestBuilder extends NodesOperationRequestBuilder<EmailAnalysisStatsRequest, EmailAnalysisStatsResponse, EmailAnalysisStatsRequestBuilder> {
+    public EmailAnalysisStatsRequestBuilder(ElasticsearchClient client, EmailAnalysisStatsAction action) {
+        super(client, action, new EmailAnalysisStatsRequest());
+    }
+}
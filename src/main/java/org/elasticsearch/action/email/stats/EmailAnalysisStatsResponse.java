@@ -0,0 +1,108 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodesResponse;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.index.analysis.email.TokenizerStats;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The email tokenizer stats of each node. Rendered as the stats of each tokenizer summed across all nodes, and
+ * additionally broken down by node if the {@code level} param is {@code node}.
+ */
+public class EmailAnalysisStatsResponse extends BaseNodesResponse<NodeEmailAnalysisStats> implements ToXContent {
+    EmailAnalysisStatsResponse() { }
+
+    public EmailAnalysisStatsResponse(ClusterName clusterName, NodeEmailAnalysisStats[] nodes) {
+        super(clusterName, nodes);
+    }
+
+
+    /**
+     * @return the stats of each tokenizer, summed across all nodes, keyed by tokenizer name
+     */
+    public Map<String, TokenizerStats> getTokenizers() {
+        final Map<String, TokenizerStats> tokenizers = new TreeMap<>();
+        for (NodeEmailAnalysisStats node : nodes) {
+            for (Map.Entry<String, TokenizerStats> entry : node.getTokenizers().entrySet()) {
+                TokenizerStats total = tokenizers.get(entry.getKey());
+                if (total == null) {
+                    total = new TokenizerStats();
+                    tokenizers.put(entry.getKey(), total);
+                }
+                total.add(entry.getValue());
+            }
+        }
+        return tokenizers;
+    }
+
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        nodes = new NodeEmailAnalysisStats[in.readVInt()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = NodeEmailAnalysisStats.readNodeStats(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(nodes.length);
+        for (NodeEmailAnalysisStats node : nodes) {
+            node.writeTo(out);
+        }
+    }
+
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.CLUSTER_NAME, getClusterName().value());
+        builder.startObject(Fields.NODES_COUNT);
+        builder.field(Fields.TOTAL, nodes.length);
+        builder.field(Fields.FAILED, failures() == null ? 0 : failures().length);
+        builder.endObject();
+
+        tokenizersToXContent(builder, params, getTokenizers());
+
+        if ("node".equals(params.param("level"))) {
+            builder.startObject(Fields.NODES);
+            for (NodeEmailAnalysisStats node : nodes) {
+                builder.startObject(node.getNode().id());
+                builder.field(Fields.NAME, node.getNode().name());
+                tokenizersToXContent(builder, params, new TreeMap<>(node.getTokenizers()));
+                builder.endObject();
+            }
+            builder.endObject();
+        }
+        return builder;
+    }
+
+    private static void tokenizersToXContent(XContentBuilder builder, Params params, Map<String, TokenizerStats> tokenizers) throws IOException {
+        builder.startObject(Fields.TOKENIZERS);
+        for (Map.Entry<String, TokenizerStats> entry : tokenizers.entrySet()) {
+            builder.startObject(entry.getKey());
+            entry.getValue().toXContent(builder, params);
+            builder.endObject();
+        }
+        builder.endObject();
+    }
+
+    static final class Fields {
+        static final XContentBuilderString CLUSTER_NAME = new XContentBuilderString("cluster_name");
+        static final XContentBuilderString NODES_COUNT = new XContentBuilderString("_nodes");
+        static final XContentBuilderString NODES = new XContentBuilderString("nodes");
+        static final XContentBuilderString TOTAL = new XContentBuilderString("total");
+        static final XContentBuilderString FAILED = new XContentBuilderString("failed");
+        static final XContentBuilderString NAME = new XContentBuilderString("name");
+        static final XContentBuilderString TOKENIZERS = new XContentBuilderString("tokenizers");
+    }
+}
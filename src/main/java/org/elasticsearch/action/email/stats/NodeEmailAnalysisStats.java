@@ -0,0 +1,57 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.support.nodes.BaseNodeResponse;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.analysis.email.TokenizerStats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The stats of each email tokenizer on a single node, keyed by tokenizer name.
+ */
+public class NodeEmailAnalysisStats extends BaseNodeResponse {
+    private Map<String, TokenizerStats> tokenizers;
+
+    NodeEmailAnalysisStats() { }
+
+    public NodeEmailAnalysisStats(DiscoveryNode node, Map<String, TokenizerStats> tokenizers) {
+        super(node);
+        this.tokenizers = tokenizers;
+    }
+
+
+    public Map<String, TokenizerStats> getTokenizers() {
+        return tokenizers;
+    }
+
+
+    public static NodeEmailAnalysisStats readNodeStats(StreamInput in) throws IOException {
+        NodeEmailAnalysisStats stats = new NodeEmailAnalysisStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        final int size = in.readVInt();
+        tokenizers = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            tokenizers.put(in.readString(), TokenizerStats.readTokenizerStats(in));
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(tokenizers.size());
+        for (Map.Entry<String, TokenizerStats> entry : tokenizers.entrySet()) {
+            out.writeString(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.elasticsearch.action.email.stats;
+
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.nodes.BaseNodeRequest;
+import org.elasticsearch.action.support.nodes.TransportNodesAction;
+import org.elasticsearch.cluster.ClusterName;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStatsService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class TransportEmailAnalysisStatsAction extends TransportNodesAction<EmailAnalysisStatsRequest, EmailAnalysisStatsResponse,
+        TransportEmailAnalysisStatsAction.NodeRequest, NodeEmailAnalysisStats> {
+    private final EmailTokenizerStatsService statsService;
+
+    @Inject
+    public TransportEmailAnalysisStatsAction(Settings settings, ClusterName clusterName, ThreadPool threadPool, ClusterService clusterService,
+                                             TransportService transportService, EmailTokenizerStatsService statsService,
+                                             ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(settings, EmailAnalysisStatsAction.NAME, clusterName, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, EmailAnalysisStatsRequest.class, NodeRequest.class, ThreadPool.Names.MANAGEMENT);
+        this.statsService = statsService;
+    }
+
+    @Override
+    protected EmailAnalysisStatsResponse newResponse(EmailAnalysisStatsRequest request, AtomicReferenceArray responses) {
+        final List<NodeEmailAnalysisStats> nodeStats = new ArrayList<>();
+        for (int i = 0; i < responses.length(); i++) {
+            Object response = responses.get(i);
+            if (response instanceof NodeEmailAnalysisStats) {
+                nodeStats.add((NodeEmailAnalysisStats) response);
+            }
+        }
+        return new EmailAnalysisStatsResponse(clusterName, nodeStats.toArray(new NodeEmailAnalysisStats[nodeStats.size()]));
+    }
+
+    @Override
+    protected NodeRequest newNodeRequest(String nodeId, EmailAnalysisStatsRequest request) {
+        return new NodeRequest(nodeId, request);
+    }
+
+    @Override
+    protected NodeEmailAnalysisStats newNodeResponse() {
+        return new NodeEmailAnalysisStats();
+    }
+
+    @Override
+    protected NodeEmailAnalysisStats nodeOperation(NodeRequest request) {
+        return new NodeEmailAnalysisStats(clusterService.localNode(), statsService.stats());
+    }
+
+    @Override
+    protected boolean accumulateExceptions() {
+        return false;
+    }
+
+
+    public static class NodeRequest extends BaseNodeRequest {
+        EmailAnalysisStatsRequest request;
+
+        public NodeRequest() { }
+
+        NodeRequest(String nodeId, EmailAnalysisStatsRequest request) {
+            super(request, nodeId);
+            this.request = request;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            request = new EmailAnalysisStatsRequest();
+            request.readFrom(in);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            request.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.elasticsearch.action.email.tokenize;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.ElasticsearchClient;
+
+/**
+ * Tokenizes a batch of addresses with one of an index's email tokenizers.
+ */
+public class EmailTokenizeAction extends Action<EmailTokenizeRequest, EmailTokenizeResponse, EmailTokenizeRequestBuilder> {
+    public static final EmailTokenizeAction INSTANCE = new EmailTokenizeAction();
+    public static final String NAME = "indices:admin/email/tokenize";
+
+    private EmailTokenizeAction() {
+        super(NAME);
+    }
+
+    @Override
+    public EmailTokenizeResponse newResponse() {
+        return new EmailTokenizeResponse();
+    }
+
+    @Override
+    public EmailTokenizeRequestBuilder newRequestBuilder(ElasticsearchClient client) {
+        return new EmailTokenizeRequestBuilder(client, this);
+    }
+}
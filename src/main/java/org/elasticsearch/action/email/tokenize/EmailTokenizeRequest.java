@@ -0,0 +1,75 @@
+package org.elasticsearch.action.email.tokenize;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.single.shard.SingleShardRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * A request to tokenize a batch of addresses with the named email tokenizer of an index.
+ */
+public class EmailTokenizeRequest extends SingleShardRequest<EmailTokenizeRequest> {
+    private String tokenizer;
+    private String[] addresses = Strings.EMPTY_ARRAY;
+
+    public EmailTokenizeRequest() { }
+
+    public EmailTokenizeRequest(String index) {
+        super(index);
+    }
+
+
+    /**
+     * @param tokenizer the name of an email tokenizer in the index's analysis settings
+     */
+    public EmailTokenizeRequest tokenizer(String tokenizer) {
+        this.tokenizer = tokenizer;
+        return this;
+    }
+
+    public String tokenizer() {
+        return tokenizer;
+    }
+
+    public EmailTokenizeRequest addresses(String... addresses) {
+        this.addresses = addresses;
+        return this;
+    }
+
+    public String[] addresses() {
+        return addresses;
+    }
+
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = validateNonNullIndex();
+        if (tokenizer == null) {
+            validationException = addValidationError("tokenizer is missing", validationException);
+        }
+        if (addresses == null) {
+            validationException = addValidationError("addresses are missing", validationException);
+        }
+        return validationException;
+    }
+
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        tokenizer = in.readString();
+        addresses = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(tokenizer);
+        out.writeStringArray(addresses);
+    }
+}
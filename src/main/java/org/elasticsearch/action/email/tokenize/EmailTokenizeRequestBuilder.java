@@ -0,0 +1,20 @@
+package org.elasticsearch.action.email.tokenize;
+
+import org.elasticsearch.action.support.single.shard.SingleShardOperationRequestBuilder;
+import org.elasticsearch.client.ElasticsearchClient;
+
+public class EmailTokenizeRequestBuilder extends SingleShardOperationRequestBuilder<EmailTokenizeRequest, EmailTokenizeResponse, EmailTokenizeRequestBuilder> {
+    public EmailTokenizeRequestBuilder(ElasticsearchClient client, EmailTokenizeAction action) {
+        super(client, action, new EmailTokenizeRequest());
+    }
+
+    public EmailTokenizeRequestBuilder setTokenizer(String tokenizer) {
+        request.tokenizer(tokenizer);
+        return this;
+    }
+
+    public EmailTokenizeRequestBuilder setAddresses(String... addresses) {
+        request.addresses(addresses);
+        return this;
+    }
+}
@@ -0,0 +1,167 @@
+package org.elasticsearch.action.email.tokenize;
+
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+
+import java.io.IOException;
+
+/**
+ * The tokens of each address of an {@link EmailTokenizeRequest}, in the order of the request's addresses.
+ */
+public class EmailTokenizeResponse extends ActionResponse implements ToXContent {
+    static final Token[] NO_TOKENS = new Token[0];
+
+    private Token[][] tokens;
+    private long tookInMillis;
+
+    EmailTokenizeResponse() { }
+
+    public EmailTokenizeResponse(Token[][] tokens, long tookInMillis) {
+        this.tokens = tokens;
+        this.tookInMillis = tookInMillis;
+    }
+
+
+    /**
+     * @return the number of addresses tokenized
+     */
+    public int getAddressCount() {
+        return tokens.length;
+    }
+
+    /**
+     * @param address the index of an address in the request
+     * @return the tokens of the given address
+     */
+    public Token[] getTokens(int address) {
+        return tokens[address];
+    }
+
+    public long getTookInMillis() {
+        return tookInMillis;
+    }
+
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        tookInMillis = in.readVLong();
+        tokens = new Token[in.readVInt()][];
+        for (int i = 0; i < tokens.length; i++) {
+            final int count = in.readVInt();
+            tokens[i] = count == 0 ? NO_TOKENS : new Token[count];
+            for (int j = 0; j < count; j++) {
+                tokens[i][j] = Token.readToken(in);
+            }
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(tookInMillis);
+        out.writeVInt(tokens.length);
+        for (Token[] addressTokens : tokens) {
+            out.writeVInt(addressTokens.length);
+            for (Token token : addressTokens) {
+                token.writeTo(out);
+            }
+        }
+    }
+
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.TOOK, tookInMillis);
+        builder.startArray(Fields.ADDRESSES);
+        for (Token[] addressTokens : tokens) {
+            builder.startObject();
+            builder.startArray(Fields.TOKENS);
+            for (Token token : addressTokens) {
+                token.toXContent(builder, params);
+            }
+            builder.endArray();
+            builder.endObject();
+        }
+        builder.endArray();
+        return builder;
+    }
+
+
+    /**
+     * One token of an address.
+     */
+    public static final class Token implements ToXContent {
+        private final String term;
+        private final String type;
+        private final int startOffset;
+        private final int endOffset;
+        private final int position;
+
+        public Token(String term, String type, int startOffset, int endOffset, int position) {
+            this.term = term;
+            this.type = type;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.position = position;
+        }
+
+        public String getTerm() {
+            return term;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        public int getEndOffset() {
+            return endOffset;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        static Token readToken(StreamInput in) throws IOException {
+            return new Token(in.readString(), in.readString(), in.readVInt(), in.readVInt(), in.readVInt());
+        }
+
+        void writeTo(StreamOutput out) throws IOException {
+            out.writeString(term);
+            out.writeString(type);
+            out.writeVInt(startOffset);
+            out.writeVInt(endOffset);
+            out.writeVInt(position);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field(Fields.TOKEN, term);
+            builder.field(Fields.START_OFFSET, startOffset);
+            builder.field(Fields.END_OFFSET, endOffset);
+            builder.field(Fields.TYPE, type);
+            builder.field(Fields.POSITION, position);
+            return builder.endObject();
+        }
+    }
+
+    static final class Fields {
+        static final XContentBuilderString TOOK = new XContentBuilderString("took");
+        static final XContentBuilderString ADDRESSES = new XContentBuilderString("addresses");
+        static final XContentBuilderString TOKENS = new XContentBuilderString("tokens");
+        static final XContentBuilderString TOKEN = new XContentBuilderString("token");
+        static final XContentBuilderString START_OFFSET = new XContentBuilderString("start_offset");
+        static final XContentBuilderString END_OFFSET = new XContentBuilderString("end_offset");
+        static final XContentBuilderString TYPE = new XContentBuilderString("type");
+        static final XContentBuilderString POSITION = new XContentBuilderString("position");
+    }
+}
@@ -0,0 +1,215 @@
+package org.elasticsearch.action.email.tokenize;
+
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeResponse.Token;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.single.shard.TransportSingleShardAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.ShardsIterator;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.FastStringReader;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.analysis.TokenizerFactory;
+import org.elasticsearch.index.analysis.email.MalformedEmailException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes the addresses of a request on any node holding a shard of the index. The addresses are split into
+ * contiguous chunks, one per thread of the {@value #THREAD_POOL} thread pool plus one which the calling thread
+ * tokenizes itself. Each thread of the pool tokenizes with a tokenizer of its own, which it reuses for every address of
+ * every request, as Elasticsearch reuses a tokenizer per thread when indexing. The calling thread belongs to the
+ * unbounded generic pool, so it uses a new tokenizer for each request rather than keeping one. Each chunk writes the tokens of its addresses
+ * into its own range of the results, so the results are in the order of the request without any further sorting.
+ */
+public class TransportEmailTokenizeAction extends TransportSingleShardAction<EmailTokenizeRequest, EmailTokenizeResponse> {
+    /**
+     * A fixed thread pool, sized to the number of processors by default, which tokenizes the chunks of every request on
+     * the node. Its size and queue size may be set with {@code threadpool.email_tokenize.size} and
+     * {@code threadpool.email_tokenize.queue_size}.
+     */
+    public static final String THREAD_POOL = "email_tokenize";
+
+    /**
+     * Requests are not split into chunks smaller than this, as handing a chunk to another thread costs more than
+     * tokenizing a few addresses.
+     */
+    static final int MIN_CHUNK_SIZE = 256;
+
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportEmailTokenizeAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                        TransportService transportService, IndicesService indicesService,
+                                        ActionFilters actionFilters, IndexNameExpressionResolver indexNameExpressionResolver) {
+        // the shard operation tokenizes one chunk and waits for the rest, which run on the email_tokenize pool; waiting
+        // on that pool itself could deadlock once every thread was waiting
+        super(settings, EmailTokenizeAction.NAME, threadPool, clusterService, transportService, actionFilters,
+                indexNameExpressionResolver, EmailTokenizeRequest.class, ThreadPool.Names.GENERIC);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected EmailTokenizeResponse newResponse() {
+        return new EmailTokenizeResponse();
+    }
+
+    @Override
+    protected boolean resolveIndex(EmailTokenizeRequest request) {
+        return true;
+    }
+
+    @Override
+    protected ShardsIterator shards(ClusterState state, InternalRequest request) {
+        return state.routingTable().index(request.concreteIndex()).randomAllActiveShardsIt();
+    }
+
+    @Override
+    protected EmailTokenizeResponse shardOperation(EmailTokenizeRequest request, ShardId shardId) {
+        final long start = System.nanoTime();
+        final TokenizerFactory tokenizerFactory = indicesService.indexServiceSafe(shardId.getIndex()).analysisService().tokenizer(request.tokenizer());
+        if (!(tokenizerFactory instanceof EmailTokenizerFactory)) {
+            throw new IllegalArgumentException("failed to find email tokenizer [" + request.tokenizer() + "]");
+        }
+        final EmailTokenizerFactory factory = (EmailTokenizerFactory) tokenizerFactory;
+
+        final String[] addresses = request.addresses();
+        final Token[][] tokens = new Token[addresses.length][];
+        // the calling thread tokenizes the last chunk itself, rather than only waiting for the others
+        final int chunks = chunkCount(addresses.length, threadPool.info(THREAD_POOL).getMax() + 1);
+        final Executor executor = threadPool.executor(THREAD_POOL);
+        final List<FutureTask<Void>> tasks = new ArrayList<>(chunks - 1);
+        try {
+            for (int chunk = 0; chunk < chunks - 1; chunk++) {
+                final FutureTask<Void> task = new FutureTask<>(chunk(factory, addresses, tokens, chunk, chunks, true));
+                executor.execute(task);
+                tasks.add(task);
+            }
+            chunk(factory, addresses, tokens, chunks - 1, chunks, false).call();
+            for (FutureTask<Void> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            cancel(tasks);
+            Thread.currentThread().interrupt();
+            throw new ElasticsearchException("interrupted while tokenizing addresses", e);
+        } catch (ExecutionException e) {
+            cancel(tasks);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ElasticsearchException("failed to tokenize addresses", e.getCause());
+        } catch (IOException e) {
+            cancel(tasks);
+            throw new ElasticsearchException("failed to tokenize addresses", e);
+        } catch (RuntimeException e) {
+            // including rejection by a full queue, which leaves the chunks already submitted with nobody waiting on them
+            cancel(tasks);
+            throw e;
+        }
+        return new EmailTokenizeResponse(tokens, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+
+    /**
+     * @param pooled whether the chunk runs on the {@value #THREAD_POOL} thread pool, and may use its thread's tokenizer
+     * @return the given chunk of the given number of chunks of the addresses
+     */
+    private static Chunk chunk(EmailTokenizerFactory factory, String[] addresses, Token[][] tokens, int chunk, int chunks,
+                               boolean pooled) {
+        final int from = (int) ((long) addresses.length * chunk / chunks);
+        final int to = (int) ((long) addresses.length * (chunk + 1) / chunks);
+        return new Chunk(factory, addresses, tokens, from, to, pooled);
+    }
+
+
+    /**
+     * Cancel the given chunks, so that those which have not started never run.
+     */
+    private static void cancel(List<FutureTask<Void>> tasks) {
+        for (FutureTask<Void> task : tasks) {
+            task.cancel(false);
+        }
+    }
+
+
+    /**
+     * @param addresses the number of addresses in a request
+     * @param threads the number of threads available to tokenize them
+     * @return the number of chunks to split the addresses into
+     */
+    static int chunkCount(int addresses, int threads) {
+        final int chunks = (addresses + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE;
+        return Math.max(1, Math.min(chunks, threads));
+    }
+
+
+    /**
+     * Tokenizes a contiguous range of a request's addresses, with the calling thread's tokenizer if it is pooled.
+     */
+    private static final class Chunk implements Callable<Void> {
+        private final EmailTokenizerFactory factory;
+        private final String[] addresses;
+        private final Token[][] tokens;
+        private final int from;
+        private final int to;
+        private final boolean pooled;
+
+        Chunk(EmailTokenizerFactory factory, String[] addresses, Token[][] tokens, int from, int to, boolean pooled) {
+            this.factory = factory;
+            this.addresses = addresses;
+            this.tokens = tokens;
+            this.from = from;
+            this.to = to;
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            final Tokenizer tokenizer = pooled ? factory.threadTokenizer() : factory.create();
+            final CharTermAttribute term = tokenizer.addAttribute(CharTermAttribute.class);
+            final OffsetAttribute offset = tokenizer.addAttribute(OffsetAttribute.class);
+            final TypeAttribute type = tokenizer.addAttribute(TypeAttribute.class);
+            final PositionIncrementAttribute positionIncrement = tokenizer.addAttribute(PositionIncrementAttribute.class);
+            final List<Token> addressTokens = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                tokenizer.setReader(new FastStringReader(addresses[i]));
+                try {
+                    tokenizer.reset();
+                    int position = -1;
+                    while (tokenizer.incrementToken()) {
+                        position += positionIncrement.getPositionIncrement();
+                        addressTokens.add(new Token(term.toString(), type.type(), offset.startOffset(), offset.endOffset(), position));
+                    }
+                    tokenizer.end();
+                } catch (MalformedEmailException e) {
+                    throw new IllegalArgumentException("address [" + i + "] is malformed: " + e.getMessage(), e);
+                } finally {
+                    tokenizer.close();
+                }
+                tokens[i] = addressTokens.isEmpty() ? EmailTokenizeResponse.NO_TOKENS : addressTokens.toArray(new Token[addressTokens.size()]);
+                addressTokens.clear();
+            }
+            return null;
+        }
+    }
+}
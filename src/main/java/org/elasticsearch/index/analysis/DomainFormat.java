@@ -0,0 +1,51 @@
+package org.elasticsearch.index.analysis;
+
+import java.util.Locale;
+
+/**
+ * How the domain of an email address is tokenized.
+ */
+public enum DomainFormat {
+    /**
+     * The whole domain, followed by each of its suffixes: {@code a.example.com}, {@code example.com}, {@code com}.
+     */
+    SUFFIXES,
+    /**
+     * A single token of the domain's labels in reverse order, each followed by a '.': {@code com.example.a.}. Every
+     * address under a domain then shares the prefix formed by reversing that domain, so a domain and its subdomains can
+     * be matched with one prefix query.
+     */
+    REVERSED;
+
+    public static DomainFormat fromString(final String format) {
+        for (DomainFormat domainFormat : DomainFormat.values()) {
+            if (domainFormat.name().equalsIgnoreCase(format)) {
+                return domainFormat;
+            }
+        }
+        throw new IllegalArgumentException("Unrecognized domain format: " + format);
+    }
+
+
+    /**
+     * @param domain a domain name
+     * @return the given domain in the {@link #REVERSED} format
+     */
+    public static String reverse(String domain) {
+        final StringBuilder reversed = new StringBuilder(domain.length() + 1);
+        int end = domain.length();
+        while (end > 0) {
+            final int start = domain.lastIndexOf('.', end - 1) + 1;
+            if (start < end) {
+                reversed.append(domain, start, end).append('.');
+            }
+            end = start - 1;
+        }
+        return reversed.toString();
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
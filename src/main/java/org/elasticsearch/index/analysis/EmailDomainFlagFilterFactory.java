@@ -0,0 +1,39 @@
+package org.elasticsearch.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.assistedinject.Assisted;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.email.DomainSet;
+import org.elasticsearch.index.analysis.email.DomainSetService;
+import org.elasticsearch.index.analysis.email.EmailDomainFlagFilter;
+import org.elasticsearch.index.settings.IndexSettingsService;
+
+/**
+ * Creates {@link EmailDomainFlagFilter}s. The domain file is shared with every other filter on the node which uses it.
+ */
+@AnalysisSettingsRequired
+public class EmailDomainFlagFilterFactory extends AbstractTokenFilterFactory {
+    private final DomainSet domains;
+    private final String flag;
+    private final boolean matchSubdomains;
+
+    @Inject
+    public EmailDomainFlagFilterFactory(Index index, IndexSettingsService indexSettings, DomainSetService domainSets,
+                                        @Assisted String name, @Assisted Settings settings) {
+        super(index, indexSettings.indexSettings(), name, settings);
+        final String domainsPath = settings.get("domains_path");
+        if (domainsPath == null) {
+            throw new IllegalArgumentException("domains_path is required for " + EmailDomainFlagFilter.NAME + " filter [" + name + "]");
+        }
+        this.domains = domainSets.domainSet(domainsPath);
+        this.flag = settings.get("flag", name);
+        this.matchSubdomains = settings.getAsBoolean("match_subdomains", true);
+    }
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new EmailDomainFlagFilter(tokenStream, domains, flag, matchSubdomains);
+    }
+}
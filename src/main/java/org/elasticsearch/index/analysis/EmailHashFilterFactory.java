@@ -0,0 +1,31 @@
+package org.elasticsearch.index.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.assistedinject.Assisted;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.email.EmailHashFilter;
+import org.elasticsearch.index.analysis.email.TokenHasher;
+import org.elasticsearch.index.settings.IndexSettingsService;
+
+/**
+ * Creates {@link EmailHashFilter}s. {@code hash_bits} and {@code hash_salt} must match those of the email tokenizer whose
+ * tokens are to be matched.
+ */
+public class EmailHashFilterFactory extends AbstractTokenFilterFactory {
+    private final int hashBits;
+    private final String hashSalt;
+
+    @Inject
+    public EmailHashFilterFactory(Index index, IndexSettingsService indexSettings, @Assisted String name, @Assisted Settings settings) {
+        super(index, indexSettings.indexSettings(), name, settings);
+        this.hashBits = new TokenHasher(settings.getAsInt("hash_bits", 128), null).bits();
+        this.hashSalt = settings.get("hash_salt");
+    }
+
+    @Override
+    public TokenStream create(TokenStream tokenStream) {
+        return new EmailHashFilter(tokenStream, new TokenHasher(hashBits, hashSalt));
+    }
+}
@@ -1,6 +1,8 @@
 package org.elasticsearch.index.analysis;
 
 
+import java.util.Locale;
+
 /**
  * Joe Linn
  * 9/26/2015
@@ -8,7 +10,24 @@ package org.elasticsearch.index.analysis;
 public enum EmailPart {
     DOMAIN,
     LOCALPART,
-    WHOLE;
+    WHOLE,
+    /**
+     * The domain's public suffix plus one more label, according to a {@link org.elasticsearch.index.analysis.email.PublicSuffixList}.
+     */
+    REGISTRABLE_DOMAIN;
+
+    private final String type;
+
+    EmailPart() {
+        this.type = name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the token type used for tokens of this part
+     */
+    public String getType() {
+        return type;
+    }
 
     public static EmailPart fromString(final String part) {
         for (EmailPart emailPart : EmailPart.values()) {
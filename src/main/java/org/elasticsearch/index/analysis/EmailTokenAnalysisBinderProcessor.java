@@ -1,5 +1,7 @@
 package org.elasticsearch.index.analysis;
 
+import org.elasticsearch.index.analysis.email.EmailDomainFlagFilter;
+import org.elasticsearch.index.analysis.email.EmailHashFilter;
 import org.elasticsearch.index.analysis.email.EmailTokenizer;
 
 /**
@@ -11,4 +13,10 @@ public class EmailTokenAnalysisBinderProcessor extends AnalysisModule.AnalysisBi
     public void processTokenizers(TokenizersBindings tokenizersBindings) {
         tokenizersBindings.processTokenizer(EmailTokenizer.NAME, EmailTokenizerFactory.class);
     }
+
+    @Override
+    public void processTokenFilters(TokenFiltersBindings tokenFiltersBindings) {
+        tokenFiltersBindings.processTokenFilter(EmailDomainFlagFilter.NAME, EmailDomainFlagFilterFactory.class);
+        tokenFiltersBindings.processTokenFilter(EmailHashFilter.NAME, EmailHashFilterFactory.class);
+    }
 }
@@ -2,46 +2,211 @@ package org.elasticsearch.index.analysis;
 
 import com.google.common.base.Strings;
 import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.CloseableThreadLocal;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.assistedinject.Assisted;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.email.CanonicalRules;
 import org.elasticsearch.index.analysis.email.EmailTokenizer;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStats;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStatsService;
+import org.elasticsearch.index.analysis.email.LocalpartDictionary;
+import org.elasticsearch.index.analysis.email.LocalpartSplitter;
+import org.elasticsearch.index.analysis.email.PublicSuffixList;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.analysis.email.TokenCache;
+import org.elasticsearch.index.analysis.email.TokenHasher;
 import org.elasticsearch.index.settings.IndexSettingsService;
 
+import java.util.List;
+
 /**
  * Joe Linn
  * 9/26/2015
  */
 public class EmailTokenizerFactory extends AbstractTokenizerFactory {
+    private InputMode mode;
     private EmailPart part;
     private boolean tokenizeDomain;
+    private DomainFormat domainFormat;
+    private boolean allowUnicode;
+    private IdnFormat idnFormat;
+    private int minDomainDepth;
+    private int maxDomainDepth;
     private boolean splitOnPlus;
-    private boolean allowMalformed;
-    private String[] splitLocalpart;
+    private MalformedPolicy malformedPolicy;
+    private int maxInputLength;
+    private LocalpartSplitter localpartSplitter;
+    private LocalpartDictionary localpartDictionary;
+    private PublicSuffixList publicSuffixList;
+    private boolean canonicalize;
+    private boolean canonicalizeLocalpart;
+    private CanonicalRules canonicalRules;
+    private boolean stackPositions;
+    private int minGram = 1;
+    private int maxGram;
+    private boolean searchMode;
+    private int tokenCacheSize;
+    private int tokenCacheMaxLength;
+    private boolean hashTokens;
+    private int hashBits;
+    private String hashSalt;
+    private final EmailTokenizerStats stats;
+
+    /**
+     * Tokenizers for callers which tokenize outside of an analyzer, one per thread, so that each thread's token cache
+     * and scratch state survive from one call to the next. Only threads of a fixed pool should use them, so that they
+     * are bounded by its size, and they are closed when the index is removed from the node.
+     */
+    private volatile boolean threadTokenizersClosed;
+    private final CloseableThreadLocal<Tokenizer> threadTokenizers = new CloseableThreadLocal<Tokenizer>() {
+        @Override
+        protected Tokenizer initialValue() {
+            return create();
+        }
+    };
 
     @Inject
-    public EmailTokenizerFactory(Index index, IndexSettingsService indexSettings, @Assisted String name, @Assisted Settings settings) {
+    public EmailTokenizerFactory(Index index, IndexSettingsService indexSettings, Environment environment,
+                                 EmailTokenizerStatsService statsService, PublicSuffixListService publicSuffixes,
+                                 @Assisted String name, @Assisted Settings settings) {
         super(index, indexSettings.indexSettings(), name, settings);
+        this.stats = statsService.stats(name);
 
+        this.mode = InputMode.fromString(settings.get("mode", InputMode.SINGLE.name()));
         String partString = settings.get("part");
         if (!Strings.isNullOrEmpty(partString)) {
             this.part = EmailPart.fromString(partString);
         }
         this.tokenizeDomain = settings.getAsBoolean("tokenize_domain", true);
+        this.domainFormat = DomainFormat.fromString(settings.get("domain_format", DomainFormat.SUFFIXES.name()));
+        this.allowUnicode = settings.getAsBoolean("allow_unicode", false);
+        this.idnFormat = IdnFormat.fromString(settings.get("idn_format", IdnFormat.AS_WRITTEN.name()));
+        this.minDomainDepth = settings.getAsInt("min_domain_depth", 1);
+        this.maxDomainDepth = settings.getAsInt("max_domain_depth", 0);
+        if (minDomainDepth < 1) {
+            throw new IllegalArgumentException("min_domain_depth must be at least 1: " + minDomainDepth);
+        }
+        if (maxDomainDepth != 0 && maxDomainDepth < minDomainDepth) {
+            throw new IllegalArgumentException("max_domain_depth must be 0 or at least min_domain_depth (" + minDomainDepth + "): "
+                    + maxDomainDepth);
+        }
         this.splitOnPlus = settings.getAsBoolean("split_on_plus", true);
-        this.allowMalformed = settings.getAsBoolean("allow_malformed", false);
-        this.splitLocalpart = settings.getAsArray("split_localpart", null);
+        boolean allowMalformed = settings.getAsBoolean("allow_malformed", false);
+        this.malformedPolicy = MalformedPolicy.fromString(settings.get("malformed_policy",
+                (allowMalformed ? MalformedPolicy.KEEP_WHOLE : MalformedPolicy.REJECT).name()));
+        this.maxInputLength = settings.getAsInt("max_input_length", 0);
+        String[] splitLocalpart = settings.getAsArray("split_localpart", null);
+        if (splitLocalpart != null && splitLocalpart.length > 0) {
+            this.localpartSplitter = new LocalpartSplitter(splitLocalpart, settings.getAsBoolean("split_localpart_combined", false));
+        }
+        List<String> words = Analysis.getWordList(environment, settings, "localpart_dictionary");
+        if (words != null) {
+            this.localpartDictionary = new LocalpartDictionary(words);
+            logger.debug("compiled localpart dictionary of [{}] words for [{}] into [{}] bytes", localpartDictionary.wordCount(),
+                    name, localpartDictionary.ramBytesUsed());
+        }
+        if (part == EmailPart.REGISTRABLE_DOMAIN || settings.getAsBoolean("registrable_domain", false)) {
+            this.publicSuffixList = publicSuffixes.publicSuffixList();
+        }
+        this.canonicalize = settings.getAsBoolean("canonicalize", false);
+        if (canonicalize) {
+            this.canonicalizeLocalpart = settings.getAsBoolean("canonicalize_localpart", false);
+            List<String> rules = Analysis.getWordList(environment, settings, "canonical_rules");
+            if (rules != null) {
+                this.canonicalRules = CanonicalRules.parse(rules);
+            }
+        }
+        this.stackPositions = settings.getAsBoolean("stack_positions", false);
+        this.searchMode = settings.getAsBoolean("search_mode", false);
+        if (settings.getAsBoolean("edge_ngrams", false)) {
+            this.minGram = settings.getAsInt("min_gram", 1);
+            this.maxGram = settings.getAsInt("max_gram", 10);
+            if (minGram < 1) {
+                throw new IllegalArgumentException("min_gram must be at least 1: " + minGram);
+            }
+            if (maxGram < minGram) {
+                throw new IllegalArgumentException("max_gram must be at least min_gram (" + minGram + "): " + maxGram);
+            }
+        }
+        this.tokenCacheSize = settings.getAsInt("token_cache_size", 0);
+        this.tokenCacheMaxLength = settings.getAsInt("token_cache_max_length", 256);
+        if (tokenCacheSize < 0) {
+            throw new IllegalArgumentException("token_cache_size must not be negative: " + tokenCacheSize);
+        }
+        this.hashTokens = settings.getAsBoolean("hash_tokens", false);
+        if (hashTokens) {
+            this.hashBits = new TokenHasher(settings.getAsInt("hash_bits", 128), null).bits();
+            this.hashSalt = settings.get("hash_salt");
+        }
     }
 
     @Override
     public Tokenizer create() {
         EmailTokenizer tokenizer = new EmailTokenizer();
+        tokenizer.setMode(mode);
         tokenizer.setPart(part);
         tokenizer.setTokenizeDomian(tokenizeDomain);
+        tokenizer.setDomainFormat(domainFormat);
+        tokenizer.setAllowUnicode(allowUnicode);
+        tokenizer.setIdnFormat(idnFormat);
+        tokenizer.setMinDomainDepth(minDomainDepth);
+        tokenizer.setMaxDomainDepth(maxDomainDepth);
         tokenizer.setSplitOnPlus(splitOnPlus);
-        tokenizer.setAllowMalformed(allowMalformed);
-        tokenizer.setSplitLocalpart(splitLocalpart);
+        tokenizer.setMalformedPolicy(malformedPolicy);
+        tokenizer.setMaxInputLength(maxInputLength);
+        tokenizer.setLocalpartSplitter(localpartSplitter);
+        tokenizer.setLocalpartDictionary(localpartDictionary);
+        tokenizer.setPublicSuffixList(publicSuffixList);
+        tokenizer.setCanonicalize(canonicalize, canonicalizeLocalpart, canonicalRules);
+        tokenizer.setStackPositions(stackPositions);
+        tokenizer.setEdgeNGrams(minGram, maxGram);
+        tokenizer.setSearchMode(searchMode);
+        if (tokenCacheSize > 0 && mode == InputMode.SINGLE) {
+            tokenizer.setTokenCache(new TokenCache(tokenCacheSize, tokenCacheMaxLength));
+        }
+        if (hashTokens) {
+            tokenizer.setTokenHasher(new TokenHasher(hashBits, hashSalt));
+        }
+        tokenizer.setStats(stats);
         return tokenizer;
     }
+
+
+    /**
+     * @return a tokenizer owned by the calling thread, which is reused by every call on that thread. It must be closed
+     *         after each input, and must not be used by any other thread. The calling thread should belong to a fixed
+     *         thread pool.
+     */
+    public Tokenizer threadTokenizer() {
+        // a request may still be running when the index is removed
+        return threadTokenizersClosed ? create() : threadTokenizers.get();
+    }
+
+
+    /**
+     * Release the tokenizers of every thread. Any later caller of {@link #threadTokenizer()} gets a new tokenizer.
+     */
+    public void closeThreadTokenizers() {
+        threadTokenizersClosed = true;
+        threadTokenizers.close();
+    }
+
+
+    /**
+     * @return the localpart dictionary shared by this factory's tokenizers, or null if localparts are not segmented
+     */
+    public LocalpartDictionary getLocalpartDictionary() {
+        return localpartDictionary;
+    }
+
+
+    /**
+     * @return counters shared by this factory's tokenizers and those of any other factory with the same name on this node
+     */
+    public EmailTokenizerStats getStats() {
+        return stats;
+    }
 }
@@ -0,0 +1,37 @@
+package org.elasticsearch.index.analysis;
+
+import java.util.Locale;
+
+/**
+ * The form in which internationalized domain names become domain tokens.
+ */
+public enum IdnFormat {
+    /**
+     * Domain tokens are taken from the domain as written, whether in Unicode or in punycode.
+     */
+    AS_WRITTEN,
+    /**
+     * Domain tokens of Unicode domains are in their ASCII (punycode) form: {@code xn--fsqu00a.xn--4rr70v} for
+     * {@code 例子.广告}.
+     */
+    ASCII,
+    /**
+     * Domain tokens are taken from the domain as written, followed by those of its other form: the punycode form of a
+     * Unicode domain, or the Unicode form of a punycode domain.
+     */
+    BOTH;
+
+    public static IdnFormat fromString(final String format) {
+        for (IdnFormat idnFormat : IdnFormat.values()) {
+            if (idnFormat.name().equalsIgnoreCase(format)) {
+                return idnFormat;
+            }
+        }
+        throw new IllegalArgumentException("Unrecognized IDN format: " + format);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,25 @@
+package org.elasticsearch.index.analysis;
+
+/**
+ * How the input of an email tokenizer is interpreted.
+ */
+public enum InputMode {
+    /**
+     * The whole input is a single email address.
+     */
+    SINGLE,
+    /**
+     * The input is free text, such as an address list header or a message body, which may contain any number of
+     * email addresses.
+     */
+    MULTI;
+
+    public static InputMode fromString(final String mode) {
+        for (InputMode inputMode : InputMode.values()) {
+            if (inputMode.name().equalsIgnoreCase(mode)) {
+                return inputMode;
+            }
+        }
+        throw new IllegalArgumentException("Unrecognized input mode: " + mode);
+    }
+}
@@ -0,0 +1,39 @@
+package org.elasticsearch.index.analysis;
+
+import java.util.Locale;
+
+/**
+ * What an email tokenizer does with input which is not a well formed email address.
+ */
+public enum MalformedPolicy {
+    /**
+     * Fail analysis of the document.
+     */
+    REJECT,
+    /**
+     * Emit the whole input as a single token of type {@code whole}.
+     */
+    KEEP_WHOLE,
+    /**
+     * Emit no tokens.
+     */
+    DROP,
+    /**
+     * Emit the whole input as a single token of type {@code malformed}.
+     */
+    FLAG;
+
+    public static MalformedPolicy fromString(final String policy) {
+        for (MalformedPolicy malformedPolicy : MalformedPolicy.values()) {
+            if (malformedPolicy.name().equalsIgnoreCase(policy)) {
+                return malformedPolicy;
+            }
+        }
+        throw new IllegalArgumentException("Unrecognized malformed policy: " + policy);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
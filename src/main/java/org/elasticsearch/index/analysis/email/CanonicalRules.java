@@ -0,0 +1,166 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.util.CharArrayMap;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Provider specific rules for the canonical form of an address, such as Gmail ignoring dots in the localpart. Each line
+ * of the rules lists one or more comma separated domains, a ':', and the rules applied to addresses at those domains:
+ * <pre>
+ * gmail.com, googlemail.com: lowercase ignore_dots strip_tag alias=gmail.com
+ * yahoo.com: lowercase strip_tag=-
+ * *: strip_tag
+ * </pre>
+ * <ul>
+ *     <li>{@code lowercase}: the localpart is case insensitive.</li>
+ *     <li>{@code ignore_dots}: dots in the localpart are removed.</li>
+ *     <li>{@code strip_tag}, or {@code strip_tag=<chars>}: the localpart ends at the first of the given chars, or '+'.</li>
+ *     <li>{@code alias=<domain>}: the domain is replaced by the given domain.</li>
+ * </ul>
+ * The domain {@code *} gives the rules for addresses at any domain which is not listed. Domains are matched exactly,
+ * so subdomains must be listed separately. Domains are lowercased when parsed, and are looked up after the tokenizer has
+ * lowercased the address's domain, so the map itself need not ignore case.
+ *
+ * Immutable, and lookups do not allocate, so instances may be shared by any number of tokenizers.
+ */
+public final class CanonicalRules {
+    public static final CanonicalRules EMPTY = new CanonicalRules(CharArrayMap.<Provider>emptyMap(), null);
+
+    private final CharArrayMap<Provider> providers;
+    private final Provider defaults;
+
+    private CanonicalRules(CharArrayMap<Provider> providers, Provider defaults) {
+        this.providers = providers;
+        this.defaults = defaults;
+    }
+
+
+    /**
+     * @param lines rules, one per line. Blank lines and lines beginning with '#' are ignored.
+     * @return the parsed rules
+     * @throws IllegalArgumentException if a line is not a valid rule
+     */
+    public static CanonicalRules parse(List<String> lines) {
+        final CharArrayMap<Provider> providers = new CharArrayMap<>(lines.size(), false);
+        Provider defaults = null;
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final int colon = line.indexOf(':');
+            if (colon == -1) {
+                throw new IllegalArgumentException("Canonical rule [" + (i + 1) + "] has no ':' after its domains: " + line);
+            }
+            final Provider provider = Provider.parse(i + 1, line.substring(colon + 1).trim());
+            for (String domain : line.substring(0, colon).split(",")) {
+                domain = domain.trim().toLowerCase(Locale.ROOT);
+                if (domain.isEmpty()) {
+                    throw new IllegalArgumentException("Canonical rule [" + (i + 1) + "] has an empty domain: " + line);
+                }
+                if (domain.equals("*")) {
+                    defaults = provider;
+                } else {
+                    providers.put(domain, provider);
+                }
+            }
+        }
+        return new CanonicalRules(CharArrayMap.unmodifiableMap(providers), defaults);
+    }
+
+
+    /**
+     * @return the number of listed domains, not counting {@code *}
+     */
+    public int domainCount() {
+        return providers.size();
+    }
+
+
+    /**
+     * @param buffer a buffer containing a lowercase domain name
+     * @param start index of the first char of the domain
+     * @param end index after the last char of the domain
+     * @return the rules for addresses at the given domain, or null if none apply
+     */
+    public Provider provider(char[] buffer, int start, int end) {
+        final Provider provider = providers.get(buffer, start, end - start);
+        return provider != null ? provider : defaults;
+    }
+
+
+    /**
+     * The rules for the addresses of one provider.
+     */
+    public static final class Provider {
+        private final boolean lowercase;
+        private final boolean ignoreDots;
+        private final String tagSeparators;
+        private final char[] alias;
+
+        private Provider(boolean lowercase, boolean ignoreDots, String tagSeparators, char[] alias) {
+            this.lowercase = lowercase;
+            this.ignoreDots = ignoreDots;
+            this.tagSeparators = tagSeparators;
+            this.alias = alias;
+        }
+
+        private static Provider parse(int lineNumber, String rules) {
+            boolean lowercase = false;
+            boolean ignoreDots = false;
+            String tagSeparators = null;
+            char[] alias = null;
+            for (String rule : rules.split("\\s+")) {
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                final int equals = rule.indexOf('=');
+                final String name = equals == -1 ? rule : rule.substring(0, equals);
+                final String value = equals == -1 ? null : rule.substring(equals + 1);
+                if (name.equals("lowercase") && value == null) {
+                    lowercase = true;
+                } else if (name.equals("ignore_dots") && value == null) {
+                    ignoreDots = true;
+                } else if (name.equals("strip_tag") && (value == null || !value.isEmpty())) {
+                    tagSeparators = value == null ? "+" : value;
+                } else if (name.equals("alias") && value != null && !value.isEmpty()) {
+                    alias = value.toLowerCase(Locale.ROOT).toCharArray();
+                } else {
+                    throw new IllegalArgumentException("Canonical rule [" + lineNumber + "] has an unknown rule: " + rule);
+                }
+            }
+            return new Provider(lowercase, ignoreDots, tagSeparators, alias);
+        }
+
+
+        /**
+         * @return true if the localpart is case insensitive
+         */
+        public boolean lowercase() {
+            return lowercase;
+        }
+
+        /**
+         * @return true if dots in the localpart are ignored
+         */
+        public boolean ignoreDots() {
+            return ignoreDots;
+        }
+
+        /**
+         * @return true if the given char of the localpart begins a tag, which is not part of the canonical localpart
+         */
+        public boolean isTagSeparator(char c) {
+            return tagSeparators != null && tagSeparators.indexOf(c) != -1;
+        }
+
+        /**
+         * @return the canonical domain of the provider, or null if its domains are left as they are
+         */
+        public char[] alias() {
+            return alias;
+        }
+    }
+}
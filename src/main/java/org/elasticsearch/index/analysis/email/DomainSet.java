@@ -0,0 +1,210 @@
+package org.elasticsearch.index.analysis.email;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A set of domain names read from a file of lowercase ASCII domains, one per line, sorted in byte order (as by
+ * {@code LC_ALL=C sort}). IDNs must be listed in their punycode form.
+ *
+ * The file is memory mapped rather than read onto the heap, and searched in place: a lookup is a binary search over the
+ * mapped bytes, finding the start of the line around each probe by scanning back to the previous line feed. Lookups do
+ * not allocate, and are thread safe. The file is validated when it is mapped, so a lookup never sees an unsorted file.
+ *
+ * {@link #reload()} maps the file again and swaps the new mapping in for subsequent lookups. The file should be replaced
+ * atomically, by renaming a new file over it, rather than rewritten in place, as lookups may still be reading the old
+ * mapping. The old mapping is released once it is no longer referenced.
+ */
+public final class DomainSet {
+    private final Path path;
+    private volatile Mapping mapping;
+
+    private DomainSet(Path path, Mapping mapping) {
+        this.path = path;
+        this.mapping = mapping;
+    }
+
+
+    /**
+     * @param path a sorted domain file
+     * @return the set of domains in the given file
+     * @throws IOException if the file cannot be read, or is not sorted lowercase ASCII domains
+     */
+    public static DomainSet open(Path path) throws IOException {
+        return new DomainSet(path, Mapping.map(path));
+    }
+
+
+    /**
+     * Map the file again, so that subsequent lookups see its current contents. If it cannot be mapped, the previous
+     * contents are kept.
+     * @throws IOException if the file cannot be read, or is not sorted lowercase ASCII domains
+     */
+    public void reload() throws IOException {
+        mapping = Mapping.map(path);
+    }
+
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return the number of domains in the file
+     */
+    public int domainCount() {
+        return mapping.domainCount;
+    }
+
+    /**
+     * @return the size of the mapped file, in bytes. None of it is on the heap.
+     */
+    public long sizeInBytes() {
+        return mapping.size;
+    }
+
+
+    /**
+     * @param buffer a buffer containing a domain name
+     * @param start index of the first char of the domain
+     * @param end index after the last char of the domain
+     * @param includeParents whether the domain also matches if one of its parent domains is in the set
+     * @return true if the domain is in the set, ignoring case
+     */
+    public boolean matches(char[] buffer, int start, int end, boolean includeParents) {
+        final Mapping mapping = this.mapping;
+        if (mapping.contains(buffer, start, end)) {
+            return true;
+        }
+        if (includeParents) {
+            for (int i = start; i < end; i++) {
+                if (buffer[i] == '.' && mapping.contains(buffer, i + 1, end)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * A validated mapping of the file.
+     */
+    private static final class Mapping {
+        private final ByteBuffer bytes;
+        private final int size;
+        private final int domainCount;
+
+        private Mapping(ByteBuffer bytes, int domainCount) {
+            this.bytes = bytes;
+            this.size = bytes.limit();
+            this.domainCount = domainCount;
+        }
+
+        private static Mapping map(Path path) throws IOException {
+            final ByteBuffer bytes;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (size > Integer.MAX_VALUE) {
+                    throw new IOException("Domain file [" + path + "] is larger than 2GB");
+                }
+                // the mapping remains valid after the channel is closed
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            return new Mapping(bytes, validate(path, bytes));
+        }
+
+        /**
+         * @return the number of domains in the file
+         * @throws IOException if the file is not sorted lowercase ASCII domains
+         */
+        private static int validate(Path path, ByteBuffer bytes) throws IOException {
+            final int size = bytes.limit();
+            int count = 0;
+            int previousStart = -1;
+            int previousEnd = -1;
+            int lineStart = 0;
+            while (lineStart < size) {
+                int lineEnd = lineStart;
+                while (lineEnd < size && bytes.get(lineEnd) != '\n') {
+                    final byte b = bytes.get(lineEnd);
+                    if (b < 0 || (b >= 'A' && b <= 'Z') || b <= ' ') {
+                        throw new IOException("Domain file [" + path + "] line [" + (count + 1)
+                                + "] is not a lowercase ASCII domain");
+                    }
+                    lineEnd++;
+                }
+                if (lineEnd == lineStart) {
+                    throw new IOException("Domain file [" + path + "] line [" + (count + 1) + "] is blank");
+                }
+                if (previousStart != -1 && compareLines(bytes, previousStart, previousEnd, lineStart, lineEnd) > 0) {
+                    throw new IOException("Domain file [" + path + "] is not sorted at line [" + (count + 1) + "]");
+                }
+                count++;
+                previousStart = lineStart;
+                previousEnd = lineEnd;
+                lineStart = lineEnd + 1;
+            }
+            return count;
+        }
+
+        private static int compareLines(ByteBuffer bytes, int aStart, int aEnd, int bStart, int bEnd) {
+            final int length = Math.min(aEnd - aStart, bEnd - bStart);
+            for (int i = 0; i < length; i++) {
+                final int cmp = bytes.get(aStart + i) - bytes.get(bStart + i);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return (aEnd - aStart) - (bEnd - bStart);
+        }
+
+        /**
+         * Binary search for the given domain. {@code low} is always the start of a line, and {@code high} the start of
+         * a line or the end of the file.
+         */
+        private boolean contains(char[] buffer, int start, int end) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                int lineStart = middle;
+                while (lineStart > low && bytes.get(lineStart - 1) != '\n') {
+                    lineStart--;
+                }
+                int lineEnd = middle;
+                while (lineEnd < size && bytes.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                final int cmp = compare(buffer, start, end, lineStart, lineEnd);
+                if (cmp == 0) {
+                    return true;
+                }
+                if (cmp < 0) {
+                    high = lineStart;
+                } else {
+                    low = lineEnd + 1;
+                }
+            }
+            return false;
+        }
+
+        private int compare(char[] buffer, int start, int end, int lineStart, int lineEnd) {
+            final int length = Math.min(end - start, lineEnd - lineStart);
+            for (int i = 0; i < length; i++) {
+                final int cmp = lowerCase(buffer[start + i]) - bytes.get(lineStart + i);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return (end - start) - (lineEnd - lineStart);
+        }
+
+        private static int lowerCase(char c) {
+            return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.watcher.FileChangesListener;
+import org.elasticsearch.watcher.FileWatcher;
+import org.elasticsearch.watcher.ResourceWatcherService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the {@link DomainSet}s used by the domain flag filters on a node, keyed by file. Each file is mapped once, however
+ * many filters and indices use it, and is reloaded when it changes, as checked by the node's resource watcher.
+ */
+public class DomainSetService extends AbstractComponent {
+    private final Environment environment;
+    private final ResourceWatcherService resourceWatcher;
+    private final Map<Path, DomainSet> domainSets = new HashMap<>();
+
+    @Inject
+    public DomainSetService(Settings settings, Environment environment, ResourceWatcherService resourceWatcher) {
+        super(settings);
+        this.environment = environment;
+        this.resourceWatcher = resourceWatcher;
+    }
+
+
+    /**
+     * @param file path of a sorted domain file, relative to the config directory
+     * @return the set of domains in the given file, which is mapped if it is not yet in use
+     */
+    public synchronized DomainSet domainSet(String file) {
+        final Path path = environment.configFile().resolve(file).toAbsolutePath().normalize();
+        DomainSet domainSet = domainSets.get(path);
+        if (domainSet == null) {
+            try {
+                domainSet = DomainSet.open(path);
+                final FileWatcher watcher = new FileWatcher(path);
+                watcher.addListener(new ReloadListener(domainSet));
+                resourceWatcher.add(watcher);
+            } catch (IOException e) {
+                throw new ElasticsearchException("failed to load domain file [{}]", e, path);
+            }
+            logger.info("mapped domain file [{}]: [{}] domains in [{}]", path, domainSet.domainCount(),
+                    new ByteSizeValue(domainSet.sizeInBytes()));
+            domainSets.put(path, domainSet);
+        }
+        return domainSet;
+    }
+
+
+    private class ReloadListener extends FileChangesListener {
+        private final DomainSet domainSet;
+
+        private ReloadListener(DomainSet domainSet) {
+            this.domainSet = domainSet;
+        }
+
+        @Override
+        public void onFileCreated(Path file) {
+            onFileChanged(file);
+        }
+
+        @Override
+        public void onFileChanged(Path file) {
+            try {
+                domainSet.reload();
+                logger.info("reloaded domain file [{}]: [{}] domains in [{}]", file, domainSet.domainCount(),
+                        new ByteSizeValue(domainSet.sizeInBytes()));
+            } catch (IOException e) {
+                logger.warn("failed to reload domain file [{}], keeping the previous domains", e, file);
+            }
+        }
+
+        @Override
+        public void onFileDeleted(Path file) {
+            logger.warn("domain file [{}] was deleted, keeping the previous domains", file);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.index.analysis.EmailPart;
+
+import java.io.IOException;
+
+/**
+ * Follows the tokens of an {@link EmailTokenizer} and, for each address whose domain is in a {@link DomainSet}, emits a
+ * flag token of type {@link #TYPE} at the same position as the token which matched. The domain is read from {@code domain}
+ * tokens, which are put back in order first if they are in the reversed format, and from {@code whole} tokens, and each
+ * address is flagged at most once.
+ */
+public final class EmailDomainFlagFilter extends TokenFilter {
+    public static final String NAME = "email_domain_flag";
+    public static final String TYPE = "domain_flag";
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
+    private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute positionIncrementAttribute = addAttribute(PositionIncrementAttribute.class);
+
+    private final DomainSet domains;
+    private final String flag;
+    private final boolean matchSubdomains;
+
+    /**
+     * The end offset of the current address. Every token of an address lies within it, and addresses do not overlap, so
+     * a token which starts at or after it belongs to the next address. Tokens of one address need not share an end
+     * offset: the address without its '+' tag ends before the whole address does.
+     */
+    private int addressEndOffset;
+    private boolean addressFlagged;
+    /**
+     * Length of the longest domain of the current address which has been looked up. Shorter domains need not be, as
+     * they are suffixes of it.
+     */
+    private int checkedLength;
+    private boolean pendingFlag;
+    private int flagStartOffset;
+    private int flagEndOffset;
+    /**
+     * Holds the domain of a reversed domain token, in order.
+     */
+    private char[] unreversed = new char[32];
+
+    /**
+     * @param input the tokens of an {@link EmailTokenizer}
+     * @param domains the domains whose addresses are flagged
+     * @param flag the term of flag tokens
+     * @param matchSubdomains whether addresses at subdomains of the listed domains are also flagged
+     */
+    public EmailDomainFlagFilter(TokenStream input, DomainSet domains, String flag, boolean matchSubdomains) {
+        super(input);
+        this.domains = domains;
+        this.flag = flag;
+        this.matchSubdomains = matchSubdomains;
+    }
+
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (pendingFlag) {
+            pendingFlag = false;
+            clearAttributes();
+            termAttribute.append(flag);
+            typeAttribute.setType(TYPE);
+            positionIncrementAttribute.setPositionIncrement(0);
+            offsetAttribute.setOffset(flagStartOffset, flagEndOffset);
+            return true;
+        }
+        if (!input.incrementToken()) {
+            return false;
+        }
+
+        char[] term = termAttribute.buffer();
+        int end = termAttribute.length();
+        final int start;
+        final String type = typeAttribute.type();
+        if (type.equals(EmailPart.DOMAIN.getType())) {
+            start = 0;
+            if (end > 0 && term[end - 1] == '.') {
+                // reversed format: com.example.mail.
+                end = unreverse(term, end);
+                term = unreversed;
+            }
+        } else if (type.equals(EmailPart.WHOLE.getType())) {
+            start = domainStart(term, end);
+            if (start == -1) {
+                return true;
+            }
+        } else {
+            return true;
+        }
+
+        final int endOffset = offsetAttribute.endOffset();
+        if (offsetAttribute.startOffset() >= addressEndOffset) {
+            addressEndOffset = endOffset;
+            addressFlagged = false;
+            checkedLength = 0;
+        } else {
+            addressEndOffset = Math.max(addressEndOffset, endOffset);
+            if (addressFlagged || end - start <= checkedLength) {
+                return true;
+            }
+        }
+        checkedLength = end - start;
+        if (domains.matches(term, start, end, matchSubdomains)) {
+            addressFlagged = true;
+            pendingFlag = true;
+            flagStartOffset = offsetAttribute.startOffset();
+            flagEndOffset = endOffset;
+        }
+        return true;
+    }
+
+
+    /**
+     * @return index of the first char of the domain of the given address, or -1 if it has none
+     */
+    private static int domainStart(char[] term, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (term[i] == '@') {
+                return i + 1 < length ? i + 1 : -1;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Copy the given reversed domain, such as {@code com.example.mail.}, into {@link #unreversed} in order, as
+     * {@code mail.example.com}.
+     * @return the length of the domain
+     */
+    private int unreverse(char[] term, int length) {
+        final int domainLength = length - 1;
+        unreversed = ArrayUtil.grow(unreversed, domainLength);
+        int labelEnd = domainLength;
+        int at = 0;
+        for (int i = domainLength - 1; i >= -1; i--) {
+            if (i == -1 || term[i] == '.') {
+                System.arraycopy(term, i + 1, unreversed, at, labelEnd - i - 1);
+                at += labelEnd - i - 1;
+                if (i != -1) {
+                    unreversed[at++] = '.';
+                }
+                labelEnd = i;
+            }
+        }
+        return domainLength;
+    }
+
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        addressEndOffset = -1;
+        addressFlagged = false;
+        checkedLength = 0;
+        pendingFlag = false;
+    }
+}
@@ -0,0 +1,37 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+
+/**
+ * Replaces every token with its hash, as an {@link EmailTokenizer} with {@code hash_tokens} enabled does. Used to build
+ * the search analyzer of a field indexed with hashed tokens, so that query terms are hashed the same way.
+ */
+public final class EmailHashFilter extends TokenFilter {
+    public static final String NAME = "email_hash";
+
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final TokenHasher tokenHasher;
+
+    /**
+     * @param input the tokens to hash
+     * @param tokenHasher must not be shared with other token streams
+     */
+    public EmailHashFilter(TokenStream input, TokenHasher tokenHasher) {
+        super(input);
+        this.tokenHasher = tokenHasher;
+    }
+
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+        tokenHasher.hash(termAttribute);
+        return true;
+    }
+}
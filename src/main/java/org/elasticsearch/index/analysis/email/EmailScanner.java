@@ -0,0 +1,233 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * A single pass, linear time validator and parser for email addresses.
+ *
+ * Accepts exactly the addresses which were matched by the validation pattern previously used by {@link EmailTokenizer}:
+ * <pre>
+ * [a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?
+ * </pre>
+ * (case insensitive). While validating, the positions of the '@', the first '+' of the localpart, and the start of
+ * each domain label are recorded so that tokenization does not need to search the address again.
+ *
+ * If Unicode is allowed, internationalized addresses (RFC 6531) are also accepted: the localpart may contain any non
+ * ASCII char other than whitespace and controls, and domain labels may contain non ASCII letters, digits and marks, as
+ * in {@code 用户@例子.广告}. The ASCII chars accepted are unchanged, and are checked first, so that ASCII addresses take
+ * the same path as when Unicode is not allowed. Whether the domain is all ASCII is recorded, so that callers only need
+ * to convert internationalized domains.
+ *
+ * The scanner may also lowercase the domain, and optionally the localpart, in place as it validates them, so that
+ * canonicalizing an address takes no further pass over it. Chars are lowercased before the address is known to be well
+ * formed, so the buffer may be partly lowercased after a failed scan.
+ *
+ * Instances hold the result of the most recent scan and are not thread safe.
+ */
+public final class EmailScanner {
+    private static final boolean[] ATEXT = new boolean[128];
+    private static final boolean[] ALNUM = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            ALNUM[c] = true;
+            ALNUM[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            ALNUM[c] = true;
+        }
+        System.arraycopy(ALNUM, 0, ATEXT, 0, ALNUM.length);
+        for (char c : "!#$%&'*+/=?^_`{|}~-".toCharArray()) {
+            ATEXT[c] = true;
+        }
+    }
+
+    private boolean lowercaseDomain;
+    private boolean lowercaseLocalpart;
+    private boolean allowUnicode;
+
+    private int start;
+    private int end;
+    private int at = -1;
+    private int plus = -1;
+    private int[] labelStarts = new int[8];
+    private int labelCount;
+    private boolean asciiDomain;
+
+    /**
+     * @param lowercaseDomain if true, the domain of scanned addresses is lowercased in place
+     * @param lowercaseLocalpart if true, the localpart of scanned addresses is lowercased in place
+     */
+    public void setLowercase(boolean lowercaseDomain, boolean lowercaseLocalpart) {
+        this.lowercaseDomain = lowercaseDomain;
+        this.lowercaseLocalpart = lowercaseLocalpart;
+    }
+
+
+    /**
+     * @param allowUnicode if true, internationalized addresses are accepted
+     */
+    public void setAllowUnicode(boolean allowUnicode) {
+        this.allowUnicode = allowUnicode;
+    }
+
+
+    /**
+     * Validate and parse the address contained in the given range of the given buffer.
+     * @param buffer the buffer containing the address
+     * @param start index of the first char of the address
+     * @param end index after the last char of the address
+     * @return true if the range contains a well formed address
+     */
+    public boolean scan(char[] buffer, int start, int end) {
+        this.start = start;
+        this.end = end;
+        at = -1;
+        plus = -1;
+        labelCount = 0;
+        asciiDomain = true;
+
+        // localpart: dot separated runs of atext
+        int i = start;
+        boolean afterAtext = false;
+        for (; i < end; i++) {
+            final char c = buffer[i];
+            if (c < 128 && ATEXT[c]) {
+                if (lowercaseLocalpart && c >= 'A' && c <= 'Z') {
+                    buffer[i] = (char) (c + ('a' - 'A'));
+                }
+                if (c == '+' && plus == -1) {
+                    plus = i;
+                }
+                afterAtext = true;
+            } else if (c == '.' && afterAtext) {
+                afterAtext = false;
+            } else if (c == '@' && afterAtext) {
+                at = i;
+                break;
+            } else if (c >= 128 && allowUnicode && isUnicodeLocalpartChar(c)) {
+                afterAtext = true;
+            } else {
+                return false;
+            }
+        }
+        if (at == -1) {
+            return false;
+        }
+
+        // domain: at least two dot separated labels, each beginning and ending with an alphanumeric char
+        char previous = '.';
+        for (i = at + 1; i < end; i++) {
+            final char c = buffer[i];
+            if (c >= 128) {
+                if (!allowUnicode || !isUnicodeLabelChar(c)) {
+                    return false;
+                }
+                asciiDomain = false;
+                if (previous == '.') {
+                    addLabel(i);
+                }
+                // a label may begin or end with any Unicode label char, as with an alphanumeric char
+                previous = 'a';
+                continue;
+            }
+            if (ALNUM[c]) {
+                if (lowercaseDomain && c >= 'A' && c <= 'Z') {
+                    buffer[i] = (char) (c + ('a' - 'A'));
+                }
+                if (previous == '.') {
+                    addLabel(i);
+                }
+            } else if (c == '-') {
+                if (previous == '.') {
+                    return false;
+                }
+            } else if (c == '.') {
+                if (previous == '.' || previous == '-') {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+            previous = c;
+        }
+        return labelCount > 1 && ALNUM[previous];
+    }
+
+
+    private static boolean isUnicodeLocalpartChar(char c) {
+        return !Character.isWhitespace(c) && !Character.isSpaceChar(c) && !Character.isISOControl(c);
+    }
+
+
+    /**
+     * @return true if the given non ASCII char may be part of an internationalized domain label. Surrogates are
+     * accepted without checking the char they encode; IDNA checks labels in full when they are converted.
+     */
+    private static boolean isUnicodeLabelChar(char c) {
+        if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+            return true;
+        }
+        final int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK;
+    }
+
+
+    private void addLabel(int labelStart) {
+        if (labelCount == labelStarts.length) {
+            labelStarts = ArrayUtil.grow(labelStarts, labelCount + 1);
+        }
+        labelStarts[labelCount++] = labelStart;
+    }
+
+
+    /**
+     * @return index of the first char of the scanned address
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * @return index after the last char of the scanned address
+     */
+    public int end() {
+        return end;
+    }
+
+    /**
+     * @return index of the '@' separating the localpart from the domain
+     */
+    public int at() {
+        return at;
+    }
+
+    /**
+     * @return index of the first '+' in the localpart, or -1 if the localpart contains no '+'
+     */
+    public int plus() {
+        return plus;
+    }
+
+    /**
+     * @return true if the domain contains only ASCII chars
+     */
+    public boolean asciiDomain() {
+        return asciiDomain;
+    }
+
+    /**
+     * @return number of labels in the domain
+     */
+    public int labelCount() {
+        return labelCount;
+    }
+
+    /**
+     * @param label the index of a domain label, counting from the leftmost label
+     * @return index of the first char of the given label
+     */
+    public int labelStart(int label) {
+        return labelStarts[label];
+    }
+}
@@ -1,23 +1,23 @@
 package org.elasticsearch.index.analysis.email;
 
-import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
+import org.apache.lucene.analysis.CharFilter;
 import org.apache.lucene.analysis.Tokenizer;
-import org.apache.lucene.analysis.path.ReversePathHierarchyTokenizer;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
 import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.AttributeFactory;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.index.analysis.DomainFormat;
 import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.IdnFormat;
+import org.elasticsearch.index.analysis.InputMode;
+import org.elasticsearch.index.analysis.MalformedPolicy;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.net.IDN;
+import java.util.Arrays;
 
 /**
  * Joe Linn
@@ -25,7 +25,67 @@ import java.util.regex.Pattern;
  */
 public final class EmailTokenizer extends Tokenizer {
     public static final String NAME = "email";
-    private static final Pattern VALIDATOR = Pattern.compile("[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Type of the token emitted for malformed input under {@link MalformedPolicy#FLAG}.
+     */
+    public static final String MALFORMED_TYPE = "malformed";
+
+    /**
+     * Type of the canonical address token emitted when canonicalizing.
+     */
+    public static final String CANONICAL_TYPE = "canonical";
+
+    /**
+     * Types of the edge n-gram tokens of the localpart and of each domain label.
+     */
+    public static final String LOCALPART_NGRAM_TYPE = "localpart_ngram";
+    public static final String DOMAIN_NGRAM_TYPE = "domain_ngram";
+
+    /**
+     * Size of the input buffer in {@link InputMode#MULTI} mode. Candidate addresses longer than this are skipped.
+     */
+    public static final int MULTI_BUFFER_SIZE = 1024;
+
+    /**
+     * Each tokenizer times the first of every this many documents, beginning with its first.
+     */
+    public static final int TIMED_DOCUMENT_INTERVAL = 16;
+
+    /**
+     * Characters which separate candidate addresses in {@link InputMode#MULTI} mode.
+     */
+    private static final boolean[] SEPARATORS = new boolean[128];
+
+    static {
+        for (char c : " \t\n\r\f\u000B,;<>():[]".toCharArray()) {
+            SEPARATORS[c] = true;
+        }
+    }
+
+    /**
+     * Stages of token generation, in the order in which their tokens are emitted.
+     */
+    private static final int STAGE_DOMAIN = 0;
+    private static final int STAGE_IDN_DOMAIN = 1;
+    private static final int STAGE_REGISTRABLE_DOMAIN = 2;
+    private static final int STAGE_DOMAIN_NGRAM = 3;
+    private static final int STAGE_LOCALPART = 4;
+    private static final int STAGE_LOCALPART_PLUS = 5;
+    private static final int STAGE_LOCALPART_SPLIT = 6;
+    private static final int STAGE_LOCALPART_SEGMENT = 7;
+    private static final int STAGE_LOCALPART_NGRAM = 8;
+    private static final int STAGE_WHOLE = 9;
+    private static final int STAGE_WITHOUT_PLUS = 10;
+    private static final int STAGE_CANONICAL = 11;
+    private static final int STAGE_DONE = 12;
+
+    private static final EmailPart[] PARTS = EmailPart.values();
+
+    /**
+     * Whether the input is a single address, or text containing any number of addresses.
+     */
+    private InputMode mode = InputMode.SINGLE;
 
     /**
      * If set, only the given part of the email will be tokenized.
@@ -33,31 +93,209 @@ public final class EmailTokenizer extends Tokenizer {
     private EmailPart part;
 
     /**
-     * If true, the email's domain will be tokenized using a {@link ReversePathHierarchyTokenizer}
+     * If true, each suffix of the email's domain will become a token, as with a reverse path hierarchy tokenizer
+     * using '.' as the delimiter.
      */
     private boolean tokenizeDomian = true;
 
+    /**
+     * Whether the domain becomes a token for each of its suffixes, or a single token of its labels in reverse order.
+     */
+    private DomainFormat domainFormat = DomainFormat.SUFFIXES;
+
+    /**
+     * The form of internationalized domains in domain tokens.
+     */
+    private IdnFormat idnFormat = IdnFormat.AS_WRITTEN;
+
+    /**
+     * When the domain is tokenized, only suffixes with at least {@link #minDomainDepth} and, if greater than 0, at most
+     * {@link #maxDomainDepth} labels will become tokens.
+     */
+    private int minDomainDepth = 1;
+    private int maxDomainDepth;
+
     /**
      * If true, the localpart will be split on '+', and the part prior to '+' and the whole localpart will both become tokens.
      */
     private boolean splitOnPlus = true;
 
     /**
-     * If true, malformed email addresses will not be rejected, and will be tokenized as a single token.
+     * What to do with input which is not a well formed email address.
      */
-    private boolean allowMalformed;
+    private MalformedPolicy malformedPolicy = MalformedPolicy.REJECT;
 
     /**
-     * If set, the localpart will be split on each of the strings in this array, and the resulting parts will all become tokens.
+     * If greater than 0, at most this many chars of the input will be buffered in {@link InputMode#SINGLE} mode. Longer
+     * inputs are treated as malformed.
      */
-    private String[] splitLocalpart;
+    private int maxInputLength;
+
+    /**
+     * If set, the localpart will be split on each of this splitter's delimiters, and the resulting parts will all become tokens.
+     */
+    private LocalpartSplitter localpartSplitter;
+    private LocalpartSplitter.Matches matches;
+
+    /**
+     * If set, a localpart without delimiters will be segmented into this dictionary's words and runs of digits, which
+     * will all become tokens.
+     */
+    private LocalpartDictionary localpartDictionary;
+    private LocalpartDictionary.Segmentation segmentation;
+
+    /**
+     * If set, the registrable domain of the address, according to this list, will become a token.
+     */
+    private PublicSuffixList publicSuffixList;
+
+    /**
+     * If set, the tokens of whole inputs are cached in, and replayed from, this cache, in {@link InputMode#SINGLE} mode.
+     */
+    private TokenCache tokenCache;
+    private TokenCache.Recorder recorder;
+
+    /**
+     * The cached tokens being replayed for the current input, and the index of the next of them.
+     */
+    private TokenCache.Entry cached;
+    private int cachedToken;
+
+    /**
+     * Whether the tokens of the current input are being recorded, to be cached once the input is done.
+     */
+    private boolean recording;
+
+    /**
+     * If set, every token is replaced by its hash.
+     */
+    private TokenHasher tokenHasher;
+
+    /**
+     * If true, the domain is lowercased, and the canonical address, according to {@link #canonicalRules}, becomes a token.
+     */
+    private boolean canonicalize = false;
+
+    /**
+     * If true when canonicalizing, the localpart is also lowercased.
+     */
+    private boolean canonicalizeLocalpart = false;
+
+    private CanonicalRules canonicalRules = CanonicalRules.EMPTY;
+
+    /**
+     * If {@link #maxGram} is greater than 0, the edge n-grams of the localpart and of each domain label, of at least
+     * {@link #minGram} and at most {@link #maxGram} code points, become tokens, so that partial addresses can be found
+     * with term queries rather than prefix or wildcard queries.
+     */
+    private int minGram = 1;
+    private int maxGram;
+
+    /**
+     * If true, each address produces a single token which matches the tokens produced at index time by a tokenizer with
+     * the same configuration, rather than all of those tokens.
+     */
+    private boolean searchMode = false;
+
+    /**
+     * If true, the tokens of each part of an address share a position: the domain tokens (including the registrable
+     * domain), the localpart tokens, and the whole address tokens.
+     */
+    private boolean stackPositions = false;
+
+    /**
+     * The part of the current address whose tokens are at the current position, or -1 if the address has no tokens yet.
+     */
+    private int stackedPart = -1;
 
     private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
     private final TypeAttribute typeAttribute = addAttribute(TypeAttribute.class);
     private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
+    private final PositionIncrementAttribute positionIncrementAttribute = addAttribute(PositionIncrementAttribute.class);
+
+    private final EmailScanner scanner = new EmailScanner();
 
-    private List<Token> tokens;
-    private Iterator<Token> iterator;
+    private EmailTokenizerStats stats = new EmailTokenizerStats();
+
+    /**
+     * Holds the contents of the input. Reused across documents. In {@link InputMode#MULTI} mode, this is a fixed size
+     * window which slides over the input.
+     */
+    private char[] buffer = new char[256];
+    private int length;
+
+    /**
+     * Offset within the input of the first char of {@link #buffer}.
+     */
+    private int bufferOffset;
+
+    /**
+     * The range of {@link #buffer} which holds the address currently being tokenized.
+     */
+    private int addressStart;
+    private int addressEnd;
+
+    /**
+     * State of the search for addresses in {@link InputMode#MULTI} mode.
+     */
+    private int position;
+    private boolean eof;
+    private boolean inQuote;
+    private boolean escaped;
+
+    /**
+     * Number of chars which were read past {@link #maxInputLength} and discarded.
+     */
+    private int skipped;
+    private char[] skipBuffer;
+
+    private boolean started;
+    private boolean malformed;
+    private int stage;
+
+    /**
+     * Position within the current stage: a domain label index, or the start of the next localpart split.
+     */
+    private int cursor;
+
+    /**
+     * Index of the {@link #localpartSplitter} delimiter currently being split on, or its delimiter count for the
+     * combined split.
+     */
+    private int delimiter;
+
+    /**
+     * Start of the next localpart split, or -1 if the current delimiter has no splits left, and the next match or cut
+     * of the current delimiter.
+     */
+    private int splitStart;
+    private int splitMatch;
+
+    /**
+     * End of the current edge n-gram, and its length in code points.
+     */
+    private int gramEnd;
+    private int gramLength;
+
+    /**
+     * The other IDN form of the current address's domain, and the start of each of its labels, if
+     * {@link #idnConverted}.
+     */
+    private boolean idnConverted;
+    private char[] idnDomain = new char[64];
+    private int idnDomainLength;
+    private int[] idnLabelStarts = new int[8];
+
+    /**
+     * Statistics for the current document, which are added to {@link #stats} when the document ends. The time is that
+     * spent within {@link #incrementToken()}, and not that of the consumer between tokens. Reading the clock twice per
+     * token costs as much as emitting a token, so only one in {@link #TIMED_DOCUMENT_INTERVAL} documents is timed.
+     */
+    private long tokenizeNanos;
+    private boolean timed;
+    private int documentCount;
+    private final int[] partTokens = new int[PARTS.length];
+    private int otherTokens;
 
     public EmailTokenizer() { }
 
@@ -71,6 +309,14 @@ public final class EmailTokenizer extends Tokenizer {
     }
 
 
+    public EmailTokenizer setMode(InputMode mode) {
+        this.mode = mode;
+        if (mode == InputMode.MULTI && buffer.length != MULTI_BUFFER_SIZE) {
+            buffer = new char[MULTI_BUFFER_SIZE];
+        }
+        return this;
+    }
+
     public EmailTokenizer setPart(EmailPart part) {
         this.part = part;
         return this;
@@ -81,284 +327,1022 @@ public final class EmailTokenizer extends Tokenizer {
         return this;
     }
 
+    public EmailTokenizer setDomainFormat(DomainFormat domainFormat) {
+        this.domainFormat = domainFormat;
+        return this;
+    }
+
+    /**
+     * @param allowUnicode if true, internationalized addresses, with Unicode localparts and domains, are accepted
+     */
+    public EmailTokenizer setAllowUnicode(boolean allowUnicode) {
+        scanner.setAllowUnicode(allowUnicode);
+        return this;
+    }
+
+    public EmailTokenizer setIdnFormat(IdnFormat idnFormat) {
+        this.idnFormat = idnFormat;
+        return this;
+    }
+
+    public EmailTokenizer setMinDomainDepth(int minDomainDepth) {
+        this.minDomainDepth = minDomainDepth;
+        return this;
+    }
+
+    public EmailTokenizer setMaxDomainDepth(int maxDomainDepth) {
+        this.maxDomainDepth = maxDomainDepth;
+        return this;
+    }
+
     public EmailTokenizer setSplitOnPlus(boolean splitOnPlus) {
         this.splitOnPlus = splitOnPlus;
         return this;
     }
 
+    /**
+     * @param allowMalformed if true, malformed email addresses will not be rejected, and will be tokenized as a single
+     *                       token. Equivalent to the {@link MalformedPolicy#KEEP_WHOLE} policy.
+     */
     public EmailTokenizer setAllowMalformed(boolean allowMalformed) {
-        this.allowMalformed = allowMalformed;
+        return setMalformedPolicy(allowMalformed ? MalformedPolicy.KEEP_WHOLE : MalformedPolicy.REJECT);
+    }
+
+    public EmailTokenizer setMalformedPolicy(MalformedPolicy malformedPolicy) {
+        this.malformedPolicy = malformedPolicy;
+        return this;
+    }
+
+    public EmailTokenizer setStats(EmailTokenizerStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    public EmailTokenizer setMaxInputLength(int maxInputLength) {
+        this.maxInputLength = maxInputLength;
         return this;
     }
 
     public EmailTokenizer setSplitLocalpart(String[] splitLocalpart) {
-        this.splitLocalpart = splitLocalpart;
+        return setLocalpartSplitter(splitLocalpart == null ? null : new LocalpartSplitter(splitLocalpart, false));
+    }
+
+    public EmailTokenizer setLocalpartSplitter(LocalpartSplitter localpartSplitter) {
+        this.localpartSplitter = localpartSplitter;
+        if (localpartSplitter != null && matches == null) {
+            matches = new LocalpartSplitter.Matches();
+        }
+        return this;
+    }
+
+    /**
+     * @param localpartDictionary if not null, localparts without delimiters are segmented into the given dictionary's
+     *                            words, which may be shared with other tokenizers
+     */
+    public EmailTokenizer setLocalpartDictionary(LocalpartDictionary localpartDictionary) {
+        this.localpartDictionary = localpartDictionary;
+        if (localpartDictionary != null && segmentation == null) {
+            segmentation = new LocalpartDictionary.Segmentation();
+        }
+        return this;
+    }
+
+    /**
+     * @param canonicalize if true, the domain is lowercased, and the canonical address becomes a token
+     * @param canonicalizeLocalpart if true, the localpart is also lowercased
+     * @param canonicalRules provider specific rules for the canonical address
+     */
+    public EmailTokenizer setCanonicalize(boolean canonicalize, boolean canonicalizeLocalpart, CanonicalRules canonicalRules) {
+        this.canonicalize = canonicalize;
+        this.canonicalizeLocalpart = canonicalizeLocalpart;
+        this.canonicalRules = canonicalRules == null ? CanonicalRules.EMPTY : canonicalRules;
+        scanner.setLowercase(canonicalize, canonicalize && canonicalizeLocalpart);
+        return this;
+    }
+
+    public EmailTokenizer setStackPositions(boolean stackPositions) {
+        this.stackPositions = stackPositions;
+        return this;
+    }
+
+    /**
+     * @param minGram the minimum length of edge n-grams, in code points
+     * @param maxGram the maximum length of edge n-grams, in code points, or 0 to emit no edge n-grams
+     */
+    public EmailTokenizer setEdgeNGrams(int minGram, int maxGram) {
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+        return this;
+    }
+
+    public EmailTokenizer setSearchMode(boolean searchMode) {
+        this.searchMode = searchMode;
+        return this;
+    }
+
+    /**
+     * @param tokenCache if not null, the tokens of whole inputs are cached in the given cache, which must not be shared
+     *                   with other tokenizers. Only used in {@link InputMode#SINGLE} mode.
+     */
+    public EmailTokenizer setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+        if (tokenCache != null && recorder == null) {
+            recorder = new TokenCache.Recorder();
+        }
+        return this;
+    }
+
+    /**
+     * @param tokenHasher if not null, every token is replaced by its hash. Must not be shared with other tokenizers.
+     */
+    public EmailTokenizer setTokenHasher(TokenHasher tokenHasher) {
+        this.tokenHasher = tokenHasher;
+        return this;
+    }
+
+    public EmailTokenizer setPublicSuffixList(PublicSuffixList publicSuffixList) {
+        this.publicSuffixList = publicSuffixList;
         return this;
     }
 
     @Override
     public boolean incrementToken() throws IOException {
-        if (iterator == null) {
-            String emailString = readerToString(input);
-            if (Strings.isNullOrEmpty(emailString)) {
-                return false;
+        if (!timed) {
+            return incrementTokenUntimed();
+        }
+        final long start = System.nanoTime();
+        try {
+            return incrementTokenUntimed();
+        } finally {
+            tokenizeNanos += System.nanoTime() - start;
+        }
+    }
+
+
+    private boolean incrementTokenUntimed() throws IOException {
+        if (nextToken()) {
+            if (cached == null) {
+                if (tokenHasher != null) {
+                    tokenHasher.hash(termAttribute);
+                }
+                if (recording) {
+                    recorder.add(termAttribute, typeAttribute.type(), offsetAttribute.startOffset(), offsetAttribute.endOffset(),
+                            positionIncrementAttribute.getPositionIncrement());
+                }
             }
-            tokens = tokenize(emailString);
-            iterator = tokens.iterator();
+            countToken();
+            return true;
         }
-        if (!iterator.hasNext()) {
-            return false;
+        if (recording) {
+            recording = false;
+            tokenCache.put(recorder);
+        }
+        return false;
+    }
+
+
+    /**
+     * Emit the next token of the input.
+     * @return false if there are no tokens left
+     * @throws IOException
+     */
+    private boolean nextToken() throws IOException {
+        if (!started) {
+            started = true;
+            if (mode == InputMode.MULTI) {
+                stage = STAGE_DONE;
+            } else {
+                final boolean truncated = !readInput();
+                addressStart = 0;
+                addressEnd = length;
+                if (tokenCache != null) {
+                    lookUpCachedTokens(truncated);
+                }
+                if (cached != null) {
+                    stage = STAGE_DONE;
+                } else if (length == 0) {
+                    stage = STAGE_DONE;
+                } else if (truncated || !scanner.scan(buffer, 0, length)) {
+                    onMalformed(truncated);
+                }
+            }
         }
 
         clearAttributes();
-        Token token = iterator.next();
-        termAttribute.append(token.getToken());
-        typeAttribute.setType(token.getPart().name().toLowerCase());
-        offsetAttribute.setOffset(token.getStart(), token.getEnd());
+        if (cached != null) {
+            return replayCachedToken();
+        }
+        if (malformed) {
+            malformed = false;
+            stage = STAGE_DONE;
+            if (canonicalize) {
+                lowercaseMalformed();
+            }
+            setToken(EmailPart.WHOLE, 0, length);
+            if (malformedPolicy == MalformedPolicy.FLAG) {
+                typeAttribute.setType(MALFORMED_TYPE);
+            }
+            return true;
+        }
+        while (true) {
+            while (stage != STAGE_DONE) {
+                if (nextStageToken()) {
+                    if (stackPositions) {
+                        stackPosition();
+                    }
+                    return true;
+                }
+                nextStage(stage + 1);
+            }
+            if (mode != InputMode.MULTI || !nextAddress()) {
+                return false;
+            }
+            nextStage(STAGE_DOMAIN);
+        }
+    }
+
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        final int finalOffset = correctOffset(bufferOffset + length + skipped);
+        offsetAttribute.setOffset(finalOffset, finalOffset);
+        if (started) {
+            stats.onDocument(bufferOffset + length + skipped, timed, tokenizeNanos, partTokens, otherTokens);
+            started = false;
+        }
+    }
+
+
+    /**
+     * Look the input up in the {@link #tokenCache}, and start recording its tokens if it is not cached but may be.
+     * Inputs which were truncated, are longer than the cache accepts, or come through a char filter, whose offset
+     * corrections may differ between equal inputs, bypass the cache.
+     * @param truncated true if the input was longer than {@link #maxInputLength}
+     */
+    private void lookUpCachedTokens(boolean truncated) {
+        if (truncated || !tokenCache.accepts(length) || input instanceof CharFilter) {
+            stats.onTokenCache(EmailTokenizerStats.CacheResult.BYPASS);
+            return;
+        }
+        cached = tokenCache.get(buffer, length);
+        if (cached != null) {
+            stats.onTokenCache(EmailTokenizerStats.CacheResult.HIT);
+            cachedToken = 0;
+            if (cached.malformed()) {
+                stats.onMalformed(malformedPolicy);
+            }
+        } else {
+            stats.onTokenCache(EmailTokenizerStats.CacheResult.MISS);
+            recorder.start(buffer, length);
+            recording = true;
+        }
+    }
+
+
+    /**
+     * Emit the next of the cached tokens of the input.
+     * @return false if there are no tokens left
+     */
+    private boolean replayCachedToken() {
+        if (cachedToken == cached.tokenCount()) {
+            return false;
+        }
+        cached.term(cachedToken, termAttribute);
+        typeAttribute.setType(cached.type(cachedToken));
+        offsetAttribute.setOffset(cached.startOffset(cachedToken), cached.endOffset(cachedToken));
+        positionIncrementAttribute.setPositionIncrement(cached.positionIncrement(cachedToken));
+        cachedToken++;
         return true;
     }
 
 
+    /**
+     * Count the current token towards the statistics of the current document.
+     */
+    private void countToken() {
+        final String type = typeAttribute.type();
+        for (EmailPart emailPart : PARTS) {
+            if (emailPart.getType() == type) {
+                partTokens[emailPart.ordinal()]++;
+                return;
+            }
+        }
+        otherTokens++;
+    }
+
+
     @Override
     public void reset() throws IOException {
         super.reset();
-        tokens = null;
-        iterator = null;
+        started = false;
+        malformed = false;
+        length = 0;
+        bufferOffset = 0;
+        skipped = 0;
+        position = 0;
+        eof = false;
+        inQuote = false;
+        escaped = false;
+        Arrays.fill(partTokens, 0);
+        otherTokens = 0;
+        tokenizeNanos = 0;
+        timed = documentCount++ % TIMED_DOCUMENT_INTERVAL == 0;
+        cached = null;
+        recording = false;
+        nextStage(STAGE_DOMAIN);
     }
 
 
     /**
-     * Tokenize the given email address according to the options which have been set.
-     * @param emailString the string to be tokenized
-     * @return a list of {@link Token}s parsed from the string
-     * @throws IOException
+     * Apply the {@link #malformedPolicy} to the input, which is not a well formed address.
+     * @param truncated true if the input was longer than {@link #maxInputLength}
+     * @throws MalformedEmailException if the policy is {@link MalformedPolicy#REJECT}
      */
-    private List<Token> tokenize(String emailString) throws IOException {
-        if (!VALIDATOR.matcher(emailString).matches()) {
-            if (!allowMalformed) {
-                throw new IOException("Malformed email address: " + emailString);
-            } else {
-                return ImmutableList.of(new Token(emailString, EmailPart.WHOLE, 0, emailString.length() - 1));
+    private void onMalformed(boolean truncated) throws MalformedEmailException {
+        stats.onMalformed(malformedPolicy);
+        if (recording) {
+            recorder.setMalformed();
+        }
+        switch (malformedPolicy) {
+            case REJECT:
+                stage = STAGE_DONE;
+                if (truncated) {
+                    throw new MalformedEmailException("Email address exceeds max_input_length of " + maxInputLength + " chars");
+                }
+                throw new MalformedEmailException("Malformed email address: " + new String(buffer, 0, length));
+            case DROP:
+                stage = STAGE_DONE;
+                break;
+            default:
+                malformed = true;
+                break;
+        }
+    }
+
+
+    /**
+     * Put the current token at the same position as the previous token if both are of the same part of the address.
+     */
+    private void stackPosition() {
+        final int stackPart = stage <= STAGE_DOMAIN_NGRAM ? STAGE_DOMAIN : stage <= STAGE_LOCALPART_NGRAM ? STAGE_LOCALPART : STAGE_WHOLE;
+        if (stackPart == stackedPart) {
+            positionIncrementAttribute.setPositionIncrement(0);
+        }
+        stackedPart = stackPart;
+    }
+
+
+    private void nextStage(int stage) {
+        if (stage == STAGE_DOMAIN) {
+            // the first stage of a new address
+            stackedPart = -1;
+            idnConverted = false;
+        }
+        this.stage = stage;
+        cursor = 0;
+        delimiter = 0;
+        gramEnd = -1;
+    }
+
+
+    /**
+     * Emit the next token of the current stage, if the stage is enabled and has any tokens left.
+     * @return true if a token was emitted
+     */
+    private boolean nextStageToken() {
+        if (searchMode) {
+            // the single token is emitted by the first stage
+            return stage == STAGE_DOMAIN && once() && setSearchToken();
+        }
+        switch (stage) {
+            case STAGE_DOMAIN:
+                return includes(EmailPart.DOMAIN) && nextDomainToken();
+            case STAGE_IDN_DOMAIN:
+                return idnConverted && idnFormat == IdnFormat.BOTH && nextIdnDomainToken();
+            case STAGE_REGISTRABLE_DOMAIN:
+                return includes(EmailPart.REGISTRABLE_DOMAIN) && publicSuffixList != null && once() && setRegistrableDomainToken();
+            case STAGE_DOMAIN_NGRAM:
+                return includes(EmailPart.DOMAIN) && maxGram > 0 && nextDomainNGramToken();
+            case STAGE_LOCALPART:
+                return includes(EmailPart.LOCALPART) && once() && setToken(EmailPart.LOCALPART, addressStart, scanner.at());
+            case STAGE_LOCALPART_PLUS:
+                return includes(EmailPart.LOCALPART) && splitOnPlus && scanner.plus() != -1 && once()
+                        && setToken(EmailPart.LOCALPART, addressStart, scanner.plus());
+            case STAGE_LOCALPART_SPLIT:
+                return includes(EmailPart.LOCALPART) && nextSplitToken();
+            case STAGE_LOCALPART_SEGMENT:
+                return includes(EmailPart.LOCALPART) && localpartDictionary != null && nextSegmentToken();
+            case STAGE_LOCALPART_NGRAM:
+                return includes(EmailPart.LOCALPART) && maxGram > 0 && nextLocalpartNGramToken();
+            case STAGE_WHOLE:
+                return includes(EmailPart.WHOLE) && once() && setToken(EmailPart.WHOLE, addressStart, addressEnd);
+            case STAGE_WITHOUT_PLUS:
+                return part == null && splitOnPlus && scanner.plus() != -1 && once() && setWithoutPlusToken();
+            case STAGE_CANONICAL:
+                return canonicalize && includes(EmailPart.WHOLE) && once() && setCanonicalToken() && !termEquals(addressStart, addressEnd);
+            default:
+                return false;
+        }
+    }
+
+
+    private boolean includes(EmailPart emailPart) {
+        return part == null || part == emailPart;
+    }
+
+
+    /**
+     * For stages which emit a single token.
+     * @return true if the current stage has not yet emitted its token
+     */
+    private boolean once() {
+        return cursor++ == 0;
+    }
+
+
+    /**
+     * Emit the next suffix of the domain, beginning with the whole domain.
+     * @return true if a token was emitted
+     */
+    private boolean nextDomainToken() {
+        if (domainFormat == DomainFormat.REVERSED) {
+            return once() && setReversedDomainToken();
+        }
+        if (cursor == 0 && idnFormat != IdnFormat.AS_WRITTEN) {
+            idnConverted = convertDomain();
+        }
+        if (idnConverted && idnFormat == IdnFormat.ASCII) {
+            return nextIdnDomainToken();
+        }
+        if (!tokenizeDomian) {
+            return once() && setToken(EmailPart.DOMAIN, scanner.at() + 1, addressEnd);
+        }
+        // the suffix beginning at label i has labelCount - i labels
+        final int labelCount = scanner.labelCount();
+        final int label = (maxDomainDepth > 0 ? Math.max(0, labelCount - maxDomainDepth) : 0) + cursor;
+        if (label > labelCount - minDomainDepth) {
+            return false;
+        }
+        cursor++;
+        return setToken(EmailPart.DOMAIN, scanner.labelStart(label), addressEnd);
+    }
+
+
+    /**
+     * Emit the next suffix of the other IDN form of the domain, within the same limits as {@link #nextDomainToken()}.
+     * @return true if a token was emitted
+     */
+    private boolean nextIdnDomainToken() {
+        if (!tokenizeDomian) {
+            return once() && setIdnDomainToken(0);
+        }
+        final int labelCount = scanner.labelCount();
+        final int label = (maxDomainDepth > 0 ? Math.max(0, labelCount - maxDomainDepth) : 0) + cursor;
+        if (label > labelCount - minDomainDepth) {
+            return false;
+        }
+        cursor++;
+        return setIdnDomainToken(label);
+    }
+
+
+    /**
+     * Emit the suffix of the other IDN form of the domain which begins at the given label. Its offsets are those of the
+     * same suffix of the domain as written.
+     * @return true
+     */
+    private boolean setIdnDomainToken(int label) {
+        final int start = idnLabelStarts[label];
+        termAttribute.copyBuffer(idnDomain, start, idnDomainLength - start);
+        typeAttribute.setType(EmailPart.DOMAIN.getType());
+        offsetAttribute.setOffset(correctOffset(bufferOffset + scanner.labelStart(label)), correctOffset(bufferOffset + addressEnd));
+        return true;
+    }
+
+
+    /**
+     * Convert the domain of the current address to its other IDN form: punycode for a domain containing Unicode, or, in
+     * the {@link IdnFormat#BOTH} format, Unicode for a domain containing punycode labels. ASCII domains without punycode
+     * labels, which are the vast majority, are not converted, and cost one check of the scanner's result.
+     * @return true if the domain was converted, in which case {@link #idnDomain} holds the converted form
+     */
+    private boolean convertDomain() {
+        final int domainStart = scanner.at() + 1;
+        final String converted;
+        if (!scanner.asciiDomain()) {
+            try {
+                converted = IDN.toASCII(new String(buffer, domainStart, addressEnd - domainStart), IDN.ALLOW_UNASSIGNED);
+            } catch (IllegalArgumentException e) {
+                // not a valid IDN, so it is only tokenized as written
+                return false;
             }
+        } else if (idnFormat == IdnFormat.BOTH && hasPunycodeLabel()) {
+            converted = IDN.toUnicode(new String(buffer, domainStart, addressEnd - domainStart), IDN.ALLOW_UNASSIGNED);
+        } else {
+            return false;
+        }
+
+        idnDomainLength = converted.length();
+        if (idnDomain.length < idnDomainLength) {
+            idnDomain = new char[ArrayUtil.oversize(idnDomainLength, RamUsageEstimator.NUM_BYTES_CHAR)];
         }
-        if (part != null) {
-            return tokenize(emailString, part);
+        converted.getChars(0, idnDomainLength, idnDomain, 0);
+        final int labelCount = scanner.labelCount();
+        if (idnLabelStarts.length < labelCount) {
+            idnLabelStarts = ArrayUtil.grow(idnLabelStarts, labelCount);
         }
-        List<Token> tokens = new ArrayList<>();
-        for (EmailPart emailPart : EmailPart.values()) {
-            tokens.addAll(tokenize(emailString, emailPart));
+        int label = 0;
+        idnLabelStarts[label++] = 0;
+        for (int i = 0; i < idnDomainLength; i++) {
+            if (idnDomain[i] == '.') {
+                if (label == labelCount) {
+                    return false;
+                }
+                idnLabelStarts[label++] = i + 1;
+            }
         }
-        tokens.addAll(tokenizeSpecial(emailString));
-        return tokens;
+        // the forms must have the same labels for their suffixes to correspond
+        return label == labelCount && !termEquals(idnDomain, 0, idnDomainLength, domainStart, addressEnd);
     }
 
 
     /**
-     * Tokenize the given email address based on the desired {@link EmailPart} and currently set tokenizer options.
-     * @param email the email address to be tokenized
-     * @param part the desired part of the email address
-     * @return a list of {@link Token}s parsed from the given address
-     * @throws IOException
+     * @return true if a label of the current address's domain is in punycode
      */
-    private List<Token> tokenize(final String email, final EmailPart part) throws IOException {
-        String partString = getPart(email, part);
-        if (Strings.isNullOrEmpty(partString)) {
-            // desired part was not found
-            return new ArrayList<>();
+    private boolean hasPunycodeLabel() {
+        for (int label = 0; label < scanner.labelCount(); label++) {
+            final int start = scanner.labelStart(label);
+            if (start + 4 <= addressEnd && (buffer[start] | 0x20) == 'x' && (buffer[start + 1] | 0x20) == 'n'
+                    && buffer[start + 2] == '-' && buffer[start + 3] == '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Emit the one token of the current address which is needed to match the tokens emitted at index time: the address
+     * without its '+' tag if one is emitted, or else the whole address, or the localpart before the '+' (or the whole
+     * localpart), the deepest domain suffix within the depth limits, or the registrable domain. When canonicalizing, the
+     * canonical address is used rather than the whole address.
+     * @return true if a token was emitted
+     */
+    private boolean setSearchToken() {
+        if (canonicalize && (part == null || part == EmailPart.WHOLE)) {
+            return setCanonicalToken();
+        }
+        if (part == null) {
+            return splitOnPlus && scanner.plus() != -1 ? setWithoutPlusToken() : setToken(EmailPart.WHOLE, addressStart, addressEnd);
         }
-        int start = 0;
-        int end = 0;
         switch (part) {
+            case WHOLE:
+                return setToken(EmailPart.WHOLE, addressStart, addressEnd);
             case LOCALPART:
-                return tokenizeLocalPart(partString);
-            case DOMAIN:
-                start = getStartIndex(email, partString);
-                if (!tokenizeDomian) {
-                    end = getEndIndex(start, partString);
-                    return ImmutableList.of(new Token(partString, part, start, end));
+                return setToken(EmailPart.LOCALPART, addressStart, splitOnPlus && scanner.plus() != -1 ? scanner.plus() : scanner.at());
+            case REGISTRABLE_DOMAIN:
+                return publicSuffixList != null && setRegistrableDomainToken();
+            default:
+                if (domainFormat == DomainFormat.REVERSED) {
+                    return setReversedDomainToken();
                 }
-                ReversePathHierarchyTokenizer tokenizer = new ReversePathHierarchyTokenizer('.', '.');
-                tokenizer.setReader(new StringReader(partString));
-                return tokenize(part, tokenizer, start);
-            case WHOLE:
-                end = partString.length();
-                break;
+                final int labelCount = scanner.labelCount();
+                final int depth = tokenizeDomian && maxDomainDepth > 0 ? Math.min(labelCount, maxDomainDepth) : labelCount;
+                if (tokenizeDomian && depth < minDomainDepth) {
+                    return false;
+                }
+                if (idnFormat == IdnFormat.ASCII && !scanner.asciiDomain() && convertDomain()) {
+                    return setIdnDomainToken(labelCount - depth);
+                }
+                return setToken(EmailPart.DOMAIN, scanner.labelStart(labelCount - depth), addressEnd);
         }
-        return ImmutableList.of(new Token(partString, part, start, end));
     }
 
 
     /**
-     * Tokenize the given localpart of an email address
-     * @param localPart the string to be tokenized
-     * @return a list of tokens
+     * Emit the registrable domain of the address, unless the domain is itself a public suffix.
+     * @return true if a token was emitted
+     */
+    private boolean setRegistrableDomainToken() {
+        final int start = publicSuffixList.registrableDomainStart(buffer, scanner.at() + 1, addressEnd);
+        return start != -1 && setToken(EmailPart.REGISTRABLE_DOMAIN, start, addressEnd);
+    }
+
+
+    /**
+     * Emit the labels of the domain in reverse order, each followed by a '.'.
+     * @return true
      */
-    private List<Token> tokenizeLocalPart(String localPart) {
-        List<Token> tokens = new ArrayList<>(1);
-        tokens.add(new Token(localPart, EmailPart.LOCALPART, 0, getEndIndex(0, localPart)));
-        if (splitOnPlus && localPart.contains("+")) {
-            String beforePlus = substringBefore(localPart, "+");
-            tokens.add(new Token(beforePlus, EmailPart.LOCALPART, 0, getEndIndex(0, beforePlus)));
+    private boolean setReversedDomainToken() {
+        final int domainStart = scanner.at() + 1;
+        final int tokenLength = addressEnd - domainStart + 1;
+        final char[] term = termAttribute.resizeBuffer(tokenLength);
+        int labelEnd = addressEnd;
+        int length = 0;
+        for (int label = scanner.labelCount() - 1; label >= 0; label--) {
+            final int labelStart = scanner.labelStart(label);
+            System.arraycopy(buffer, labelStart, term, length, labelEnd - labelStart);
+            length += labelEnd - labelStart;
+            term[length++] = '.';
+            labelEnd = labelStart - 1;
         }
-        if (splitLocalpart != null) {
-            int start;
-            for (String delimiter : splitLocalpart) {
-                if (!localPart.contains(delimiter)) {
+        termAttribute.setLength(length);
+        typeAttribute.setType(EmailPart.DOMAIN.getType());
+        offsetAttribute.setOffset(correctOffset(bufferOffset + domainStart), correctOffset(bufferOffset + addressEnd));
+        return true;
+    }
+
+
+    /**
+     * Emit the next part of the localpart when split on the current delimiter, and then when split on all delimiters
+     * at once if the combined split is enabled. Delimiters which do not occur in the localpart produce no tokens, and
+     * the combined split is only emitted if more than one delimiter occurs.
+     * @return true if a token was emitted
+     */
+    private boolean nextSplitToken() {
+        if (localpartSplitter == null) {
+            return false;
+        }
+        final int localpartEnd = scanner.at();
+        final int delimiterCount = localpartSplitter.delimiterCount();
+        if (cursor++ == 0) {
+            localpartSplitter.match(buffer, addressStart, localpartEnd, matches);
+            delimiter = -1;
+            splitStart = -1;
+        }
+        while (true) {
+            if (splitStart == -1) {
+                delimiter++;
+                if (delimiter < delimiterCount) {
+                    splitMatch = matches.first(delimiter);
+                    if (splitMatch != -1) {
+                        splitStart = addressStart;
+                    }
                     continue;
                 }
-                start = 0;
-                for (String part : Splitter.on(delimiter).splitToList(localPart)) {
-                    tokens.add(new Token(part, EmailPart.LOCALPART, start, start + part.length()));
-                    start += part.length() + delimiter.length();
+                if (delimiter > delimiterCount || !localpartSplitter.combined() || matches.distinct() < 2) {
+                    return false;
+                }
+                splitMatch = 0;
+                splitStart = addressStart;
+            }
+
+            final int start = splitStart;
+            final int end;
+            if (delimiter < delimiterCount) {
+                if (splitMatch == -1) {
+                    end = localpartEnd;
+                    splitStart = -1;
+                } else {
+                    end = matches.start(splitMatch);
+                    splitStart = end + localpartSplitter.delimiterLength(delimiter);
+                    splitMatch = matches.next(splitMatch);
                 }
+                return setToken(EmailPart.LOCALPART, start, end);
+            }
+            // the combined split omits empty parts
+            if (splitMatch == matches.cutCount()) {
+                end = localpartEnd;
+                splitStart = -1;
+            } else {
+                end = matches.cutStart(splitMatch);
+                splitStart = matches.cutEnd(splitMatch);
+                splitMatch++;
+            }
+            if (end > start) {
+                return setToken(EmailPart.LOCALPART, start, end);
             }
         }
-        return tokens;
     }
 
 
     /**
-     * Get a list of {@link Token}s from the given {@link Tokenizer}
-     *
-     * @param part      the email part which should be used in {@link Token} creation
-     * @param tokenizer the tokenizer from which tokens will be gleaned
-     * @return a list of tokens
-     * @throws IOException
+     * Emit the next word or run of digits of the localpart, before any '+' if splitting on '+', when segmented with the
+     * localpart dictionary. Nothing is emitted for a localpart containing anything other than letters and digits, or
+     * which is itself a single word or run of digits.
+     * @return true if a token was emitted
      */
-    List<Token> tokenize(EmailPart part, Tokenizer tokenizer, int start) throws IOException {
-        tokenizer.reset();
-        List<Token> tokens = new ArrayList<>();
-        OffsetAttribute offset;
-        String token;
-        while (tokenizer.incrementToken()) {
-            token = tokenizer.getAttribute(CharTermAttribute.class).toString();
-            offset = tokenizer.getAttribute(OffsetAttribute.class);
-            tokens.add(new Token(token, part, start + offset.startOffset(), start + offset.endOffset()));
+    private boolean nextSegmentToken() {
+        if (cursor == 0) {
+            final int localpartEnd = splitOnPlus && scanner.plus() != -1 ? scanner.plus() : scanner.at();
+            localpartDictionary.segment(buffer, addressStart, localpartEnd, segmentation);
+        }
+        if (cursor == segmentation.count()) {
+            return false;
         }
-        return tokens;
+        final int segment = cursor++;
+        return setToken(EmailPart.LOCALPART, segmentation.start(segment), segmentation.end(segment));
     }
 
 
     /**
-     * Perform non-standard tokenization.
-     * @param email email address to be tokenized
-     * @return a list of tokens
+     * Emit the next edge n-gram of the localpart.
+     * @return true if a token was emitted
      */
-    private List<Token> tokenizeSpecial(String email) {
-        List<Token> tokens = new ArrayList<>();
-        if (splitOnPlus && email.contains("+")) {
-            final String withoutPlus = substringBefore(email, "+") + "@" + substringAfter(email, "@");
-            tokens.add(new Token(withoutPlus, EmailPart.WHOLE, 0, email.length() - 1));
+    private boolean nextLocalpartNGramToken() {
+        if (!nextEdgeNGram(buffer, addressStart, scanner.at(), LOCALPART_NGRAM_TYPE)) {
+            return false;
         }
-        return tokens;
+        offsetAttribute.setOffset(correctOffset(bufferOffset + addressStart), correctOffset(bufferOffset + gramEnd));
+        return true;
     }
 
 
-    private int getStartIndex(String email, String part) {
-        return email.indexOf(part);
+    /**
+     * Emit the next edge n-gram of the domain labels, from the leftmost label. The n-grams of an internationalized
+     * domain are taken from its punycode form if its domain tokens are, with the offsets of the whole label as written.
+     * @return true if a token was emitted
+     */
+    private boolean nextDomainNGramToken() {
+        final boolean ascii = idnConverted && idnFormat == IdnFormat.ASCII;
+        final int labelCount = scanner.labelCount();
+        for (; cursor < labelCount; cursor++, gramEnd = -1) {
+            final int label = cursor;
+            final boolean last = label + 1 == labelCount;
+            final int start = scanner.labelStart(label);
+            final int end = last ? addressEnd : scanner.labelStart(label + 1) - 1;
+            if (ascii) {
+                if (nextEdgeNGram(idnDomain, idnLabelStarts[label], last ? idnDomainLength : idnLabelStarts[label + 1] - 1, DOMAIN_NGRAM_TYPE)) {
+                    offsetAttribute.setOffset(correctOffset(bufferOffset + start), correctOffset(bufferOffset + end));
+                    return true;
+                }
+            } else if (nextEdgeNGram(buffer, start, end, DOMAIN_NGRAM_TYPE)) {
+                offsetAttribute.setOffset(correctOffset(bufferOffset + start), correctOffset(bufferOffset + gramEnd));
+                return true;
+            }
+        }
+        return false;
     }
 
 
-    private int getEndIndex(int start, String part) {
-        return start + part.length();
+    /**
+     * Set the term to the next edge n-gram of the given range of chars, from the shortest, counting code points so
+     * that surrogate pairs are not split. The caller sets the offsets.
+     * @return true if a token was emitted, or false if the range has no n-grams left
+     */
+    private boolean nextEdgeNGram(char[] chars, int start, int end, String type) {
+        if (gramEnd == -1) {
+            gramEnd = start;
+            gramLength = 0;
+        }
+        while (gramEnd < end && gramLength < maxGram) {
+            gramEnd += Character.charCount(Character.codePointAt(chars, gramEnd, end));
+            gramLength++;
+            if (gramLength >= minGram) {
+                termAttribute.copyBuffer(chars, start, gramEnd - start);
+                typeAttribute.setType(type);
+                return true;
+            }
+        }
+        return false;
     }
 
 
     /**
-     * Retrieve the given {@link EmailPart} from the given email address
-     * @param email the email address from which a part will be extracted
-     * @param part the part to extract
-     * @return the extracted part string
+     * Emit the whole address with the part of the localpart following the first '+' removed.
+     * @return true
      */
-    private String getPart(String email, EmailPart part) {
-        switch (part) {
-            case DOMAIN:
-                return substringAfter(email, "@");
-            case LOCALPART:
-                return substringBefore(email, "@");
-            case WHOLE:
-            default:
-                return email;
-        }
+    private boolean setWithoutPlusToken() {
+        final int plus = scanner.plus();
+        final int at = scanner.at();
+        final int beforePlus = plus - addressStart;
+        final int tokenLength = beforePlus + addressEnd - at;
+        final char[] term = termAttribute.resizeBuffer(tokenLength);
+        System.arraycopy(buffer, addressStart, term, 0, beforePlus);
+        System.arraycopy(buffer, at, term, beforePlus, addressEnd - at);
+        termAttribute.setLength(tokenLength);
+        typeAttribute.setType(EmailPart.WHOLE.getType());
+        offsetAttribute.setOffset(correctOffset(bufferOffset + addressStart), correctOffset(bufferOffset + addressEnd - 1));
+        return true;
     }
 
 
     /**
-     * Read the contents of a {@link Reader} into a string
-     *
-     * @param reader the reader to be converted
-     * @return the entire contents of the given reader
-     * @throws IOException
+     * Emit the canonical form of the address: its localpart and domain as rewritten by the rules of its provider.
+     * @return true
      */
-    private String readerToString(Reader reader) throws IOException {
-        char[] arr = new char[8 * 1024];
-        StringBuilder buffer = new StringBuilder();
-        int numCharsRead;
-        while ((numCharsRead = reader.read(arr, 0, arr.length)) != -1) {
-            buffer.append(arr, 0, numCharsRead);
+    private boolean setCanonicalToken() {
+        final int at = scanner.at();
+        final CanonicalRules.Provider provider = canonicalRules.provider(buffer, at + 1, addressEnd);
+        final char[] alias = provider == null ? null : provider.alias();
+        final int domainLength = alias != null ? alias.length : addressEnd - at - 1;
+        final char[] term = termAttribute.resizeBuffer(at - addressStart + 1 + domainLength);
+        int length = 0;
+        if (provider == null) {
+            length = at - addressStart;
+            System.arraycopy(buffer, addressStart, term, 0, length);
+        } else {
+            for (int i = addressStart; i < at; i++) {
+                char c = buffer[i];
+                if (provider.isTagSeparator(c)) {
+                    break;
+                }
+                if (c == '.' && provider.ignoreDots()) {
+                    continue;
+                }
+                if (provider.lowercase() && c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                }
+                term[length++] = c;
+            }
+        }
+        term[length++] = '@';
+        if (alias != null) {
+            System.arraycopy(alias, 0, term, length, domainLength);
+        } else {
+            System.arraycopy(buffer, at + 1, term, length, domainLength);
         }
-        return buffer.toString();
+        termAttribute.setLength(length + domainLength);
+        typeAttribute.setType(CANONICAL_TYPE);
+        offsetAttribute.setOffset(correctOffset(bufferOffset + addressStart), correctOffset(bufferOffset + addressEnd));
+        return true;
     }
 
 
     /**
-     * Retrieve the part of the given string before the first occurrence of the given separator
-     * @param str the string from which to extract a substring
-     * @param separator the separator to search for
-     * @return part of the string before the separator. If the separator is not found, the whole string will be returned.
+     * @return true if the current term is equal to the given range of the input
      */
-    private String substringBefore(String str, String separator) {
-        final int position = str.indexOf(separator);
-        if (position == -1) {
-            // separator not found in str
-            return str;
+    private boolean termEquals(int start, int end) {
+        return termEquals(termAttribute.buffer(), 0, termAttribute.length(), start, end);
+    }
+
+    /**
+     * @return true if the given range of the given chars is equal to the given range of the input
+     */
+    private boolean termEquals(char[] chars, int offset, int length, int start, int end) {
+        if (length != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (chars[offset + i - start] != buffer[i]) {
+                return false;
+            }
         }
-        return str.substring(0, position);
+        return true;
     }
 
 
     /**
-     * Extract the part of the given string which occurs after the first instance of the given separator
-     * @param str the strong from which to extract a substring
-     * @param separator the separator to search for
-     * @return part of the string after the separator. If the separator is not found, an empty string is returned.
+     * Lowercase malformed input as the scanner would lowercase an address: everything following the first '@', and
+     * everything before it if the localpart is lowercased.
      */
-    private String substringAfter(String str, String separator) {
-        final int position = str.indexOf(separator);
-        if (position == -1) {
-            return "";
+    private void lowercaseMalformed() {
+        int i = 0;
+        if (!canonicalizeLocalpart) {
+            while (i < length && buffer[i] != '@') {
+                i++;
+            }
+        }
+        for (; i < length; i++) {
+            final char c = buffer[i];
+            if (c >= 'A' && c <= 'Z') {
+                buffer[i] = (char) (c + ('a' - 'A'));
+            }
         }
-        return str.substring(position + 1, str.length());
     }
 
 
-    private class Token {
-        private final String token;
-        private final EmailPart part;
-        private final int start;
-        private final int end;
+    /**
+     * Set the current token to the given range of the input.
+     * @return true
+     */
+    private boolean setToken(EmailPart emailPart, int start, int end) {
+        termAttribute.copyBuffer(buffer, start, end - start);
+        typeAttribute.setType(emailPart.getType());
+        offsetAttribute.setOffset(correctOffset(bufferOffset + start), correctOffset(bufferOffset + end));
+        return true;
+    }
 
-        public Token(String token, EmailPart part, int start, int end) {
-            this.token = token;
-            this.part = part;
-            this.start = start;
-            this.end = end;
-        }
 
-        public String getToken() {
-            return token;
+    /**
+     * Find the next address in the input, reading more of the input as required. In {@link InputMode#MULTI} mode, the
+     * input is split into candidates on whitespace, the punctuation used in address lists, and quoted strings such as
+     * display names. Candidates which are not well formed addresses are skipped.
+     * @return true if an address was found, in which case {@link #addressStart} and {@link #addressEnd} delimit it
+     * @throws IOException
+     */
+    private boolean nextAddress() throws IOException {
+        while (true) {
+            // skip to the start of the next candidate
+            while (true) {
+                if (position == length) {
+                    bufferOffset += length;
+                    position = length = 0;
+                    if (!fill()) {
+                        return false;
+                    }
+                }
+                final char c = buffer[position];
+                if (inQuote) {
+                    // a quoted string ends at an unescaped quote, or at the end of the line if it was never closed
+                    inQuote = (c != '"' || escaped) && c != '\n';
+                    escaped = !escaped && c == '\\';
+                } else if (c == '"') {
+                    inQuote = true;
+                } else if (!isSeparator(c)) {
+                    break;
+                }
+                position++;
+            }
+
+            // find the end of the candidate
+            int start = position;
+            boolean tooLong = false;
+            while (true) {
+                if (position == length) {
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, length - start);
+                        bufferOffset += start;
+                        length -= start;
+                        position -= start;
+                        start = 0;
+                    } else if (length == buffer.length) {
+                        // the candidate does not fit in the buffer, so it is discarded
+                        tooLong = true;
+                        bufferOffset += length;
+                        position = length = 0;
+                    }
+                    if (!fill()) {
+                        break;
+                    }
+                }
+                final char c = buffer[position];
+                if (c == '"' || isSeparator(c)) {
+                    break;
+                }
+                position++;
+            }
+            if (tooLong) {
+                continue;
+            }
+
+            // ignore trailing periods, such as those ending a sentence
+            int end = position;
+            while (end > start && buffer[end - 1] == '.') {
+                end--;
+            }
+            if (end > start && scanner.scan(buffer, start, end)) {
+                addressStart = start;
+                addressEnd = end;
+                return true;
+            }
         }
+    }
+
 
-        public EmailPart getPart() {
-            return part;
+    /**
+     * Read from the input into the free space at the end of {@link #buffer}.
+     * @return false if the end of the input has been reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        final int numCharsRead = input.read(buffer, length, buffer.length - length);
+        if (numCharsRead == -1) {
+            eof = true;
+            return false;
         }
+        length += numCharsRead;
+        return true;
+    }
 
-        public int getStart() {
-            return start;
+
+    private static boolean isSeparator(char c) {
+        if (c < 128) {
+            return SEPARATORS[c];
         }
+        return Character.isWhitespace(c) || Character.isSpaceChar(c);
+    }
 
-        public int getEnd() {
-            return end;
+
+    /**
+     * Read the contents of the input into {@link #buffer}, up to {@link #maxInputLength} chars. Any remaining input is
+     * read and discarded.
+     * @return false if the input was longer than {@link #maxInputLength}
+     * @throws IOException
+     */
+    private boolean readInput() throws IOException {
+        final int limit = maxInputLength > 0 ? maxInputLength : Integer.MAX_VALUE;
+        length = 0;
+        int numCharsRead;
+        while (length < limit && (numCharsRead = input.read(buffer, length, Math.min(buffer.length, limit) - length)) != -1) {
+            length += numCharsRead;
+            if (length == buffer.length && length < limit) {
+                buffer = Arrays.copyOf(buffer, Math.min(ArrayUtil.oversize(length + 1, RamUsageEstimator.NUM_BYTES_CHAR), limit));
+            }
+        }
+        if (length < limit) {
+            return true;
+        }
+        if (skipBuffer == null) {
+            skipBuffer = new char[256];
+        }
+        while ((numCharsRead = input.read(skipBuffer, 0, skipBuffer.length)) != -1) {
+            skipped += numCharsRead;
         }
+        return skipped == 0;
     }
 }
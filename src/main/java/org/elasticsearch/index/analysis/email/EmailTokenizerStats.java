@@ -0,0 +1,128 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.MalformedPolicy;
+
+/**
+ * Counters describing the input analyzed by the tokenizers of one or more
+ * {@link org.elasticsearch.index.analysis.EmailTokenizerFactory} instances. Safe to update concurrently without locking.
+ */
+public class EmailTokenizerStats {
+    /**
+     * The outcome of looking an input up in a tokenizer's {@link TokenCache}.
+     */
+    public enum CacheResult {
+        HIT, MISS, BYPASS
+    }
+
+    private final CounterMetric documents = new CounterMetric();
+    private final CounterMetric timedDocuments = new CounterMetric();
+    private final CounterMetric timeInNanos = new CounterMetric();
+    private final CounterMetric[] tokens = counters(EmailPart.values().length);
+    private final CounterMetric otherTokens = new CounterMetric();
+    private final CounterMetric[] malformed = counters(MalformedPolicy.values().length);
+    private final CounterMetric[] inputLengths = counters(TokenizerStats.LENGTH_BUCKETS);
+    private final CounterMetric[] tokenCache = counters(CacheResult.values().length);
+
+    private static CounterMetric[] counters(int count) {
+        final CounterMetric[] counters = new CounterMetric[count];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new CounterMetric();
+        }
+        return counters;
+    }
+
+    /**
+     * Record an analyzed document.
+     * @param inputLength the length of the document's input
+     * @param timed whether the time spent analyzing the document was measured
+     * @param nanos the time spent analyzing the document, if it was measured
+     * @param partTokens the number of tokens emitted for each {@link EmailPart}, indexed by ordinal
+     * @param otherTokens the number of tokens emitted with any other type
+     */
+    public void onDocument(int inputLength, boolean timed, long nanos, int[] partTokens, int otherTokens) {
+        documents.inc();
+        if (timed) {
+            timedDocuments.inc();
+            timeInNanos.inc(nanos);
+        }
+        inputLengths[TokenizerStats.lengthBucket(inputLength)].inc();
+        for (int i = 0; i < partTokens.length; i++) {
+            if (partTokens[i] != 0) {
+                tokens[i].inc(partTokens[i]);
+            }
+        }
+        if (otherTokens != 0) {
+            this.otherTokens.inc(otherTokens);
+        }
+    }
+
+    /**
+     * Record an input which was not a well formed address.
+     * @param policy the policy which was applied to the input
+     */
+    public void onMalformed(MalformedPolicy policy) {
+        malformed[policy.ordinal()].inc();
+    }
+
+    /**
+     * Record the outcome of looking an input up in a token cache.
+     */
+    public void onTokenCache(CacheResult result) {
+        tokenCache[result.ordinal()].inc();
+    }
+
+    /**
+     * @param policy a malformed input policy
+     * @return the number of malformed inputs to which the given policy was applied
+     */
+    public long malformedCount(MalformedPolicy policy) {
+        return malformed[policy.ordinal()].count();
+    }
+
+    /**
+     * @return the total number of malformed inputs
+     */
+    public long malformedCount() {
+        long count = 0;
+        for (CounterMetric counter : malformed) {
+            count += counter.count();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of documents analyzed
+     */
+    public long documentCount() {
+        return documents.count();
+    }
+
+    /**
+     * @return the number of documents whose analysis was timed
+     */
+    public long timedDocumentCount() {
+        return timedDocuments.count();
+    }
+
+    /**
+     * @return a copy of the current values of all counters. The time is estimated from the documents which were timed.
+     */
+    public TokenizerStats stats() {
+        final long documentCount = documents.count();
+        final long timedDocumentCount = timedDocuments.count();
+        final long nanos = timedDocumentCount == 0 ? 0
+                : (long) ((double) timeInNanos.count() * Math.max(documentCount, timedDocumentCount) / timedDocumentCount);
+        return new TokenizerStats(documentCount, nanos, counts(tokens), otherTokens.count(),
+                counts(malformed), counts(inputLengths), counts(tokenCache));
+    }
+
+    private static long[] counts(CounterMetric[] counters) {
+        final long[] counts = new long[counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            counts[i] = counters[i].count();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,52 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the {@link EmailTokenizerStats} of every email tokenizer on a node, keyed by tokenizer name. Tokenizers with the
+ * same name in different indices share their stats, and stats outlive the indices which contributed to them.
+ */
+public class EmailTokenizerStatsService extends AbstractComponent {
+    private final ConcurrentMap<String, EmailTokenizerStats> stats = new ConcurrentHashMap<>();
+
+    @Inject
+    public EmailTokenizerStatsService(Settings settings) {
+        super(settings);
+    }
+
+
+    /**
+     * @param tokenizer the name of a tokenizer
+     * @return the stats of the given tokenizer, which are created if they do not yet exist
+     */
+    public EmailTokenizerStats stats(String tokenizer) {
+        EmailTokenizerStats tokenizerStats = stats.get(tokenizer);
+        if (tokenizerStats == null) {
+            tokenizerStats = new EmailTokenizerStats();
+            final EmailTokenizerStats existing = stats.putIfAbsent(tokenizer, tokenizerStats);
+            if (existing != null) {
+                tokenizerStats = existing;
+            }
+        }
+        return tokenizerStats;
+    }
+
+
+    /**
+     * @return a copy of the current stats of every tokenizer on this node
+     */
+    public Map<String, TokenizerStats> stats() {
+        final Map<String, TokenizerStats> copy = new HashMap<>();
+        for (Map.Entry<String, EmailTokenizerStats> entry : stats.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().stats());
+        }
+        return copy;
+    }
+}
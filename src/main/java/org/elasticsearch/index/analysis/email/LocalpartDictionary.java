@@ -0,0 +1,225 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.NoOutputs;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A word list compiled into an FST, which segments localparts without delimiters, such as {@code johnsmith1984}, into
+ * known words and runs of digits: {@code john}, {@code smith} and {@code 1984}. Immutable, so a single instance may be
+ * shared by any number of tokenizers, each of which segments with a {@link Segmentation} of its own.
+ *
+ * Words are matched case insensitively. Segmentation is by dynamic programming over the positions of the localpart:
+ * from each position, the FST is walked for as long as the following chars are a prefix of some word, so the cost is
+ * bounded by the localpart's length times the length of the longest word. The chosen segmentation leaves the fewest
+ * chars outside of any word or run of digits, and then has the fewest segments; of equally good segmentations, the
+ * one with the longest leading words is chosen.
+ */
+public final class LocalpartDictionary {
+    /**
+     * Localparts longer than this, the RFC 5321 limit, are not segmented.
+     */
+    public static final int MAX_LOCALPART_LENGTH = 64;
+
+    /**
+     * A char outside of any segment costs more than any number of segments.
+     */
+    private static final int UNMATCHED_COST = MAX_LOCALPART_LENGTH + 1;
+
+    private static final byte UNMATCHED = 0;
+    private static final byte WORD = 1;
+    private static final byte DIGITS = 2;
+
+    private final FST<Object> fst;
+    private final int wordCount;
+
+    /**
+     * @param words the words to segment localparts into. Blank words are ignored.
+     */
+    public LocalpartDictionary(Collection<String> words) {
+        final SortedSet<String> sorted = new TreeSet<>();
+        for (String word : words) {
+            final String trimmed = word.trim();
+            if (!trimmed.isEmpty() && trimmed.length() <= MAX_LOCALPART_LENGTH) {
+                sorted.add(trimmed.toLowerCase(Locale.ROOT));
+            }
+        }
+        if (sorted.isEmpty()) {
+            throw new IllegalArgumentException("Localpart dictionary contains no words");
+        }
+        final NoOutputs outputs = NoOutputs.getSingleton();
+        final Builder<Object> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, outputs);
+        final IntsRefBuilder scratch = new IntsRefBuilder();
+        try {
+            for (String word : sorted) {
+                builder.add(Util.toUTF16(word, scratch), outputs.getNoOutput());
+            }
+            this.fst = builder.finish();
+        } catch (IOException e) {
+            // the FST is built in memory
+            throw new IllegalStateException("Failed to compile localpart dictionary", e);
+        }
+        this.wordCount = sorted.size();
+    }
+
+
+    /**
+     * @return the number of distinct words
+     */
+    public int wordCount() {
+        return wordCount;
+    }
+
+
+    /**
+     * @return the approximate heap used by the compiled dictionary, in bytes
+     */
+    public long ramBytesUsed() {
+        return fst.ramBytesUsed();
+    }
+
+
+    /**
+     * Segment the given range of the given buffer, if it consists only of letters and digits.
+     * @param segmentation receives the segments. Its previous contents are discarded.
+     * @return true if the range was segmented into more than one part. Otherwise, there are no segments.
+     */
+    public boolean segment(char[] buffer, int start, int end, Segmentation segmentation) {
+        segmentation.count = 0;
+        final int length = end - start;
+        if (length < 2 || length > MAX_LOCALPART_LENGTH) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!Character.isLetterOrDigit(buffer[i])) {
+                return false;
+            }
+        }
+        if (segmentation.fst != fst) {
+            segmentation.fst = fst;
+            segmentation.reader = fst.getBytesReader();
+        }
+
+        // cost[i] is the cost of the best segmentation of the first i chars, whose last segment begins at from[i]
+        final int[] cost = segmentation.cost;
+        final int[] from = segmentation.from;
+        final byte[] kind = segmentation.kind;
+        cost[0] = 0;
+        for (int i = 1; i <= length; i++) {
+            cost[i] = Integer.MAX_VALUE;
+        }
+        final FST.Arc<Object> arc = segmentation.arc;
+        for (int i = 0; i < length; i++) {
+            final int base = cost[i];
+            relax(segmentation, i, i + 1, base + UNMATCHED_COST, UNMATCHED);
+            if (isDigit(buffer[start + i]) && (i == 0 || !isDigit(buffer[start + i - 1]))) {
+                int j = i + 1;
+                while (j < length && isDigit(buffer[start + j])) {
+                    j++;
+                }
+                relax(segmentation, i, j, base + 1, DIGITS);
+            }
+            fst.getFirstArc(arc);
+            try {
+                for (int j = i; j < length; j++) {
+                    if (fst.findTargetArc(Character.toLowerCase(buffer[start + j]), arc, arc, segmentation.reader) == null) {
+                        break;
+                    }
+                    if (arc.isFinal()) {
+                        relax(segmentation, i, j + 1, base + 1, WORD);
+                    }
+                }
+            } catch (IOException e) {
+                // the FST is read from memory
+                throw new IllegalStateException(e);
+            }
+        }
+        if (kind[length] != UNMATCHED && from[length] == 0) {
+            // a single word or run of digits is the localpart itself
+            return false;
+        }
+
+        // walk the chosen segments back from the end, and keep the words and runs of digits, in order
+        int count = 0;
+        for (int i = length; i > 0; i = from[i]) {
+            if (kind[i] != UNMATCHED) {
+                count++;
+            }
+        }
+        segmentation.ensureCapacity(count);
+        segmentation.count = count;
+        for (int i = length; i > 0; i = from[i]) {
+            if (kind[i] != UNMATCHED) {
+                count--;
+                segmentation.starts[count] = start + from[i];
+                segmentation.ends[count] = start + i;
+            }
+        }
+        return segmentation.count > 0;
+    }
+
+    /**
+     * Record a segment from i to j if it ends the best segmentation of the first j chars so far. Segments are tried in
+     * order of their start, so of equally costly segmentations, the one with the latest last segment wins.
+     */
+    private static void relax(Segmentation segmentation, int i, int j, int cost, byte kind) {
+        if (cost <= segmentation.cost[j]) {
+            segmentation.cost[j] = cost;
+            segmentation.from[j] = i;
+            segmentation.kind[j] = kind;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+
+    /**
+     * The words and runs of digits found in one localpart. Reused across localparts, so it should be owned by a single
+     * tokenizer.
+     */
+    public static final class Segmentation {
+        private final int[] cost = new int[MAX_LOCALPART_LENGTH + 1];
+        private final int[] from = new int[MAX_LOCALPART_LENGTH + 1];
+        private final byte[] kind = new byte[MAX_LOCALPART_LENGTH + 1];
+        private final FST.Arc<Object> arc = new FST.Arc<>();
+        private FST<Object> fst;
+        private FST.BytesReader reader;
+
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        private int count;
+
+        private void ensureCapacity(int count) {
+            if (starts.length < count) {
+                starts = ArrayUtil.grow(starts, count);
+                ends = ArrayUtil.grow(ends, count);
+            }
+        }
+
+        /**
+         * @return the number of segments
+         */
+        public int count() {
+            return count;
+        }
+
+        public int start(int segment) {
+            return starts[segment];
+        }
+
+        public int end(int segment) {
+            return ends[segment];
+        }
+    }
+}
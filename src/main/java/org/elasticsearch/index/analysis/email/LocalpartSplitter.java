@@ -0,0 +1,246 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled set of localpart delimiters. Every occurrence of every delimiter within a localpart is found in a single
+ * pass, by indexing the delimiters on their first char. Immutable, so a single instance may be shared by any number of
+ * tokenizers.
+ *
+ * Each delimiter matches as {@code String.indexOf} would when repeatedly searching from the end of its previous
+ * match: matches of one delimiter never overlap. The combined split instead cuts at every position where any delimiter
+ * matches, preferring the longest delimiter when several match at the same position.
+ */
+public final class LocalpartSplitter {
+    private final char[][] delimiters;
+
+    /**
+     * Indices of the delimiters beginning with each ASCII char, in configuration order.
+     */
+    private final int[][] byFirstChar = new int[128][];
+
+    /**
+     * Indices of the delimiters beginning with a non-ASCII char, which are checked at every non-ASCII char.
+     */
+    private final int[] nonAscii;
+
+    private final boolean combined;
+
+    /**
+     * @param delimiters the strings on which to split the localpart. Empty strings are ignored.
+     * @param combined if true, the localpart will also be split on all of the delimiters at once
+     */
+    public LocalpartSplitter(String[] delimiters, boolean combined) {
+        final List<char[]> compiled = new ArrayList<>(delimiters.length);
+        for (String delimiter : delimiters) {
+            if (!delimiter.isEmpty()) {
+                compiled.add(delimiter.toCharArray());
+            }
+        }
+        this.delimiters = compiled.toArray(new char[compiled.size()][]);
+        this.combined = combined;
+
+        int[] nonAscii = new int[0];
+        for (int d = 0; d < this.delimiters.length; d++) {
+            final char first = this.delimiters[d][0];
+            if (first < 128) {
+                byFirstChar[first] = append(byFirstChar[first], d);
+            } else {
+                nonAscii = append(nonAscii, d);
+            }
+        }
+        this.nonAscii = nonAscii.length == 0 ? null : nonAscii;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) {
+            return new int[]{value};
+        }
+        final int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+
+    /**
+     * @return the number of non-empty delimiters
+     */
+    public int delimiterCount() {
+        return delimiters.length;
+    }
+
+    /**
+     * @param delimiter the index of a delimiter
+     * @return the length of the given delimiter
+     */
+    public int delimiterLength(int delimiter) {
+        return delimiters[delimiter].length;
+    }
+
+    /**
+     * @return true if the localpart will also be split on all of the delimiters at once
+     */
+    public boolean combined() {
+        return combined;
+    }
+
+
+    /**
+     * Find every delimiter in the given range of the given buffer.
+     * @param matches receives the matches. Its previous contents are discarded.
+     */
+    public void match(char[] buffer, int start, int end, Matches matches) {
+        matches.reset(delimiters.length);
+        int combinedEnd = start;
+        for (int i = start; i < end; i++) {
+            final char c = buffer[i];
+            final int[] candidates = c < 128 ? byFirstChar[c] : nonAscii;
+            if (candidates == null) {
+                continue;
+            }
+            int longest = 0;
+            for (int d : candidates) {
+                final char[] delimiter = delimiters[d];
+                if (!regionMatches(buffer, i, end, delimiter)) {
+                    continue;
+                }
+                if (i >= matches.lastEnd[d]) {
+                    matches.add(d, i, i + delimiter.length);
+                }
+                longest = Math.max(longest, delimiter.length);
+            }
+            if (combined && longest > 0 && i >= combinedEnd) {
+                combinedEnd = i + longest;
+                matches.cut(i, combinedEnd);
+            }
+        }
+    }
+
+    private static boolean regionMatches(char[] buffer, int offset, int end, char[] delimiter) {
+        if (end - offset < delimiter.length) {
+            return false;
+        }
+        // the first char is only known to match for ASCII delimiters
+        for (int i = 0; i < delimiter.length; i++) {
+            if (buffer[offset + i] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * The delimiters found in one localpart. Reused across localparts, so it should be owned by a single tokenizer.
+     */
+    public static final class Matches {
+        /**
+         * Start of each match, in order of position.
+         */
+        private int[] starts = new int[8];
+
+        /**
+         * Index of the next match of the same delimiter, or -1.
+         */
+        private int[] next = new int[8];
+        private int count;
+
+        /**
+         * Per delimiter: the first and last of its matches, or -1, and the end of its last match.
+         */
+        private int[] first = new int[0];
+        private int[] last = new int[0];
+        private int[] lastEnd = new int[0];
+        private int distinct;
+
+        /**
+         * Ranges of the combined split's delimiters, in order of position.
+         */
+        private int[] cutStarts = new int[8];
+        private int[] cutEnds = new int[8];
+        private int cutCount;
+
+        private void reset(int delimiterCount) {
+            if (first.length != delimiterCount) {
+                first = new int[delimiterCount];
+                last = new int[delimiterCount];
+                lastEnd = new int[delimiterCount];
+            }
+            Arrays.fill(first, -1);
+            Arrays.fill(last, -1);
+            Arrays.fill(lastEnd, 0);
+            count = 0;
+            distinct = 0;
+            cutCount = 0;
+        }
+
+        private void add(int delimiter, int start, int end) {
+            if (count == starts.length) {
+                starts = ArrayUtil.grow(starts, count + 1);
+                next = ArrayUtil.grow(next, count + 1);
+            }
+            starts[count] = start;
+            next[count] = -1;
+            if (first[delimiter] == -1) {
+                first[delimiter] = count;
+                distinct++;
+            } else {
+                next[last[delimiter]] = count;
+            }
+            last[delimiter] = count;
+            lastEnd[delimiter] = end;
+            count++;
+        }
+
+        private void cut(int start, int end) {
+            if (cutCount == cutStarts.length) {
+                cutStarts = ArrayUtil.grow(cutStarts, cutCount + 1);
+                cutEnds = ArrayUtil.grow(cutEnds, cutCount + 1);
+            }
+            cutStarts[cutCount] = start;
+            cutEnds[cutCount] = end;
+            cutCount++;
+        }
+
+        /**
+         * @return the index of the first match of the given delimiter, or -1 if it does not occur
+         */
+        public int first(int delimiter) {
+            return first[delimiter];
+        }
+
+        /**
+         * @return the index of the next match of the same delimiter as the given match, or -1 if there are no more
+         */
+        public int next(int match) {
+            return next[match];
+        }
+
+        public int start(int match) {
+            return starts[match];
+        }
+
+        /**
+         * @return the number of different delimiters which occur
+         */
+        public int distinct() {
+            return distinct;
+        }
+
+        public int cutCount() {
+            return cutCount;
+        }
+
+        public int cutStart(int cut) {
+            return cutStarts[cut];
+        }
+
+        public int cutEnd(int cut) {
+            return cutEnds[cut];
+        }
+    }
+}
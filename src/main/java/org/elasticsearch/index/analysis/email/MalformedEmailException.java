@@ -0,0 +1,19 @@
+package org.elasticsearch.index.analysis.email;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an email tokenizer rejects its input. Malformed input is common enough in some feeds that the cost of
+ * filling in a stack trace matters, and the stack trace would always point at the tokenizer anyway, so none is
+ * recorded.
+ */
+public class MalformedEmailException extends IOException {
+    public MalformedEmailException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,358 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A compiled <a href="https://publicsuffix.org/">Public Suffix List</a>, used to find the registrable domain of a
+ * domain name: its public suffix plus one more label, such as {@code example.co.uk} for {@code mail.example.co.uk}.
+ * Immutable, so a single instance may be shared by the whole node.
+ *
+ * The rules are compiled into a trie of labels in reverse order, so that {@code co.uk} is the child {@code co} of the
+ * child {@code uk} of the root. Every edge of the trie is stored in a single open addressing hash table keyed on the
+ * parent node and the label, so a lookup walks the labels of a domain from right to left at the cost of one hash
+ * probe per label, without allocating. Unicode rules are also compiled in their ASCII (punycode) form.
+ */
+public final class PublicSuffixList {
+    /**
+     * Name of the list bundled with the plugin, relative to this class.
+     */
+    public static final String BUNDLED = "public_suffix_list.dat";
+
+    private static final byte RULE = 1;
+    private static final byte WILDCARD = 2;
+    private static final byte EXCEPTION = 4;
+
+    /**
+     * Label chars of all edges. Labels are interned, so a label used by several edges is stored once.
+     */
+    private final char[] labels;
+
+    /**
+     * Per node, the root being node 0: the parent node, the label of the edge from the parent, as its offset within
+     * {@link #labels} shifted left by 8 bits ORed with its length, and the flags of the rule ending at the node, if any.
+     */
+    private final int[] parents;
+    private final int[] edgeLabels;
+    private final byte[] flags;
+
+    /**
+     * Open addressing hash table of nodes, hashed on their parent and label. 0 marks an empty slot.
+     */
+    private final int[] table;
+    private final int mask;
+    private final int shift;
+
+    private final int ruleCount;
+
+    private PublicSuffixList(Compiler compiler) {
+        this.labels = Arrays.copyOf(compiler.labels, compiler.labelLength);
+        this.parents = Arrays.copyOf(compiler.parents, compiler.nodeCount);
+        this.edgeLabels = Arrays.copyOf(compiler.edgeLabels, compiler.nodeCount);
+        this.flags = Arrays.copyOf(compiler.flags, compiler.nodeCount);
+        this.ruleCount = compiler.ruleCount;
+
+        // keep the load factor at or below 0.75
+        int size = 2;
+        while (size * 3 < compiler.nodeCount * 4) {
+            size <<= 1;
+        }
+        this.table = new int[size];
+        this.mask = size - 1;
+        this.shift = Integer.numberOfLeadingZeros(size) + 1;
+        for (int node = 1; node < parents.length; node++) {
+            final int offset = edgeLabels[node] >>> 8;
+            int slot = hash(parents[node], labels, offset, offset + (edgeLabels[node] & 0xFF)) >>> shift;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = node;
+        }
+    }
+
+
+    /**
+     * @return the list bundled with the plugin
+     * @throws IOException
+     */
+    public static PublicSuffixList loadBundled() throws IOException {
+        try (InputStream in = PublicSuffixList.class.getResourceAsStream(BUNDLED)) {
+            if (in == null) {
+                throw new IOException("Bundled public suffix list [" + BUNDLED + "] not found");
+            }
+            return load(in);
+        }
+    }
+
+
+    /**
+     * Compile a list in the format of {@code public_suffix_list.dat}: one rule per line, ignoring blank lines, comments
+     * beginning with {@code //}, and anything following whitespace. Wildcards are only supported as the leftmost label
+     * of a rule, which is the only place the list uses them; other rules containing wildcards are ignored.
+     * @param in the list, encoded as UTF-8. Not closed.
+     * @return the compiled list
+     * @throws IOException
+     */
+    public static PublicSuffixList load(InputStream in) throws IOException {
+        final Compiler compiler = new Compiler();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            for (int i = 0; i < line.length(); i++) {
+                if (Character.isWhitespace(line.charAt(i))) {
+                    line = line.substring(0, i);
+                    break;
+                }
+            }
+            compiler.addRule(line);
+        }
+        return new PublicSuffixList(compiler);
+    }
+
+
+    /**
+     * @return the number of rules in the list
+     */
+    public int ruleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return the approximate heap used by the compiled list, in bytes
+     */
+    public long ramBytesUsed() {
+        return RamUsageEstimator.shallowSizeOfInstance(PublicSuffixList.class) + RamUsageEstimator.sizeOf(labels)
+                + RamUsageEstimator.sizeOf(parents) + RamUsageEstimator.sizeOf(edgeLabels) + RamUsageEstimator.sizeOf(flags)
+                + RamUsageEstimator.sizeOf(table);
+    }
+
+
+    /**
+     * @param domain a domain name
+     * @return the registrable domain of the given domain, or null if the domain is itself a public suffix
+     */
+    public String registrableDomain(String domain) {
+        final char[] chars = domain.toCharArray();
+        final int start = registrableDomainStart(chars, 0, chars.length);
+        return start == -1 ? null : domain.substring(start);
+    }
+
+
+    /**
+     * @param buffer a buffer containing a domain name
+     * @param start index of the first char of the domain
+     * @param end index after the last char of the domain
+     * @return index of the first char of the domain's registrable domain, or -1 if the domain is itself a public suffix
+     */
+    public int registrableDomainStart(char[] buffer, int start, int end) {
+        final int suffixStart = publicSuffixStart(buffer, start, end);
+        if (suffixStart <= start) {
+            return -1;
+        }
+        return labelStart(buffer, start, suffixStart - 1);
+    }
+
+
+    /**
+     * @param buffer a buffer containing a domain name
+     * @param start index of the first char of the domain
+     * @param end index after the last char of the domain
+     * @return index of the first char of the domain's public suffix. If no rule matches, the public suffix is the
+     * domain's last label.
+     */
+    public int publicSuffixStart(char[] buffer, int start, int end) {
+        int labelEnd = end;
+        int labelStart = labelStart(buffer, start, labelEnd);
+        int suffixStart = labelStart;
+        int node = 0;
+        while (true) {
+            node = child(node, buffer, labelStart, labelEnd);
+            if (node == 0) {
+                return suffixStart;
+            }
+            final byte nodeFlags = flags[node];
+            if ((nodeFlags & EXCEPTION) != 0) {
+                // exceptions take priority over all other rules, and remove their leftmost label
+                return labelEnd + 1;
+            }
+            if ((nodeFlags & RULE) != 0) {
+                suffixStart = labelStart;
+            }
+            if ((nodeFlags & WILDCARD) != 0 && labelStart > start) {
+                suffixStart = labelStart(buffer, start, labelStart - 1);
+            }
+            if (labelStart == start) {
+                return suffixStart;
+            }
+            labelEnd = labelStart - 1;
+            labelStart = labelStart(buffer, start, labelEnd);
+        }
+    }
+
+
+    /**
+     * @return the child of the given node along the edge with the given label, or 0 if there is none
+     */
+    private int child(int parent, char[] buffer, int start, int end) {
+        final int length = end - start;
+        for (int slot = hash(parent, buffer, start, end) >>> shift; ; slot = (slot + 1) & mask) {
+            final int node = table[slot];
+            if (node == 0) {
+                return 0;
+            }
+            if (parents[node] == parent && (edgeLabels[node] & 0xFF) == length && labelEquals(edgeLabels[node] >>> 8, buffer, start, length)) {
+                return node;
+            }
+        }
+    }
+
+    private boolean labelEquals(int offset, char[] buffer, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            if (labels[offset + i] != lowerCase(buffer[start + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a hash of the given parent and label, whose high bits are used to select a slot
+     */
+    private static int hash(int parent, char[] chars, int start, int end) {
+        int h = parent;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lowerCase(chars[i]);
+        }
+        // Fibonacci hashing spreads consecutive parents and similar labels across the high bits
+        return h * 0x9E3779B9;
+    }
+
+
+    /**
+     * @return index of the first char of the label ending at the given index
+     */
+    private static int labelStart(char[] buffer, int start, int labelEnd) {
+        for (int i = labelEnd - 1; i >= start; i--) {
+            if (buffer[i] == '.') {
+                return i + 1;
+            }
+        }
+        return start;
+    }
+
+    private static char lowerCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+
+    /**
+     * Builds the trie one rule at a time.
+     */
+    private static final class Compiler {
+        private final Map<String, Integer> nodes = new HashMap<>();
+        private final Map<String, Integer> labelOffsets = new HashMap<>();
+        private char[] labels = new char[1024];
+        private int labelLength;
+        private int[] parents = new int[1024];
+        private int[] edgeLabels = new int[1024];
+        private byte[] flags = new byte[1024];
+        private int nodeCount = 1;
+        private int ruleCount;
+
+        private void addRule(String rule) {
+            byte flag = RULE;
+            if (rule.startsWith("!")) {
+                flag = EXCEPTION;
+                rule = rule.substring(1);
+            } else if (rule.startsWith("*.")) {
+                // a wildcard is a flag on the rule's parent, meaning that any one further label is also a public suffix
+                flag = WILDCARD;
+                rule = rule.substring(2);
+            }
+            if (rule.isEmpty() || rule.indexOf('*') != -1) {
+                return;
+            }
+            rule = rule.toLowerCase(Locale.ROOT);
+            addPath(rule, flag);
+            if (!isAscii(rule)) {
+                try {
+                    addPath(IDN.toASCII(rule, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT), flag);
+                } catch (IllegalArgumentException e) {
+                    // not representable in ASCII, so no ASCII domain can match it
+                }
+            }
+            ruleCount++;
+        }
+
+        /**
+         * Add the nodes for each label of the given rule, from right to left, and flag the last of them.
+         */
+        private void addPath(String rule, byte flag) {
+            int node = 0;
+            int end = rule.length();
+            while (end > 0) {
+                final int start = rule.lastIndexOf('.', end - 1) + 1;
+                final String path = rule.substring(start);
+                final Integer existing = nodes.get(path);
+                if (existing != null) {
+                    node = existing;
+                } else {
+                    node = addNode(node, rule.substring(start, end));
+                    nodes.put(path, node);
+                }
+                end = start - 1;
+            }
+            flags[node] |= flag;
+        }
+
+        private int addNode(int parent, String label) {
+            if (label.length() > 0xFF) {
+                throw new IllegalArgumentException("Label longer than 255 chars: " + label);
+            }
+            Integer offset = labelOffsets.get(label);
+            if (offset == null) {
+                offset = labelLength;
+                labelOffsets.put(label, offset);
+                if (labels.length < labelLength + label.length()) {
+                    labels = Arrays.copyOf(labels, Math.max(labels.length * 2, labelLength + label.length()));
+                }
+                label.getChars(0, label.length(), labels, labelLength);
+                labelLength += label.length();
+            }
+            if (nodeCount == parents.length) {
+                parents = Arrays.copyOf(parents, nodeCount * 2);
+                edgeLabels = Arrays.copyOf(edgeLabels, nodeCount * 2);
+                flags = Arrays.copyOf(flags, nodeCount * 2);
+            }
+            parents[nodeCount] = parent;
+            edgeLabels[nodeCount] = offset << 8 | label.length();
+            return nodeCount++;
+        }
+
+        private static boolean isAscii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) >= 128) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.env.Environment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link PublicSuffixList} used by every email tokenizer and field on a node. The list is compiled once, when
+ * the node starts, from {@code public_suffix_list.dat} in the {@code analysis-email} directory of the node's config
+ * directory if present, or else from the list bundled with the plugin. The file may be changed with the
+ * {@link #LIST_SETTING} node setting, which is resolved against the config directory.
+ */
+public class PublicSuffixListService extends AbstractComponent {
+    public static final String LIST_SETTING = "email_analysis.public_suffix_list";
+    public static final String DEFAULT_LIST = "analysis-email/" + PublicSuffixList.BUNDLED;
+
+    private final PublicSuffixList publicSuffixList;
+
+    public PublicSuffixListService(Settings settings, Environment environment) {
+        super(settings);
+        final String configured = settings.get(LIST_SETTING);
+        final Path path = environment.configFile().resolve(configured == null ? DEFAULT_LIST : configured);
+        final boolean external = configured != null || Files.exists(path);
+
+        final long startNanos = System.nanoTime();
+        try {
+            if (external) {
+                try (InputStream in = Files.newInputStream(path)) {
+                    publicSuffixList = PublicSuffixList.load(in);
+                }
+            } else {
+                publicSuffixList = PublicSuffixList.loadBundled();
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchException("failed to load public suffix list [{}]", e, external ? path : PublicSuffixList.BUNDLED);
+        }
+        logger.info("loaded public suffix list [{}]: [{}] rules compiled to [{}] in [{}]",
+                external ? path : PublicSuffixList.BUNDLED, publicSuffixList.ruleCount(),
+                new ByteSizeValue(publicSuffixList.ramBytesUsed()),
+                new TimeValue(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+    }
+
+
+    public PublicSuffixList publicSuffixList() {
+        return publicSuffixList;
+    }
+}
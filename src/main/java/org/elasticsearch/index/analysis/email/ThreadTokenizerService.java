@@ -0,0 +1,39 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.analysis.AnalysisService;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.analysis.TokenizerFactory;
+import org.elasticsearch.indices.IndicesLifecycle;
+
+/**
+ * Closes the per-thread tokenizers of an index's {@link EmailTokenizerFactory} instances when the index is removed from
+ * the node, as the analysis service of the index only closes its analyzers.
+ */
+public class ThreadTokenizerService extends AbstractComponent {
+    @Inject
+    public ThreadTokenizerService(Settings settings, IndicesLifecycle indicesLifecycle) {
+        super(settings);
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void beforeIndexClosed(IndexService indexService) {
+                closeThreadTokenizers(indexService);
+            }
+        });
+    }
+
+
+    private void closeThreadTokenizers(IndexService indexService) {
+        final AnalysisService analysisService = indexService.analysisService();
+        for (String name : indexService.indexSettings().getGroups("index.analysis.tokenizer").keySet()) {
+            final TokenizerFactory factory = analysisService.tokenizer(name);
+            if (factory instanceof EmailTokenizerFactory) {
+                ((EmailTokenizerFactory) factory).closeThreadTokenizers();
+                logger.trace("closed thread tokenizers of [{}] in index [{}]", name, indexService.index().name());
+            }
+        }
+    }
+}
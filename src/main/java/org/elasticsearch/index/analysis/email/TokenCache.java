@@ -0,0 +1,209 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of the tokens produced for whole inputs, so that an input which repeats, such as
+ * the sender of a stream of events, is only tokenized once. Entries are keyed on the raw chars of the input, and hold
+ * the final tokens (after hashing, if any), which are replayed into a tokenizer's attributes on a hit.
+ *
+ * Each tokenizer has a cache of its own, so no locking is needed: Elasticsearch reuses one tokenizer per analyzer per
+ * thread, so a cache sees the inputs analyzed by one thread with one analyzer. Lookups do not allocate. Instances are
+ * not thread safe.
+ */
+public final class TokenCache {
+    private final int size;
+    private final int maxInputLength;
+    private final Map<CharsRef, Entry> entries;
+    private final CharsRef probe = new CharsRef();
+
+    /**
+     * @param size the maximum number of inputs to cache
+     * @param maxInputLength inputs longer than this are not cached
+     */
+    public TokenCache(final int size, int maxInputLength) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Token cache size must be positive: " + size);
+        }
+        this.size = size;
+        this.maxInputLength = maxInputLength;
+        this.entries = new LinkedHashMap<CharsRef, Entry>(Math.min(size, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CharsRef, Entry> eldest) {
+                return size() > TokenCache.this.size;
+            }
+        };
+    }
+
+
+    /**
+     * @return true if an input of the given length may be cached
+     */
+    public boolean accepts(int length) {
+        return length <= maxInputLength;
+    }
+
+
+    /**
+     * @param buffer a buffer containing an input, from its start
+     * @param length the length of the input
+     * @return the cached tokens of the given input, or null if it is not cached
+     */
+    public Entry get(char[] buffer, int length) {
+        probe.chars = buffer;
+        probe.offset = 0;
+        probe.length = length;
+        final Entry entry = entries.get(probe);
+        probe.chars = CharsRef.EMPTY_CHARS;
+        return entry;
+    }
+
+
+    /**
+     * Cache the tokens recorded by the given recorder.
+     */
+    public void put(Recorder recorder) {
+        final char[] key = Arrays.copyOf(recorder.input, recorder.inputLength);
+        entries.put(new CharsRef(key, 0, key.length), recorder.build());
+    }
+
+
+    /**
+     * @return the number of cached inputs
+     */
+    public int count() {
+        return entries.size();
+    }
+
+
+    /**
+     * The tokens of one cached input. Immutable.
+     */
+    public static final class Entry {
+        private final char[] terms;
+        private final int[] termEnds;
+        private final String[] types;
+        private final int[] startOffsets;
+        private final int[] endOffsets;
+        private final int[] positionIncrements;
+        private final boolean malformed;
+
+        private Entry(Recorder recorder) {
+            final int count = recorder.count;
+            this.terms = Arrays.copyOf(recorder.terms, count == 0 ? 0 : recorder.termEnds[count - 1]);
+            this.termEnds = Arrays.copyOf(recorder.termEnds, count);
+            this.types = Arrays.copyOf(recorder.types, count);
+            this.startOffsets = Arrays.copyOf(recorder.startOffsets, count);
+            this.endOffsets = Arrays.copyOf(recorder.endOffsets, count);
+            this.positionIncrements = Arrays.copyOf(recorder.positionIncrements, count);
+            this.malformed = recorder.malformed;
+        }
+
+        /**
+         * @return the number of tokens
+         */
+        public int tokenCount() {
+            return termEnds.length;
+        }
+
+        /**
+         * Copy the term of the given token into the given attribute.
+         */
+        public void term(int token, CharTermAttribute termAttribute) {
+            final int start = token == 0 ? 0 : termEnds[token - 1];
+            termAttribute.copyBuffer(terms, start, termEnds[token] - start);
+        }
+
+        public String type(int token) {
+            return types[token];
+        }
+
+        public int startOffset(int token) {
+            return startOffsets[token];
+        }
+
+        public int endOffset(int token) {
+            return endOffsets[token];
+        }
+
+        public int positionIncrement(int token) {
+            return positionIncrements[token];
+        }
+
+        /**
+         * @return true if the input was not a well formed address
+         */
+        public boolean malformed() {
+            return malformed;
+        }
+    }
+
+
+    /**
+     * Records the tokens of an input as they are produced, so that they can be cached once the input is done. Reused
+     * across inputs.
+     */
+    public static final class Recorder {
+        private char[] input = new char[64];
+        private int inputLength;
+        private char[] terms = new char[256];
+        private int[] termEnds = new int[16];
+        private String[] types = new String[16];
+        private int[] startOffsets = new int[16];
+        private int[] endOffsets = new int[16];
+        private int[] positionIncrements = new int[16];
+        private int count;
+        private boolean malformed;
+
+        /**
+         * Start recording the tokens of the given input. The input is copied, as tokenization may modify the buffer.
+         */
+        public void start(char[] buffer, int length) {
+            if (input.length < length) {
+                input = new char[ArrayUtil.oversize(length, RamUsageEstimator.NUM_BYTES_CHAR)];
+            }
+            System.arraycopy(buffer, 0, input, 0, length);
+            inputLength = length;
+            count = 0;
+            malformed = false;
+        }
+
+        public void add(CharTermAttribute term, String type, int startOffset, int endOffset, int positionIncrement) {
+            if (count == termEnds.length) {
+                final int newLength = ArrayUtil.oversize(count + 1, RamUsageEstimator.NUM_BYTES_INT);
+                termEnds = Arrays.copyOf(termEnds, newLength);
+                types = Arrays.copyOf(types, newLength);
+                startOffsets = Arrays.copyOf(startOffsets, newLength);
+                endOffsets = Arrays.copyOf(endOffsets, newLength);
+                positionIncrements = Arrays.copyOf(positionIncrements, newLength);
+            }
+            final int termStart = count == 0 ? 0 : termEnds[count - 1];
+            terms = ArrayUtil.grow(terms, termStart + term.length());
+            System.arraycopy(term.buffer(), 0, terms, termStart, term.length());
+            termEnds[count] = termStart + term.length();
+            types[count] = type;
+            startOffsets[count] = startOffset;
+            endOffsets[count] = endOffset;
+            positionIncrements[count] = positionIncrement;
+            count++;
+        }
+
+        /**
+         * Mark the input as not a well formed address.
+         */
+        public void setMalformed() {
+            malformed = true;
+        }
+
+        private Entry build() {
+            return new Entry(this);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replaces terms with a fixed width hash, so that an address can be matched without being indexed in plain text.
+ *
+ * The hash is the 128-bit MurmurHash3 of the UTF-8 bytes of the salt followed by the term, truncated to {@link #bits()},
+ * and written as unpadded URL-safe base64: 11 chars for 64 bits, 22 chars for 128 bits. Base64 rather than raw bytes,
+ * because terms pass through a {@link CharTermAttribute}, in which binary would be re-encoded as UTF-8 and grow.
+ * MurmurHash3 is not a cryptographic hash: hashing hides addresses from casual inspection of the index, but addresses can
+ * still be guessed and checked, so the salt should be kept secret.
+ *
+ * Instances reuse their buffers, so hashing does not allocate, and are not thread safe.
+ */
+public final class TokenHasher {
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private final int bits;
+    private final byte[] salt;
+    private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+    private byte[] bytes;
+
+    /**
+     * @param bits the width of hashes: 64 or 128
+     * @param salt prepended to each term before it is hashed. May be null.
+     */
+    public TokenHasher(int bits, String salt) {
+        if (bits != 64 && bits != 128) {
+            throw new IllegalArgumentException("hash_bits must be 64 or 128: " + bits);
+        }
+        this.bits = bits;
+        this.salt = salt == null ? new byte[0] : salt.getBytes(StandardCharsets.UTF_8);
+        this.bytes = new byte[this.salt.length + 64];
+        System.arraycopy(this.salt, 0, bytes, 0, this.salt.length);
+    }
+
+
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * @return the length of hashed terms
+     */
+    public int hashLength() {
+        return (bits + 5) / 6;
+    }
+
+
+    /**
+     * Replace the given term with its hash.
+     */
+    public void hash(CharTermAttribute term) {
+        final int maxLength = salt.length + term.length() * UnicodeUtil.MAX_UTF8_BYTES_PER_CHAR;
+        if (bytes.length < maxLength) {
+            bytes = ArrayUtil.grow(bytes, maxLength);
+        }
+        final int length = UnicodeUtil.UTF16toUTF8(term, 0, term.length(), bytes, salt.length);
+        MurmurHash3.hash128(bytes, 0, length, 0, hash);
+
+        final int hashLength = hashLength();
+        final char[] chars = term.resizeBuffer(hashLength);
+        for (int i = 0; i < hashLength; i++) {
+            chars[i] = BASE64[sixBits(i * 6)];
+        }
+        term.setLength(hashLength);
+    }
+
+    /**
+     * @param start index of a bit of the hash, counting from the high bit of {@code h1} through the low bit of {@code h2}
+     * @return the six bits of the hash beginning at the given bit, padded with zeros past the width of the hash
+     */
+    private int sixBits(int start) {
+        final int end = start + 6;
+        final long value;
+        if (end <= 64) {
+            value = hash.h1 >>> (64 - end);
+        } else if (start >= 64) {
+            value = end <= 128 ? hash.h2 >>> (128 - end) : hash.h2 << (end - 128);
+        } else {
+            value = hash.h1 << (end - 64) | (bits == 64 ? 0 : hash.h2 >>> (128 - end));
+        }
+        return (int) value & 0x3F;
+    }
+}
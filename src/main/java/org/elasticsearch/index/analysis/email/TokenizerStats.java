@@ -0,0 +1,256 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentBuilderString;
+import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.MalformedPolicy;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time copy of the counters of an {@link EmailTokenizerStats}, which can be sent between nodes and added
+ * together.
+ */
+public class TokenizerStats implements Streamable, ToXContent {
+    /**
+     * Input lengths are counted in power of two buckets: [0, 16), [16, 32), ... [512, 1024), [1024, ∞)
+     */
+    public static final int LENGTH_BUCKETS = 8;
+
+    private long documents;
+    private long timeInNanos;
+    private long[] tokens = new long[EmailPart.values().length];
+    private long otherTokens;
+    private long[] malformed = new long[MalformedPolicy.values().length];
+    private long[] inputLengths = new long[LENGTH_BUCKETS];
+    private long[] tokenCache = new long[EmailTokenizerStats.CacheResult.values().length];
+
+    public TokenizerStats() { }
+
+    TokenizerStats(long documents, long timeInNanos, long[] tokens, long otherTokens, long[] malformed, long[] inputLengths,
+                   long[] tokenCache) {
+        this.documents = documents;
+        this.timeInNanos = timeInNanos;
+        this.tokens = tokens;
+        this.otherTokens = otherTokens;
+        this.malformed = malformed;
+        this.inputLengths = inputLengths;
+        this.tokenCache = tokenCache;
+    }
+
+
+    /**
+     * @param length the length of an input
+     * @return the index of the histogram bucket into which the given length falls
+     */
+    public static int lengthBucket(int length) {
+        if (length < 16) {
+            return 0;
+        }
+        return Math.min(LENGTH_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(length) - 3);
+    }
+
+
+    /**
+     * Add the given stats to these stats.
+     * @param other stats to be added
+     */
+    public void add(TokenizerStats other) {
+        documents += other.documents;
+        timeInNanos += other.timeInNanos;
+        otherTokens += other.otherTokens;
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] += other.tokens[i];
+        }
+        for (int i = 0; i < malformed.length; i++) {
+            malformed[i] += other.malformed[i];
+        }
+        for (int i = 0; i < inputLengths.length; i++) {
+            inputLengths[i] += other.inputLengths[i];
+        }
+        for (int i = 0; i < tokenCache.length; i++) {
+            tokenCache[i] += other.tokenCache[i];
+        }
+    }
+
+
+    /**
+     * @return the number of documents analyzed
+     */
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the cumulative time spent analyzing documents
+     */
+    public TimeValue getTime() {
+        return new TimeValue(timeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param part an email part
+     * @return the number of tokens emitted with the given part's type
+     */
+    public long getTokens(EmailPart part) {
+        return tokens[part.ordinal()];
+    }
+
+    /**
+     * @return the number of tokens emitted with a type other than that of an {@link EmailPart}
+     */
+    public long getOtherTokens() {
+        return otherTokens;
+    }
+
+    public long getTotalTokens() {
+        long total = otherTokens;
+        for (long count : tokens) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param policy a malformed input policy
+     * @return the number of malformed inputs to which the given policy was applied
+     */
+    public long getMalformed(MalformedPolicy policy) {
+        return malformed[policy.ordinal()];
+    }
+
+    public long getTotalMalformed() {
+        long total = 0;
+        for (long count : malformed) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param bucket index of a histogram bucket
+     * @return the number of inputs whose length fell in the given bucket
+     * @see #lengthBucket(int)
+     */
+    public long getInputLengths(int bucket) {
+        return inputLengths[bucket];
+    }
+
+
+    /**
+     * @param result the outcome of a token cache lookup
+     * @return the number of inputs whose token cache lookup had the given outcome
+     */
+    public long getTokenCache(EmailTokenizerStats.CacheResult result) {
+        return tokenCache[result.ordinal()];
+    }
+
+    /**
+     * @return the fraction of the inputs looked up in a token cache which were found, or 0 if none were looked up
+     */
+    public double getTokenCacheHitRate() {
+        final long hits = getTokenCache(EmailTokenizerStats.CacheResult.HIT);
+        final long lookups = hits + getTokenCache(EmailTokenizerStats.CacheResult.MISS);
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        documents = in.readVLong();
+        timeInNanos = in.readVLong();
+        otherTokens = in.readVLong();
+        readCounts(in, tokens);
+        readCounts(in, malformed);
+        readCounts(in, inputLengths);
+        readCounts(in, tokenCache);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVLong(documents);
+        out.writeVLong(timeInNanos);
+        out.writeVLong(otherTokens);
+        writeCounts(out, tokens);
+        writeCounts(out, malformed);
+        writeCounts(out, inputLengths);
+        writeCounts(out, tokenCache);
+    }
+
+    private static void readCounts(StreamInput in, long[] counts) throws IOException {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = in.readVLong();
+        }
+    }
+
+    private static void writeCounts(StreamOutput out, long[] counts) throws IOException {
+        for (long count : counts) {
+            out.writeVLong(count);
+        }
+    }
+
+    public static TokenizerStats readTokenizerStats(StreamInput in) throws IOException {
+        TokenizerStats stats = new TokenizerStats();
+        stats.readFrom(in);
+        return stats;
+    }
+
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(Fields.DOCUMENTS, documents);
+        builder.timeValueField(Fields.TIME_IN_MILLIS, Fields.TIME, TimeUnit.NANOSECONDS.toMillis(timeInNanos));
+        builder.field(Fields.TIME_IN_NANOS, timeInNanos);
+
+        builder.startObject(Fields.TOKENS);
+        builder.field(Fields.TOTAL, getTotalTokens());
+        for (EmailPart part : EmailPart.values()) {
+            builder.field(part.getType(), tokens[part.ordinal()]);
+        }
+        builder.field(Fields.OTHER, otherTokens);
+        builder.endObject();
+
+        builder.startObject(Fields.MALFORMED);
+        builder.field(Fields.TOTAL, getTotalMalformed());
+        for (MalformedPolicy policy : MalformedPolicy.values()) {
+            builder.field(policy.toString(), malformed[policy.ordinal()]);
+        }
+        builder.endObject();
+
+        builder.startObject(Fields.INPUT_LENGTH);
+        for (int i = 0; i < inputLengths.length; i++) {
+            final int from = i == 0 ? 0 : 8 << i;
+            builder.field(i == inputLengths.length - 1 ? from + "+" : from + "-" + ((16 << i) - 1), inputLengths[i]);
+        }
+        builder.endObject();
+
+        builder.startObject(Fields.TOKEN_CACHE);
+        for (EmailTokenizerStats.CacheResult result : EmailTokenizerStats.CacheResult.values()) {
+            builder.field(result.name().toLowerCase(Locale.ROOT), tokenCache[result.ordinal()]);
+        }
+        builder.field(Fields.HIT_RATE, getTokenCacheHitRate());
+        builder.endObject();
+        return builder;
+    }
+
+    static final class Fields {
+        static final XContentBuilderString DOCUMENTS = new XContentBuilderString("documents");
+        static final XContentBuilderString TIME = new XContentBuilderString("time");
+        static final XContentBuilderString TIME_IN_MILLIS = new XContentBuilderString("time_in_millis");
+        static final XContentBuilderString TIME_IN_NANOS = new XContentBuilderString("time_in_nanos");
+        static final XContentBuilderString TOKENS = new XContentBuilderString("tokens");
+        static final XContentBuilderString MALFORMED = new XContentBuilderString("malformed");
+        static final XContentBuilderString INPUT_LENGTH = new XContentBuilderString("input_length");
+        static final XContentBuilderString TOKEN_CACHE = new XContentBuilderString("token_cache");
+        static final XContentBuilderString HIT_RATE = new XContentBuilderString("hit_rate");
+        static final XContentBuilderString TOTAL = new XContentBuilderString("total");
+        static final XContentBuilderString OTHER = new XContentBuilderString("other");
+    }
+}
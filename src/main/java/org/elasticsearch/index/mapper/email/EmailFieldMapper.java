@@ -0,0 +1,583 @@
+package org.elasticsearch.index.mapper.email;
+
+import com.google.common.collect.Iterators;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.CloseableThreadLocal;
+import org.elasticsearch.common.Explicit;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.analysis.DomainFormat;
+import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.MalformedPolicy;
+import org.elasticsearch.index.analysis.email.EmailTokenizer;
+import org.elasticsearch.index.analysis.email.LocalpartSplitter;
+import org.elasticsearch.index.analysis.email.PublicSuffixList;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.analysis.email.MalformedEmailException;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.MapperBuilders;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.index.mapper.core.StringFieldMapper;
+import org.elasticsearch.index.mapper.core.TypeParsers;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps a field whose value is an email address. Each value is tokenized once by an {@link EmailTokenizer}, and its
+ * tokens are routed by type: the whole address is indexed into the field itself, and the localpart and domain tokens
+ * into the {@code localpart} and {@code domain} sub-fields. Optionally, the registrable domain is indexed with doc values
+ * into the {@code registrable_domain} sub-field, so that it can be sorted and aggregated on.
+ */
+public class EmailFieldMapper extends FieldMapper {
+    public static final String CONTENT_TYPE = "email";
+
+    public static class Names {
+        public static final String LOCALPART = "localpart";
+        public static final String DOMAIN = "domain";
+        public static final String REGISTRABLE_DOMAIN = "registrable_domain";
+        public static final String TOKENIZE_DOMAIN = "tokenize_domain";
+        public static final String DOMAIN_FORMAT = "domain_format";
+        public static final String MIN_DOMAIN_DEPTH = "min_domain_depth";
+        public static final String MAX_DOMAIN_DEPTH = "max_domain_depth";
+        public static final String SPLIT_ON_PLUS = "split_on_plus";
+        public static final String SPLIT_LOCALPART = "split_localpart";
+        public static final String IGNORE_MALFORMED = "ignore_malformed";
+    }
+
+    public static class Defaults {
+        public static final MappedFieldType FIELD_TYPE = new StringFieldMapper.StringFieldType();
+        public static final boolean TOKENIZE_DOMAIN = true;
+        public static final DomainFormat DOMAIN_FORMAT = DomainFormat.SUFFIXES;
+        public static final int MIN_DOMAIN_DEPTH = 1;
+        public static final int MAX_DOMAIN_DEPTH = 0;
+        public static final boolean SPLIT_ON_PLUS = true;
+        public static final boolean REGISTRABLE_DOMAIN = false;
+        public static final Explicit<Boolean> IGNORE_MALFORMED = new Explicit<>(false, false);
+
+        static {
+            FIELD_TYPE.setTokenized(false);
+            FIELD_TYPE.setIndexOptions(IndexOptions.DOCS);
+            FIELD_TYPE.setOmitNorms(true);
+            FIELD_TYPE.freeze();
+        }
+    }
+
+
+    public static class Builder extends FieldMapper.Builder<Builder, EmailFieldMapper> {
+        private boolean tokenizeDomain = Defaults.TOKENIZE_DOMAIN;
+        private DomainFormat domainFormat = Defaults.DOMAIN_FORMAT;
+        private int minDomainDepth = Defaults.MIN_DOMAIN_DEPTH;
+        private int maxDomainDepth = Defaults.MAX_DOMAIN_DEPTH;
+        private boolean splitOnPlus = Defaults.SPLIT_ON_PLUS;
+        private String[] splitLocalpart;
+        private boolean registrableDomain = Defaults.REGISTRABLE_DOMAIN;
+        private Boolean ignoreMalformed;
+        private PublicSuffixList publicSuffixList;
+
+        public Builder(String name) {
+            super(name, Defaults.FIELD_TYPE, Defaults.FIELD_TYPE);
+            this.builder = this;
+        }
+
+        public Builder tokenizeDomain(boolean tokenizeDomain) {
+            this.tokenizeDomain = tokenizeDomain;
+            return this;
+        }
+
+        public Builder domainFormat(DomainFormat domainFormat) {
+            this.domainFormat = domainFormat;
+            return this;
+        }
+
+        public Builder minDomainDepth(int minDomainDepth) {
+            this.minDomainDepth = minDomainDepth;
+            return this;
+        }
+
+        public Builder maxDomainDepth(int maxDomainDepth) {
+            this.maxDomainDepth = maxDomainDepth;
+            return this;
+        }
+
+        public Builder splitOnPlus(boolean splitOnPlus) {
+            this.splitOnPlus = splitOnPlus;
+            return this;
+        }
+
+        public Builder splitLocalpart(String[] splitLocalpart) {
+            this.splitLocalpart = splitLocalpart;
+            return this;
+        }
+
+        public Builder registrableDomain(boolean registrableDomain) {
+            this.registrableDomain = registrableDomain;
+            return this;
+        }
+
+        public Builder publicSuffixList(PublicSuffixList publicSuffixList) {
+            this.publicSuffixList = publicSuffixList;
+            return this;
+        }
+
+        public Builder ignoreMalformed(boolean ignoreMalformed) {
+            this.ignoreMalformed = ignoreMalformed;
+            return this;
+        }
+
+        protected Explicit<Boolean> ignoreMalformed(BuilderContext context) {
+            if (ignoreMalformed != null) {
+                return new Explicit<>(ignoreMalformed, true);
+            }
+            if (context.indexSettings() != null) {
+                return new Explicit<>(context.indexSettings().getAsBoolean("index.mapping.ignore_malformed",
+                        Defaults.IGNORE_MALFORMED.value()), false);
+            }
+            return Defaults.IGNORE_MALFORMED;
+        }
+
+        @Override
+        public EmailFieldMapper build(BuilderContext context) {
+            setupFieldType(context);
+            context.path().add(name);
+            StringFieldMapper localpartMapper = keywordField(Names.LOCALPART, false).build(context);
+            StringFieldMapper domainMapper = keywordField(Names.DOMAIN, false).build(context);
+            StringFieldMapper registrableDomainMapper = null;
+            if (registrableDomain) {
+                registrableDomainMapper = keywordField(Names.REGISTRABLE_DOMAIN, true).build(context);
+            }
+            context.path().remove();
+            return new EmailFieldMapper(name, fieldType, defaultFieldType, context.indexSettings(), localpartMapper, domainMapper,
+                    registrableDomainMapper, tokenizeDomain, domainFormat, minDomainDepth, maxDomainDepth, splitOnPlus, splitLocalpart, publicSuffixList,
+                    ignoreMalformed(context), multiFieldsBuilder.build(this, context), copyTo);
+        }
+
+        private StringFieldMapper.Builder keywordField(String name, boolean docValues) {
+            return MapperBuilders.stringField(name)
+                    .index(true)
+                    .tokenized(false)
+                    .omitNorms(true)
+                    .indexOptions(IndexOptions.DOCS)
+                    .docValues(docValues)
+                    .includeInAll(false);
+        }
+    }
+
+
+    public static class TypeParser implements Mapper.TypeParser {
+        private final PublicSuffixListService publicSuffixes;
+
+        public TypeParser(PublicSuffixListService publicSuffixes) {
+            this.publicSuffixes = publicSuffixes;
+        }
+
+        @Override
+        public Mapper.Builder<?, ?> parse(String name, Map<String, Object> node, ParserContext parserContext) throws MapperParsingException {
+            Builder builder = new Builder(name).publicSuffixList(publicSuffixes.publicSuffixList());
+            TypeParsers.parseField(builder, name, node, parserContext);
+            for (Iterator<Map.Entry<String, Object>> iterator = node.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, Object> entry = iterator.next();
+                String propName = Strings.toUnderscoreCase(entry.getKey());
+                Object propNode = entry.getValue();
+                switch (propName) {
+                    case Names.TOKENIZE_DOMAIN:
+                        builder.tokenizeDomain(XContentMapValues.nodeBooleanValue(propNode));
+                        break;
+                    case Names.DOMAIN_FORMAT:
+                        try {
+                            builder.domainFormat(DomainFormat.fromString(propNode.toString()));
+                        } catch (IllegalArgumentException e) {
+                            throw new MapperParsingException("[" + Names.DOMAIN_FORMAT + "] must be one of [suffixes, reversed] for field ["
+                                    + name + "]", e);
+                        }
+                        break;
+                    case Names.MIN_DOMAIN_DEPTH:
+                        builder.minDomainDepth(XContentMapValues.nodeIntegerValue(propNode));
+                        break;
+                    case Names.MAX_DOMAIN_DEPTH:
+                        builder.maxDomainDepth(XContentMapValues.nodeIntegerValue(propNode));
+                        break;
+                    case Names.SPLIT_ON_PLUS:
+                        builder.splitOnPlus(XContentMapValues.nodeBooleanValue(propNode));
+                        break;
+                    case Names.SPLIT_LOCALPART:
+                        builder.splitLocalpart(splitLocalpart(propNode));
+                        break;
+                    case Names.REGISTRABLE_DOMAIN:
+                        builder.registrableDomain(XContentMapValues.nodeBooleanValue(propNode));
+                        break;
+                    case Names.IGNORE_MALFORMED:
+                        builder.ignoreMalformed(XContentMapValues.nodeBooleanValue(propNode));
+                        break;
+                    default:
+                        if (!TypeParsers.parseMultiField(builder, name, parserContext, propName, propNode)) {
+                            continue;
+                        }
+                        break;
+                }
+                iterator.remove();
+            }
+            if (builder.minDomainDepth < 1) {
+                throw new MapperParsingException("[" + Names.MIN_DOMAIN_DEPTH + "] must be at least 1 for field [" + name + "]");
+            }
+            if (builder.maxDomainDepth != 0 && builder.maxDomainDepth < builder.minDomainDepth) {
+                throw new MapperParsingException("[" + Names.MAX_DOMAIN_DEPTH + "] must be 0 or at least [" + Names.MIN_DOMAIN_DEPTH
+                        + "] for field [" + name + "]");
+            }
+            return builder;
+        }
+
+        private static String[] splitLocalpart(Object node) {
+            if (!(node instanceof List)) {
+                return new String[]{node.toString()};
+            }
+            List<?> list = (List<?>) node;
+            String[] delimiters = new String[list.size()];
+            for (int i = 0; i < delimiters.length; i++) {
+                delimiters[i] = list.get(i).toString();
+            }
+            return delimiters;
+        }
+    }
+
+
+    private StringFieldMapper localpartMapper;
+    private StringFieldMapper domainMapper;
+    private StringFieldMapper registrableDomainMapper;
+    private boolean tokenizeDomain;
+    private DomainFormat domainFormat;
+    private int minDomainDepth;
+    private int maxDomainDepth;
+    private boolean splitOnPlus;
+    private String[] splitLocalpart;
+    private final PublicSuffixList publicSuffixList;
+    private Explicit<Boolean> ignoreMalformed;
+
+    /**
+     * Each indexing thread reuses its own tokenizer. Shared with the mappers merged from this one, unless the merge
+     * changes the tokenizer's configuration, in which case the old tokenizers are closed and replaced.
+     */
+    private ThreadTokenizers tokenizers;
+
+    protected EmailFieldMapper(String simpleName, MappedFieldType fieldType, MappedFieldType defaultFieldType, Settings indexSettings,
+                               StringFieldMapper localpartMapper, StringFieldMapper domainMapper,
+                               StringFieldMapper registrableDomainMapper, boolean tokenizeDomain, DomainFormat domainFormat, int minDomainDepth,
+                               int maxDomainDepth, boolean splitOnPlus,
+                               String[] splitLocalpart, PublicSuffixList publicSuffixList, Explicit<Boolean> ignoreMalformed, MultiFields multiFields, CopyTo copyTo) {
+        super(simpleName, fieldType, defaultFieldType, indexSettings, multiFields, copyTo);
+        this.localpartMapper = localpartMapper;
+        this.domainMapper = domainMapper;
+        this.registrableDomainMapper = registrableDomainMapper;
+        this.tokenizeDomain = tokenizeDomain;
+        this.domainFormat = domainFormat;
+        this.minDomainDepth = minDomainDepth;
+        this.maxDomainDepth = maxDomainDepth;
+        this.splitOnPlus = splitOnPlus;
+        this.splitLocalpart = splitLocalpart;
+        this.publicSuffixList = publicSuffixList;
+        this.ignoreMalformed = ignoreMalformed;
+        this.tokenizers = newTokenizers();
+    }
+
+
+    @Override
+    protected String contentType() {
+        return CONTENT_TYPE;
+    }
+
+
+    @Override
+    public Iterator<Mapper> iterator() {
+        List<Mapper> extras = new ArrayList<>(3);
+        extras.add(localpartMapper);
+        extras.add(domainMapper);
+        if (registrableDomainMapper != null) {
+            extras.add(registrableDomainMapper);
+        }
+        return Iterators.concat(super.iterator(), extras.iterator());
+    }
+
+
+    @Override
+    protected void parseCreateField(ParseContext context, List<Field> fields) throws IOException {
+        throw new UnsupportedOperationException("Parsing is implemented in parse(), this method should NEVER be called");
+    }
+
+
+    @Override
+    public Mapper parse(ParseContext context) throws IOException {
+        final StringFieldMapper.ValueAndBoost valueAndBoost = StringFieldMapper.parseCreateFieldForString(context,
+                fieldType().nullValueAsString(), fieldType().boost());
+        final String value = valueAndBoost.value();
+        if (value == null) {
+            return null;
+        }
+
+        final ValueTokenizer tokenizer = tokenizers.get();
+        try {
+            tokenizer.reset(value);
+        } catch (MalformedEmailException e) {
+            if (ignoreMalformed.value()) {
+                return null;
+            }
+            throw new MapperParsingException("failed to parse [" + fieldType().names().fullName() + "]", e);
+        }
+
+        try {
+            while (tokenizer.incrementToken()) {
+                final String token = tokenizer.term();
+                final String type = tokenizer.type();
+                if (type.equals(EmailPart.WHOLE.getType())) {
+                    addWholeField(context, token, valueAndBoost.boost());
+                } else if (type.equals(EmailPart.LOCALPART.getType())) {
+                    localpartMapper.parse(context.createExternalValueContext(token));
+                } else if (type.equals(EmailPart.DOMAIN.getType())) {
+                    domainMapper.parse(context.createExternalValueContext(token));
+                } else if (type.equals(EmailPart.REGISTRABLE_DOMAIN.getType())) {
+                    registrableDomainMapper.parse(context.createExternalValueContext(token));
+                }
+            }
+        } finally {
+            tokenizer.end();
+        }
+        multiFields.parse(this, context);
+        return null;
+    }
+
+
+    private void addWholeField(ParseContext context, String value, float boost) {
+        final String indexName = fieldType().names().indexName();
+        if (fieldType().indexOptions() != IndexOptions.NONE || fieldType().stored()) {
+            Field field = new Field(indexName, value, fieldType());
+            field.setBoost(boost);
+            context.doc().add(field);
+        }
+        if (fieldType().hasDocValues()) {
+            context.doc().add(new SortedSetDocValuesField(indexName, new BytesRef(value)));
+        }
+    }
+
+
+    @Override
+    protected void doMerge(Mapper mergeWith, boolean updateAllTypes) {
+        super.doMerge(mergeWith, updateAllTypes);
+        final boolean registrableDomain = registrableDomainMapper != null;
+        EmailFieldMapper other = (EmailFieldMapper) mergeWith;
+        // the tokenization options determine the terms already indexed, so changing them would mix terms of both forms
+        List<String> conflicts = new ArrayList<>();
+        checkUnchanged(conflicts, Names.TOKENIZE_DOMAIN, tokenizeDomain, other.tokenizeDomain);
+        checkUnchanged(conflicts, Names.DOMAIN_FORMAT, domainFormat, other.domainFormat);
+        checkUnchanged(conflicts, Names.MIN_DOMAIN_DEPTH, minDomainDepth, other.minDomainDepth);
+        checkUnchanged(conflicts, Names.MAX_DOMAIN_DEPTH, maxDomainDepth, other.maxDomainDepth);
+        checkUnchanged(conflicts, Names.SPLIT_ON_PLUS, splitOnPlus, other.splitOnPlus);
+        if (!Arrays.equals(splitLocalpart, other.splitLocalpart)) {
+            conflicts.add(conflict(Names.SPLIT_LOCALPART));
+        }
+        if (!conflicts.isEmpty()) {
+            throw new IllegalArgumentException("Mapper for [" + fieldType().names().fullName() + "] conflicts with existing mapping:\n"
+                    + conflicts);
+        }
+        localpartMapper = (StringFieldMapper) localpartMapper.merge(other.localpartMapper, updateAllTypes);
+        domainMapper = (StringFieldMapper) domainMapper.merge(other.domainMapper, updateAllTypes);
+        if (registrableDomainMapper == null || other.registrableDomainMapper == null) {
+            registrableDomainMapper = other.registrableDomainMapper;
+        } else {
+            registrableDomainMapper = (StringFieldMapper) registrableDomainMapper.merge(other.registrableDomainMapper, updateAllTypes);
+        }
+        tokenizeDomain = other.tokenizeDomain;
+        domainFormat = other.domainFormat;
+        minDomainDepth = other.minDomainDepth;
+        maxDomainDepth = other.maxDomainDepth;
+        splitOnPlus = other.splitOnPlus;
+        splitLocalpart = other.splitLocalpart;
+        if (other.ignoreMalformed.explicit()) {
+            ignoreMalformed = other.ignoreMalformed;
+        }
+        // every other tokenization option is unchanged, as checked above
+        if ((registrableDomainMapper != null) != registrableDomain) {
+            tokenizers.close();
+            tokenizers = newTokenizers();
+        }
+    }
+
+
+    private void checkUnchanged(List<String> conflicts, String option, Object value, Object mergedValue) {
+        if (!value.equals(mergedValue)) {
+            conflicts.add(conflict(option));
+        }
+    }
+
+
+    private String conflict(String option) {
+        return "mapper [" + fieldType().names().fullName() + "] has different [" + option + "] values";
+    }
+
+
+    @Override
+    public FieldMapper updateFieldType(Map<String, MappedFieldType> fullNameToFieldType) {
+        EmailFieldMapper updated = (EmailFieldMapper) super.updateFieldType(fullNameToFieldType);
+        StringFieldMapper localpartUpdated = (StringFieldMapper) localpartMapper.updateFieldType(fullNameToFieldType);
+        StringFieldMapper domainUpdated = (StringFieldMapper) domainMapper.updateFieldType(fullNameToFieldType);
+        StringFieldMapper registrableDomainUpdated = registrableDomainMapper == null ? null
+                : (StringFieldMapper) registrableDomainMapper.updateFieldType(fullNameToFieldType);
+        if (updated == this && localpartUpdated == localpartMapper && domainUpdated == domainMapper
+                && registrableDomainUpdated == registrableDomainMapper) {
+            return this;
+        }
+        if (updated == this) {
+            updated = (EmailFieldMapper) updated.clone();
+        }
+        updated.localpartMapper = localpartUpdated;
+        updated.domainMapper = domainUpdated;
+        updated.registrableDomainMapper = registrableDomainUpdated;
+        return updated;
+    }
+
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, ToXContent.Params params) throws IOException {
+        super.doXContentBody(builder, includeDefaults, params);
+        if (includeDefaults || fieldType().nullValue() != null) {
+            builder.field("null_value", fieldType().nullValue());
+        }
+        if (includeDefaults || tokenizeDomain != Defaults.TOKENIZE_DOMAIN) {
+            builder.field(Names.TOKENIZE_DOMAIN, tokenizeDomain);
+        }
+        if (includeDefaults || domainFormat != Defaults.DOMAIN_FORMAT) {
+            builder.field(Names.DOMAIN_FORMAT, domainFormat.toString());
+        }
+        if (includeDefaults || minDomainDepth != Defaults.MIN_DOMAIN_DEPTH) {
+            builder.field(Names.MIN_DOMAIN_DEPTH, minDomainDepth);
+        }
+        if (includeDefaults || maxDomainDepth != Defaults.MAX_DOMAIN_DEPTH) {
+            builder.field(Names.MAX_DOMAIN_DEPTH, maxDomainDepth);
+        }
+        if (includeDefaults || splitOnPlus != Defaults.SPLIT_ON_PLUS) {
+            builder.field(Names.SPLIT_ON_PLUS, splitOnPlus);
+        }
+        if (splitLocalpart != null) {
+            builder.array(Names.SPLIT_LOCALPART, (Object[]) splitLocalpart);
+        }
+        if (includeDefaults || (registrableDomainMapper != null) != Defaults.REGISTRABLE_DOMAIN) {
+            builder.field(Names.REGISTRABLE_DOMAIN, registrableDomainMapper != null);
+        }
+        if (includeDefaults || ignoreMalformed.explicit()) {
+            builder.field(Names.IGNORE_MALFORMED, ignoreMalformed.value());
+        }
+    }
+
+
+    private ThreadTokenizers newTokenizers() {
+        final boolean tokenizeDomain = this.tokenizeDomain;
+        final DomainFormat domainFormat = this.domainFormat;
+        final int minDomainDepth = this.minDomainDepth;
+        final int maxDomainDepth = this.maxDomainDepth;
+        final boolean splitOnPlus = this.splitOnPlus;
+        final LocalpartSplitter localpartSplitter = splitLocalpart == null ? null : new LocalpartSplitter(splitLocalpart, false);
+        // registrable domain tokens are only emitted if they are indexed
+        final PublicSuffixList publicSuffixList = registrableDomainMapper == null ? null : this.publicSuffixList;
+        return new ThreadTokenizers() {
+            @Override
+            protected ValueTokenizer initialValue() {
+                return new ValueTokenizer(new EmailTokenizer()
+                        .setTokenizeDomian(tokenizeDomain)
+                        .setDomainFormat(domainFormat)
+                        .setMinDomainDepth(minDomainDepth)
+                        .setMaxDomainDepth(maxDomainDepth)
+                        .setSplitOnPlus(splitOnPlus)
+                        .setLocalpartSplitter(localpartSplitter)
+                        .setPublicSuffixList(publicSuffixList)
+                        .setMalformedPolicy(MalformedPolicy.REJECT));
+            }
+        };
+    }
+
+
+    /**
+     * Per-thread tokenizers which still hand out tokenizers once closed, one per call, as the mapper which was merged
+     * into a new one may still be parsing documents, or may be kept if the merged mapping is not applied.
+     */
+    private abstract static class ThreadTokenizers extends CloseableThreadLocal<ValueTokenizer> {
+        private volatile boolean closed;
+
+        @Override
+        public ValueTokenizer get() {
+            return closed ? initialValue() : super.get();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+    }
+
+
+    /**
+     * An {@link EmailTokenizer} which is fed field values one at a time.
+     */
+    private static final class ValueTokenizer {
+        private final EmailTokenizer tokenizer;
+        private final CharTermAttribute termAttribute;
+        private final TypeAttribute typeAttribute;
+        private boolean first;
+
+        private ValueTokenizer(EmailTokenizer tokenizer) {
+            this.tokenizer = tokenizer;
+            this.termAttribute = tokenizer.addAttribute(CharTermAttribute.class);
+            this.typeAttribute = tokenizer.addAttribute(TypeAttribute.class);
+        }
+
+        /**
+         * Start tokenizing the given value, which is validated immediately.
+         * @throws MalformedEmailException if the value is not a well formed address
+         */
+        void reset(String value) throws IOException {
+            tokenizer.setReader(new StringReader(value));
+            tokenizer.reset();
+            try {
+                first = tokenizer.incrementToken();
+            } catch (IOException e) {
+                tokenizer.close();
+                throw e;
+            }
+        }
+
+        boolean incrementToken() throws IOException {
+            if (first) {
+                first = false;
+                return true;
+            }
+            return tokenizer.incrementToken();
+        }
+
+        String term() {
+            return termAttribute.toString();
+        }
+
+        String type() {
+            return typeAttribute.type();
+        }
+
+        void end() throws IOException {
+            tokenizer.end();
+            tokenizer.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.elasticsearch.index.query.email;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+import org.elasticsearch.index.query.MultiTermQueryBuilder;
+
+import java.io.IOException;
+
+/**
+ * Builds an {@link EmailDomainQueryParser email_domain} query, matching every address under the given domain.
+ */
+public class EmailDomainQueryBuilder extends MultiTermQueryBuilder implements BoostableQueryBuilder<EmailDomainQueryBuilder> {
+    private final String name;
+    private final String domain;
+    private float boost = -1;
+    private String rewrite;
+    private String queryName;
+
+    /**
+     * @param name a field whose domain tokens are in the reversed format, such as the {@code domain} sub-field of an
+     *             email field
+     * @param domain the domain, such as {@code example.com}
+     */
+    public EmailDomainQueryBuilder(String name, String domain) {
+        this.name = name;
+        this.domain = domain;
+    }
+
+    @Override
+    public EmailDomainQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    public EmailDomainQueryBuilder rewrite(String rewrite) {
+        this.rewrite = rewrite;
+        return this;
+    }
+
+    public EmailDomainQueryBuilder queryName(String queryName) {
+        this.queryName = queryName;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(EmailDomainQueryParser.NAME);
+        if (boost == -1 && rewrite == null && queryName == null) {
+            builder.field(name, domain);
+        } else {
+            builder.startObject(name);
+            builder.field("domain", domain);
+            if (boost != -1) {
+                builder.field("boost", boost);
+            }
+            if (rewrite != null) {
+                builder.field("rewrite", rewrite);
+            }
+            if (queryName != null) {
+                builder.field("_name", queryName);
+            }
+            builder.endObject();
+        }
+        builder.endObject();
+    }
+}
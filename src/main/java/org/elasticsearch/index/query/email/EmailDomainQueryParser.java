@@ -0,0 +1,102 @@
+package org.elasticsearch.index.query.email;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.BytesRefs;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.index.analysis.DomainFormat;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.support.QueryParsers;
+
+import java.io.IOException;
+
+/**
+ * Matches every address under a domain, including its subdomains, in a field whose domain tokens are in the
+ * {@link DomainFormat#REVERSED} format: {@code {"email_domain": {"email.domain": "example.com"}}} becomes a single prefix
+ * query for {@code com.example.}. The domain is not analyzed.
+ */
+public class EmailDomainQueryParser implements QueryParser {
+    public static final String NAME = "email_domain";
+
+    @Inject
+    public EmailDomainQueryParser() {
+    }
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME};
+    }
+
+    @Override
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        XContentParser parser = parseContext.parser();
+
+        String fieldName = null;
+        String domain = null;
+        String rewriteMethod = null;
+        String queryName = null;
+        float boost = 1.0f;
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                fieldName = currentFieldName;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        currentFieldName = parser.currentName();
+                    } else if ("domain".equals(currentFieldName) || "value".equals(currentFieldName)) {
+                        domain = parser.textOrNull();
+                    } else if ("boost".equals(currentFieldName)) {
+                        boost = parser.floatValue();
+                    } else if ("rewrite".equals(currentFieldName)) {
+                        rewriteMethod = parser.textOrNull();
+                    } else if ("_name".equals(currentFieldName)) {
+                        queryName = parser.text();
+                    } else {
+                        throw new QueryParsingException(parseContext, "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                    }
+                }
+            } else if ("_name".equals(currentFieldName)) {
+                queryName = parser.text();
+            } else {
+                fieldName = currentFieldName;
+                domain = parser.textOrNull();
+            }
+        }
+
+        if (fieldName == null) {
+            throw new QueryParsingException(parseContext, "No field specified for " + NAME + " query");
+        }
+        final String prefix = domain == null ? "" : DomainFormat.reverse(domain);
+        if (prefix.isEmpty()) {
+            throw new QueryParsingException(parseContext, "No domain specified for " + NAME + " query");
+        }
+
+        final MultiTermQuery.RewriteMethod method = QueryParsers.parseRewriteMethod(parseContext.parseFieldMatcher(), rewriteMethod, null);
+        Query query = null;
+        final MappedFieldType fieldType = parseContext.fieldMapper(fieldName);
+        if (fieldType != null) {
+            query = fieldType.prefixQuery(prefix, method, parseContext);
+        }
+        if (query == null) {
+            final PrefixQuery prefixQuery = new PrefixQuery(new Term(fieldName, BytesRefs.toBytesRef(prefix)));
+            if (method != null) {
+                prefixQuery.setRewriteMethod(method);
+            }
+            query = prefixQuery;
+        }
+        query.setBoost(boost);
+        if (queryName != null) {
+            parseContext.addNamedQuery(queryName, query);
+        }
+        return query;
+    }
+}
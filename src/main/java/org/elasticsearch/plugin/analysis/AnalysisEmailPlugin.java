@@ -1,14 +1,47 @@
 package org.elasticsearch.plugin.analysis;
 
+import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsAction;
+import org.elasticsearch.action.email.stats.TransportEmailAnalysisStatsAction;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeAction;
+import org.elasticsearch.action.email.tokenize.TransportEmailTokenizeAction;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
 import org.elasticsearch.index.analysis.AnalysisModule;
 import org.elasticsearch.index.analysis.EmailTokenAnalysisBinderProcessor;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.mapper.email.EmailFieldMapper;
+import org.elasticsearch.index.query.email.EmailDomainQueryParser;
+import org.elasticsearch.indices.IndicesModule;
 import org.elasticsearch.plugins.Plugin;
+import org.elasticsearch.rest.RestModule;
+import org.elasticsearch.rest.action.email.RestEmailAnalysisStatsAction;
+import org.elasticsearch.rest.action.email.RestEmailTokenizeAction;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.Collection;
+import java.util.Collections;
 
 /**
  * Joe Linn
  * 9/26/2015
  */
 public class AnalysisEmailPlugin extends Plugin {
+    private final Settings settings;
+
+    /**
+     * Compiled in {@link #nodeModules()}, which is called before any of the onModule methods, and shared by the
+     * tokenizers and the field mapper.
+     */
+    private PublicSuffixListService publicSuffixes;
+
+    public AnalysisEmailPlugin(Settings settings) {
+        this.settings = settings;
+    }
+
     @Override
     public String name() {
         return "analysis-email";
@@ -19,7 +52,45 @@ public class AnalysisEmailPlugin extends Plugin {
         return "Email address tokenizer.";
     }
 
+    @Override
+    public Settings additionalSettings() {
+        if (TransportClient.CLIENT_TYPE.equals(settings.get(Client.CLIENT_TYPE_SETTING))) {
+            return Settings.EMPTY;
+        }
+        // the pool on which bulk tokenize requests run; any threadpool.email_tokenize settings of the node take precedence
+        final String pool = ThreadPool.THREADPOOL_GROUP + TransportEmailTokenizeAction.THREAD_POOL + ".";
+        return Settings.builder()
+                .put(pool + "type", ThreadPool.ThreadPoolType.FIXED.getType())
+                .put(pool + "queue_size", 100)
+                .build();
+    }
+
+    @Override
+    public Collection<Module> nodeModules() {
+        if (TransportClient.CLIENT_TYPE.equals(settings.get(Client.CLIENT_TYPE_SETTING))) {
+            // transport clients only need the plugin's request and response classes
+            return Collections.emptyList();
+        }
+        publicSuffixes = new PublicSuffixListService(settings, new Environment(settings));
+        return Collections.<Module>singletonList(new EmailAnalysisModule(publicSuffixes));
+    }
+
     public void onModule(AnalysisModule module) {
         module.addProcessor(new EmailTokenAnalysisBinderProcessor());
     }
+
+    public void onModule(IndicesModule module) {
+        module.registerMapper(EmailFieldMapper.CONTENT_TYPE, new EmailFieldMapper.TypeParser(publicSuffixes));
+        module.registerQueryParser(EmailDomainQueryParser.class);
+    }
+
+    public void onModule(ActionModule module) {
+        module.registerAction(EmailAnalysisStatsAction.INSTANCE, TransportEmailAnalysisStatsAction.class);
+        module.registerAction(EmailTokenizeAction.INSTANCE, TransportEmailTokenizeAction.class);
+    }
+
+    public void onModule(RestModule module) {
+        module.addRestAction(RestEmailAnalysisStatsAction.class);
+        module.addRestAction(RestEmailTokenizeAction.class);
+    }
 }
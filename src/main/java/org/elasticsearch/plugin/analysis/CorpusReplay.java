@@ -0,0 +1,428 @@
+package org.elasticsearch.plugin.analysis;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.UnicodeUtil;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.SuppressForbidden;
+import org.elasticsearch.common.logging.log4j.LogConfigurator;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStatsService;
+import org.elasticsearch.index.analysis.email.MalformedEmailException;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.settings.IndexSettingsService;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays a corpus of newline delimited addresses through an email tokenizer configured as in an index's settings,
+ * without a node, and reports throughput, tokens and malformed inputs per document, per document latency percentiles
+ * and the bytes allocated per document:
+ * <pre>
+ * java -cp 'plugins/analysis-email/*:lib/*' org.elasticsearch.plugin.analysis.CorpusReplay \
+ *     --settings index-settings.json --tokenizer email_all --corpus addresses.txt --threads 8
+ * </pre>
+ * The settings file holds index settings such as {@code {"analysis": {"tokenizer": {...}}}}. Paths in the tokenizer's
+ * settings are resolved against {@code --config}, as they are against a node's config directory.
+ *
+ * The corpus is memory mapped and split into one contiguous range of lines per thread. Each thread tokenizes its range
+ * with one reused tokenizer, as a node reuses one tokenizer per thread, decoding each line into a reused buffer so that
+ * the allocation reported is that of the tokenizer. Blank lines are skipped.
+ */
+public final class CorpusReplay {
+    /**
+     * Mapped windows of the corpus are at most this large, so that corpora larger than a single mapping can be replayed.
+     */
+    static final int DEFAULT_WINDOW = 1 << 30;
+
+    private static final long MAX_LATENCY = TimeUnit.SECONDS.toNanos(60);
+
+    private CorpusReplay() { }
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new Options();
+        options.addOption(Option.builder("s").longOpt("settings").hasArg().required().desc("index settings JSON or YAML file").build());
+        options.addOption(Option.builder("t").longOpt("tokenizer").hasArg().required().desc("name of the email tokenizer in the settings").build());
+        options.addOption(Option.builder("c").longOpt("corpus").hasArg().required().desc("newline delimited address file").build());
+        options.addOption(Option.builder("n").longOpt("threads").hasArg().desc("number of threads (default: processors)").build());
+        options.addOption(Option.builder("w").longOpt("warmup").hasArg().desc("unmeasured passes over the corpus first (default: 0)").build());
+        options.addOption(Option.builder().longOpt("config").hasArg().desc("config directory for relative paths (default: .)").build());
+        final CommandLine cli;
+        try {
+            cli = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("CorpusReplay", options, true);
+            exit(64);
+            return;
+        }
+
+        final Path config = Paths.get(cli.getOptionValue("config", ".")).toAbsolutePath();
+        final Settings nodeSettings = Settings.builder()
+                .put("path.home", config)
+                .put("path.conf", config)
+                .build();
+        // log warnings, such as those of the public suffix list, to the terminal rather than leaving log4j unconfigured
+        LogConfigurator.configure(Settings.builder()
+                .put(nodeSettings)
+                .put("appender.terminal.type", "terminal")
+                .put("rootLogger", "${es.logger.level}, terminal")
+                .put("es.logger.level", System.getProperty("es.logger.level", "WARN"))
+                .build(), false);
+        final Settings indexSettings = Settings.builder().loadFromPath(Paths.get(cli.getOptionValue("settings"))).build();
+        final int threads = Integer.parseInt(cli.getOptionValue("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        final int warmup = Integer.parseInt(cli.getOptionValue("warmup", "0"));
+
+        final Report report = replay(nodeSettings, indexSettings, cli.getOptionValue("tokenizer"), Paths.get(cli.getOptionValue("corpus")),
+                threads, warmup, DEFAULT_WINDOW);
+        report.print(System.out);
+    }
+
+    @SuppressForbidden(reason = "Allowed to exit explicitly from #main()")
+    private static void exit(int status) {
+        System.exit(status);
+    }
+
+
+    /**
+     * @param nodeSettings settings giving the config directory which tokenizer file settings are resolved against
+     * @param indexSettings index settings defining the tokenizer, with or without the {@code index.} prefix
+     * @param tokenizer the name of an email tokenizer defined by the index settings
+     * @param corpus newline delimited, UTF-8 addresses
+     * @param threads the number of threads to tokenize on
+     * @param warmup the number of unmeasured passes over the corpus to make first
+     * @param window the maximum size of a mapped window of the corpus, which must be longer than any line
+     */
+    static Report replay(Settings nodeSettings, Settings indexSettings, String tokenizer, Path corpus, int threads, int warmup, int window)
+            throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        final EmailTokenizerFactory factory = factory(nodeSettings, indexSettings, tokenizer);
+
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long[] bounds = new long[threads + 1];
+            bounds[threads] = size;
+            for (int i = 1; i < threads; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLine(channel, size * i / threads));
+            }
+
+            for (int pass = 0; pass < warmup; pass++) {
+                run(factory, channel, bounds, window, false);
+            }
+            final long malformedBefore = factory.getStats().malformedCount();
+            final long start = System.nanoTime();
+            final Worker[] workers = run(factory, channel, bounds, window, true);
+            final long elapsed = System.nanoTime() - start;
+
+            final Report report = new Report(tokenizer, corpus, size, threads, elapsed, factory.getStats().malformedCount() - malformedBefore);
+            for (Worker worker : workers) {
+                report.add(worker);
+            }
+            return report;
+        }
+    }
+
+
+    private static EmailTokenizerFactory factory(Settings nodeSettings, Settings indexSettings, String name) {
+        Settings tokenizerSettings = indexSettings.getAsSettings("index.analysis.tokenizer." + name);
+        if (tokenizerSettings.getAsMap().isEmpty()) {
+            tokenizerSettings = indexSettings.getAsSettings("analysis.tokenizer." + name);
+        }
+        if (!"email".equals(tokenizerSettings.get("type"))) {
+            throw new IllegalArgumentException("failed to find email tokenizer [" + name + "] in the index settings");
+        }
+        final Environment environment = new Environment(nodeSettings);
+        final Index index = new Index("replay");
+        final Settings settings = Settings.builder()
+                .put(indexSettings)
+                .put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT)
+                .build();
+        return new EmailTokenizerFactory(index, new IndexSettingsService(index, settings), environment,
+                new EmailTokenizerStatsService(nodeSettings), new PublicSuffixListService(nodeSettings, environment), name, tokenizerSettings);
+    }
+
+
+    /**
+     * @return the position after the first newline at or after the given position, or the size of the file
+     */
+    private static long nextLine(FileChannel channel, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (true) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+
+    private static Worker[] run(EmailTokenizerFactory factory, FileChannel channel, long[] bounds, int window, boolean measure)
+            throws IOException, InterruptedException {
+        final Worker[] workers = new Worker[bounds.length - 1];
+        final Thread[] threads = new Thread[workers.length];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(factory.create(), channel, bounds[i], bounds[i + 1], window, measure, failure);
+            threads[i] = new Thread(workers[i], "replay[" + i + "]");
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() instanceof IOException) {
+            throw (IOException) failure.get();
+        } else if (failure.get() instanceof RuntimeException) {
+            throw (RuntimeException) failure.get();
+        } else if (failure.get() != null) {
+            throw new IllegalStateException("replay failed", failure.get());
+        }
+        return workers;
+    }
+
+
+    /**
+     * Tokenizes one range of the corpus with one tokenizer.
+     */
+    private static final class Worker implements Runnable {
+        private final Tokenizer tokenizer;
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int window;
+        private final boolean measure;
+        private final AtomicReference<Throwable> failure;
+
+        private final CharArrayReader reader = new CharArrayReader();
+        private byte[] bytes = new byte[256];
+        private char[] chars = new char[256];
+
+        final Histogram latencies = new Histogram(MAX_LATENCY, 3);
+        long documents;
+        long tokens;
+        long allocatedBytes = -1;
+
+        Worker(Tokenizer tokenizer, FileChannel channel, long start, long end, int window, boolean measure, AtomicReference<Throwable> failure) {
+            this.tokenizer = tokenizer;
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.window = window;
+            this.measure = measure;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            final com.sun.management.ThreadMXBean allocations = threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled()
+                    ? (com.sun.management.ThreadMXBean) threadMXBean : null;
+            final long threadId = Thread.currentThread().getId();
+            try {
+                final long allocatedBefore = allocations == null ? 0 : allocations.getThreadAllocatedBytes(threadId);
+                long position = start;
+                while (position < end) {
+                    final long windowEnd = Math.min(end, position + window);
+                    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, windowEnd - position);
+                    final int limit = buffer.limit();
+                    int lineStart = 0;
+                    for (int i = 0; i < limit; i++) {
+                        if (buffer.get(i) == '\n') {
+                            line(buffer, lineStart, i);
+                            lineStart = i + 1;
+                        }
+                    }
+                    if (windowEnd == end) {
+                        if (lineStart < limit) {
+                            line(buffer, lineStart, limit);
+                        }
+                        position = end;
+                    } else if (lineStart == 0) {
+                        throw new IOException("line at byte [" + position + "] is longer than the mapped window of [" + window + "] bytes");
+                    } else {
+                        // map the next window from the start of the line which this one cut off
+                        position += lineStart;
+                    }
+                }
+                if (allocations != null) {
+                    allocatedBytes = allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void line(MappedByteBuffer buffer, int from, int to) throws IOException {
+            if (to > from && buffer.get(to - 1) == '\r') {
+                to--;
+            }
+            final int length = to - from;
+            if (length == 0) {
+                return;
+            }
+            if (bytes.length < length) {
+                bytes = new byte[ArrayUtil.oversize(length, 1)];
+                chars = new char[bytes.length];
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            final int charCount = UnicodeUtil.UTF8toUTF16(bytes, 0, length, chars);
+
+            final long begin = measure ? System.nanoTime() : 0;
+            tokenizer.setReader(reader.reset(chars, charCount));
+            try {
+                tokenizer.reset();
+                while (tokenizer.incrementToken()) {
+                    tokens++;
+                }
+                tokenizer.end();
+            } catch (MalformedEmailException e) {
+                // counted as malformed by the tokenizer's stats
+            } finally {
+                tokenizer.close();
+            }
+            if (measure) {
+                latencies.recordValue(Math.min(System.nanoTime() - begin, MAX_LATENCY));
+            }
+            documents++;
+        }
+    }
+
+
+    /**
+     * A {@link Reader} over a char array which can be pointed at new contents without allocating.
+     */
+    private static final class CharArrayReader extends Reader {
+        private char[] chars;
+        private int length;
+        private int position;
+
+        CharArrayReader reset(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+            this.position = 0;
+            return this;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) {
+            if (position >= length) {
+                return -1;
+            }
+            count = Math.min(count, length - position);
+            System.arraycopy(chars, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+
+    /**
+     * The measurements of one replay, summed across threads.
+     */
+    static final class Report {
+        final String tokenizer;
+        final Path corpus;
+        final long corpusBytes;
+        final int threads;
+        final long elapsedNanos;
+        final long malformed;
+        final Histogram latencies = new Histogram(MAX_LATENCY, 3);
+        long documents;
+        long tokens;
+        long allocatedBytes;
+
+        Report(String tokenizer, Path corpus, long corpusBytes, int threads, long elapsedNanos, long malformed) {
+            this.tokenizer = tokenizer;
+            this.corpus = corpus;
+            this.corpusBytes = corpusBytes;
+            this.threads = threads;
+            this.elapsedNanos = elapsedNanos;
+            this.malformed = malformed;
+        }
+
+        private void add(Worker worker) {
+            documents += worker.documents;
+            tokens += worker.tokens;
+            latencies.add(worker.latencies);
+            allocatedBytes = allocatedBytes == -1 || worker.allocatedBytes == -1 ? -1 : allocatedBytes + worker.allocatedBytes;
+        }
+
+        double docsPerSecond() {
+            return documents / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        double tokensPerDoc() {
+            return documents == 0 ? 0 : tokens / (double) documents;
+        }
+
+        double malformedRate() {
+            return documents == 0 ? 0 : malformed / (double) documents;
+        }
+
+        /**
+         * @return the mean bytes allocated per document, or -1 if the JVM cannot measure thread allocation
+         */
+        double bytesPerDoc() {
+            return allocatedBytes == -1 || documents == 0 ? -1 : allocatedBytes / (double) documents;
+        }
+
+        /**
+         * @return the given percentile of per document latency, in microseconds
+         */
+        double latencyMicros(double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        void print(PrintStream out) {
+            out.println(String.format(Locale.ROOT, "corpus:       %s (%,d bytes)", corpus, corpusBytes));
+            out.println(String.format(Locale.ROOT, "tokenizer:    %s on %d threads", tokenizer, threads));
+            out.println(String.format(Locale.ROOT, "documents:    %,d in %.3f s", documents, elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+            out.println(String.format(Locale.ROOT, "docs/sec:     %,.0f", docsPerSecond()));
+            out.println(String.format(Locale.ROOT, "tokens/doc:   %.3f", tokensPerDoc()));
+            out.println(String.format(Locale.ROOT, "malformed:    %.3f%% (%,d)", malformedRate() * 100, malformed));
+            out.println(String.format(Locale.ROOT, "latency us:   p50 %.3f  p99 %.3f  p999 %.3f  max %.3f",
+                    latencyMicros(50), latencyMicros(99), latencyMicros(99.9), latencies.getMaxValue() / 1000.0));
+            out.println(bytesPerDoc() == -1 ? "bytes/doc:    unavailable"
+                    : String.format(Locale.ROOT, "bytes/doc:    %.1f", bytesPerDoc()));
+        }
+    }
+}
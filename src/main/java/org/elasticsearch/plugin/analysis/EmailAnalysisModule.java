@@ -0,0 +1,26 @@
+package org.elasticsearch.plugin.analysis;
+
+import org.elasticsearch.common.inject.AbstractModule;
+import org.elasticsearch.index.analysis.email.DomainSetService;
+import org.elasticsearch.index.analysis.email.EmailTokenizerStatsService;
+import org.elasticsearch.index.analysis.email.PublicSuffixListService;
+import org.elasticsearch.index.analysis.email.ThreadTokenizerService;
+
+/**
+ * Binds the node level services of the plugin.
+ */
+public class EmailAnalysisModule extends AbstractModule {
+    private final PublicSuffixListService publicSuffixes;
+
+    public EmailAnalysisModule(PublicSuffixListService publicSuffixes) {
+        this.publicSuffixes = publicSuffixes;
+    }
+
+    @Override
+    protected void configure() {
+        bind(EmailTokenizerStatsService.class).asEagerSingleton();
+        bind(DomainSetService.class).asEagerSingleton();
+        bind(ThreadTokenizerService.class).asEagerSingleton();
+        bind(PublicSuffixListService.class).toInstance(publicSuffixes);
+    }
+}
@@ -0,0 +1,45 @@
+package org.elasticsearch.rest.action.email;
+
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsAction;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsRequest;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.support.RestBuilderListener;
+
+/**
+ * {@code GET /_email_analysis/stats} and {@code GET /_email_analysis/stats/{nodeId}}
+ */
+public class RestEmailAnalysisStatsAction extends BaseRestHandler {
+    @Inject
+    public RestEmailAnalysisStatsAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(RestRequest.Method.GET, "/_email_analysis/stats", this);
+        controller.registerHandler(RestRequest.Method.GET, "/_email_analysis/stats/{nodeId}", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
+        EmailAnalysisStatsRequest statsRequest = new EmailAnalysisStatsRequest(Strings.splitStringByCommaToArray(request.param("nodeId")));
+        statsRequest.timeout(request.param("timeout"));
+        client.execute(EmailAnalysisStatsAction.INSTANCE, statsRequest, new RestBuilderListener<EmailAnalysisStatsResponse>(channel) {
+            @Override
+            public RestResponse buildResponse(EmailAnalysisStatsResponse response, XContentBuilder builder) throws Exception {
+                builder.startObject();
+                response.toXContent(builder, request);
+                builder.endObject();
+                return new BytesRestResponse(RestStatus.OK, builder);
+            }
+        });
+    }
+}
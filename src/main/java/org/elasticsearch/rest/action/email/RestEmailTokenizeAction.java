@@ -0,0 +1,135 @@
+package org.elasticsearch.rest.action.email;
+
+import org.elasticsearch.action.email.tokenize.EmailTokenizeAction;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeRequest;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestResponse;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.rest.action.support.RestBuilderListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code POST /{index}/_email/_tokenize?tokenizer=...}
+ *
+ * The body is either newline delimited addresses, a JSON array of addresses, or a JSON object:
+ * <pre>
+ * {"tokenizer": "email_all", "addresses": ["john@example.com", "jane@example.com"]}
+ * </pre>
+ */
+public class RestEmailTokenizeAction extends BaseRestHandler {
+    @Inject
+    public RestEmailTokenizeAction(Settings settings, RestController controller, Client client) {
+        super(settings, controller, client);
+        controller.registerHandler(RestRequest.Method.GET, "/{index}/_email/_tokenize", this);
+        controller.registerHandler(RestRequest.Method.POST, "/{index}/_email/_tokenize", this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
+        EmailTokenizeRequest tokenizeRequest = new EmailTokenizeRequest(request.param("index"));
+        tokenizeRequest.tokenizer(request.param("tokenizer"));
+        if (request.hasContent()) {
+            parseBody(request.content(), tokenizeRequest);
+        }
+        client.execute(EmailTokenizeAction.INSTANCE, tokenizeRequest, new RestBuilderListener<EmailTokenizeResponse>(channel) {
+            @Override
+            public RestResponse buildResponse(EmailTokenizeResponse response, XContentBuilder builder) throws Exception {
+                builder.startObject();
+                response.toXContent(builder, request);
+                builder.endObject();
+                return new BytesRestResponse(RestStatus.OK, builder);
+            }
+        });
+    }
+
+
+    /**
+     * Read the addresses, and the tokenizer if given, from a request body.
+     */
+    public static void parseBody(BytesReference content, EmailTokenizeRequest request) throws IOException {
+        XContentType type = XContentFactory.xContentType(content);
+        if (type == null && firstNonWhitespace(content) == '[') {
+            type = XContentType.JSON;
+        }
+        if (type == null) {
+            request.addresses(splitLines(content.toUtf8()));
+            return;
+        }
+        try (XContentParser parser = XContentFactory.xContent(type).createParser(content)) {
+            XContentParser.Token token = parser.nextToken();
+            if (token == XContentParser.Token.START_ARRAY) {
+                request.addresses(parseAddresses(parser));
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                String field = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        field = parser.currentName();
+                    } else if ("tokenizer".equals(field) && token == XContentParser.Token.VALUE_STRING) {
+                        request.tokenizer(parser.text());
+                    } else if ("addresses".equals(field) && token == XContentParser.Token.START_ARRAY) {
+                        request.addresses(parseAddresses(parser));
+                    } else {
+                        throw new IllegalArgumentException("Unknown parameter [" + field + "] in request body or parameter is of the wrong type[" + token + "] ");
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Email tokenize request body must be an array or object of addresses, not " + token);
+            }
+        }
+    }
+
+    private static String[] parseAddresses(XContentParser parser) throws IOException {
+        final List<String> addresses = new ArrayList<>();
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token != XContentParser.Token.VALUE_STRING) {
+                throw new IllegalArgumentException("Addresses must be strings, not " + token);
+            }
+            addresses.add(parser.text());
+        }
+        return addresses.toArray(new String[addresses.size()]);
+    }
+
+    /**
+     * @return the lines of the given text, trimmed. Blank lines are kept, as empty addresses without tokens, so that the
+     *         results line up with the lines of the request. A final line feed does not begin another line.
+     */
+    private static String[] splitLines(String text) {
+        final List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end == -1) {
+                end = text.length();
+            }
+            lines.add(text.substring(start, end).trim());
+            start = end + 1;
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private static int firstNonWhitespace(BytesReference content) {
+        for (int i = 0; i < content.length(); i++) {
+            if (!Character.isWhitespace(content.get(i))) {
+                return content.get(i);
+            }
+        }
+        return -1;
+    }
+}
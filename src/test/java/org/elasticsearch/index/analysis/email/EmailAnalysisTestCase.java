@@ -1,12 +1,17 @@
 package org.elasticsearch.index.analysis.email;
 
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.plugin.analysis.AnalysisEmailPlugin;
 import org.elasticsearch.plugins.Plugin;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.elasticsearch.test.StreamsUtils;
 import org.junit.Before;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 
@@ -18,12 +23,36 @@ public abstract class EmailAnalysisTestCase extends ESIntegTestCase {
     protected static final String INDEX = "email_token_filter";
 
 
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        // the domain flag filter, canonical rules and localpart words in test-settings.json are read from the config directory
+        Path config = createTempDir();
+        try {
+            Files.createDirectories(config.resolve("analysis-email"));
+            for (String file : new String[]{"disposable_domains.txt", "canonical_rules.txt", "localpart_words.txt"}) {
+                try (InputStream contents = EmailAnalysisTestCase.class.getResourceAsStream("/" + file)) {
+                    Files.copy(contents, config.resolve("analysis-email").resolve(file));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return Settings.builder().put(super.nodeSettings(nodeOrdinal)).put("path.conf", config).build();
+    }
+
+
     @SuppressWarnings("unchecked")
     @Override
     protected Collection<Class<? extends Plugin>> nodePlugins() {
         return pluginList(AnalysisEmailPlugin.class);
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Collection<Class<? extends Plugin>> transportClientPlugins() {
+        return pluginList(AnalysisEmailPlugin.class);
+    }
+
     @Before
     @Override
     public void setUp() throws Exception {
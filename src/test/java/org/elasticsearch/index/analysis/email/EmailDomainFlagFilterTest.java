@@ -0,0 +1,194 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.TokenStream;
+import org.elasticsearch.index.analysis.DomainFormat;
+import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.InputMode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class EmailDomainFlagFilterTest extends BaseTokenStreamTestCase {
+    @Test
+    public void testDomainSet() throws IOException {
+        DomainSet domains = DomainSet.open(writeDomains("a.example\nexample.com\nmailinator.com\nzz\n"));
+        assertThat(domains.domainCount(), equalTo(4));
+        assertMatches(domains, "example.com", false, true);
+        assertMatches(domains, "Mailinator.COM", false, true);
+        assertMatches(domains, "a.example", false, true);
+        assertMatches(domains, "zz", false, true);
+        assertMatches(domains, "example", false, false);
+        assertMatches(domains, "examples.com", false, false);
+        assertMatches(domains, "com", false, false);
+        assertMatches(domains, "zzz", false, false);
+        assertMatches(domains, "müller.com", false, false);
+        assertMatches(domains, "mail.example.com", false, false);
+        assertMatches(domains, "mail.example.com", true, true);
+        assertMatches(domains, "b.a.example", true, true);
+
+        // a file without a trailing line feed, and an empty file
+        assertMatches(DomainSet.open(writeDomains("example.com")), "example.com", false, true);
+        DomainSet empty = DomainSet.open(writeDomains(""));
+        assertThat(empty.domainCount(), equalTo(0));
+        assertMatches(empty, "example.com", true, false);
+    }
+
+
+    @Test
+    public void testInvalidFile() throws IOException {
+        assertInvalid("example.com\nexample.co\n", "not sorted at line [2]");
+        assertInvalid("Example.com\n", "line [1] is not a lowercase ASCII domain");
+        assertInvalid("example.com\r\n", "line [1] is not a lowercase ASCII domain");
+        assertInvalid("a.com\n\nb.com\n", "line [2] is blank");
+    }
+
+
+    @Test
+    public void testReload() throws IOException {
+        Path path = writeDomains("example.com\n");
+        DomainSet domains = DomainSet.open(path);
+
+        Path replacement = writeDomains("example.net\nexample.org\n");
+        Files.move(replacement, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assertMatches(domains, "example.com", false, true);
+        domains.reload();
+        assertThat(domains.domainCount(), equalTo(2));
+        assertMatches(domains, "example.com", false, false);
+        assertMatches(domains, "example.org", false, true);
+
+        // an invalid file leaves the previous domains in place
+        Files.move(writeDomains("b\na\n"), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            domains.reload();
+            fail("expected the unsorted file to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString("not sorted"));
+        }
+        assertMatches(domains, "example.org", false, true);
+    }
+
+
+    @Test
+    public void testFilter() throws IOException {
+        DomainSet domains = DomainSet.open(writeDomains("mailinator.com\n"));
+
+        TokenStream stream = filter("foo@a.mailinator.com", null, domains, true);
+        assertTokenStreamContents(stream,
+                stringArray("a.mailinator.com", "disposable", "mailinator.com", "com", "foo", "foo@a.mailinator.com"),
+                new int[]{4, 4, 6, 17, 0, 0}, new int[]{20, 20, 20, 20, 3, 20},
+                stringArray("domain", EmailDomainFlagFilter.TYPE, "domain", "domain", "localpart", "whole"),
+                new int[]{1, 0, 1, 1, 1, 1}, null, 20, false);
+
+        // without subdomains, only the address's own domain is looked up, not its suffixes
+        stream = filter("foo@a.mailinator.com", null, domains, false);
+        assertTokenStreamContents(stream, stringArray("a.mailinator.com", "mailinator.com", "com", "foo",
+                "foo@a.mailinator.com"), null, null, null, null, null, 20, false);
+        stream = filter("foo@mailinator.com", null, domains, false);
+        assertTokenStreamContents(stream, stringArray("mailinator.com", "disposable", "com", "foo", "foo@mailinator.com"),
+                null, null, null, new int[]{1, 0, 1, 1, 1}, null, 18, false);
+
+        // the domain of whole tokens is checked, once per address
+        stream = filter("foo+bar@mailinator.com, x@example.com, y@mailinator.com", EmailPart.WHOLE, domains, true);
+        assertTokenStreamContents(stream, stringArray("foo+bar@mailinator.com", "disposable", "x@example.com",
+                "y@mailinator.com", "disposable"), null, null, null, new int[]{1, 0, 1, 1, 0}, null, 55, false);
+
+        // with split_on_plus, the address without its tag ends earlier, but is still the same address
+        stream = filter("foo+bar@mailinator.com", null, domains, true);
+        assertTokenStreamContents(stream, stringArray("mailinator.com", "disposable", "com", "foo+bar", "foo",
+                "foo+bar@mailinator.com", "foo@mailinator.com"), new int[]{8, 8, 19, 0, 0, 0, 0}, new int[]{22, 22, 22, 7, 3, 22, 21},
+                null, null, null, 22, false);
+        stream = filter("foo+bar@mailinator.com, x+y@example.com, z+w@mailinator.com", EmailPart.WHOLE, domains, true);
+        assertTokenStreamContents(stream, stringArray("foo+bar@mailinator.com", "disposable", "x+y@example.com",
+                "z+w@mailinator.com", "disposable"), null, null, null, new int[]{1, 0, 1, 1, 0}, null, 59, false);
+
+        // reversed domains are put back in order before they are looked up
+        stream = filter("foo@a.mailinator.com", null, DomainFormat.REVERSED, domains, true);
+        assertTokenStreamContents(stream, stringArray("com.mailinator.a.", "disposable", "foo", "foo@a.mailinator.com"),
+                new int[]{4, 4, 0, 0}, new int[]{20, 20, 3, 20}, null, new int[]{1, 0, 1, 1}, null, 20, false);
+        stream = filter("foo@mailinator.com", EmailPart.DOMAIN, DomainFormat.REVERSED, domains, false);
+        assertTokenStreamContents(stream, stringArray("com.mailinator.", "disposable"), null, null, null,
+                new int[]{1, 0}, null, 18, false);
+        stream = filter("foo@a.mailinator.com", EmailPart.DOMAIN, DomainFormat.REVERSED, domains, false);
+        assertTokenStreamContents(stream, stringArray("com.mailinator.a."), null, null, null, null, null, 20, false);
+    }
+
+
+    @Test
+    public void testLookupAllocation() throws IOException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation measurement is unavailable", threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue("thread allocation measurement is disabled", allocations.isThreadAllocatedMemoryEnabled());
+
+        StringBuilder file = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            file.append(String.format("domain%05d.com\n", i));
+        }
+        DomainSet domains = DomainSet.open(writeDomains(file.toString()));
+        char[][] lookups = {"a.b.domain01234.com".toCharArray(), "domain99999.com".toCharArray(), "mail.example.org".toCharArray()};
+
+        int matches = 0;
+        for (int i = 0; i < 10000; i++) {
+            matches += domains.matches(lookups[i % lookups.length], 0, lookups[i % lookups.length].length, true) ? 1 : 0;
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 30000; i++) {
+            matches += domains.matches(lookups[i % lookups.length], 0, lookups[i % lookups.length].length, true) ? 1 : 0;
+        }
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        // only the first of the lookups is in the set
+        assertThat(matches, equalTo(3334 + 10000));
+        // allow for a small constant overhead incurred by the measurement itself
+        assertTrue("allocated " + allocated + " bytes during lookups", allocated < 1024);
+    }
+
+
+    private TokenStream filter(String input, EmailPart part, DomainSet domains, boolean matchSubdomains) {
+        return filter(input, part, DomainFormat.SUFFIXES, domains, matchSubdomains);
+    }
+
+    private TokenStream filter(String input, EmailPart part, DomainFormat domainFormat, DomainSet domains,
+                               boolean matchSubdomains) {
+        EmailTokenizer tokenizer = new EmailTokenizer(part);
+        tokenizer.setDomainFormat(domainFormat);
+        tokenizer.setMode(part == EmailPart.WHOLE ? InputMode.MULTI : InputMode.SINGLE);
+        tokenizer.setReader(new StringReader(input));
+        return new EmailDomainFlagFilter(tokenizer, domains, "disposable", matchSubdomains);
+    }
+
+    private Path writeDomains(String domains) throws IOException {
+        Path path = Files.createTempFile(createTempDir(), "domains", ".txt");
+        Files.write(path, domains.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private void assertMatches(DomainSet domains, String domain, boolean includeParents, boolean expected) {
+        assertThat(domain, domains.matches(domain.toCharArray(), 0, domain.length(), includeParents), equalTo(expected));
+    }
+
+    private void assertInvalid(String domains, String message) throws IOException {
+        try {
+            DomainSet.open(writeDomains(domains));
+            fail("expected " + domains + " to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), containsString(message));
+        }
+    }
+
+    private String[] stringArray(String... strings) {
+        return strings;
+    }
+}
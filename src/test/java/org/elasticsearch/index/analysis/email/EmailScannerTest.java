@@ -0,0 +1,213 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Differential tests which ensure that {@link EmailScanner} accepts and rejects exactly what the validation pattern
+ * it replaced did.
+ */
+public class EmailScannerTest extends LuceneTestCase {
+    private static final Pattern REFERENCE = Pattern.compile("[a-z0-9!#$%&'*+/=?^_`{|}~-]+(?:\\.[a-z0-9!#$%&'*+/=?^_`{|}~-]+)*@(?:[a-z0-9](?:[a-z0-9-]*[a-z0-9])?\\.)+[a-z0-9](?:[a-z0-9-]*[a-z0-9])?", Pattern.CASE_INSENSITIVE);
+
+    private static final String LOCAL_CHARS = "abcxyzABCXYZ0189!#$%&'*+/=?^_`{|}~-";
+    private static final String DOMAIN_CHARS = "abcxyzABCXYZ0189-";
+    private static final String NOISE_CHARS = ".@-+ \t\"(),:;<>[\\]éſKİıß例";
+
+    private final EmailScanner scanner = new EmailScanner();
+
+
+    @Test
+    public void testKnownAddresses() {
+        assertAgreement("foo@gmail.com");
+        assertAgreement("foo+bar@gmail.com");
+        assertAgreement("foo.bar_baz@a.b.example.co.uk");
+        assertAgreement("FOO@EXAMPLE.COM");
+        assertAgreement("a@b.c");
+        assertAgreement("x-y@a-b.c-d");
+        assertAgreement("");
+        assertAgreement("@");
+        assertAgreement("foo@bar@com");
+        assertAgreement("foo@bar");
+        assertAgreement(".foo@bar.com");
+        assertAgreement("foo.@bar.com");
+        assertAgreement("foo..bar@bar.com");
+        assertAgreement("foo@-bar.com");
+        assertAgreement("foo@bar-.com");
+        assertAgreement("foo@bar..com");
+        assertAgreement("foo@bar.com.");
+        assertAgreement("foo@.bar.com");
+        assertAgreement("foo bar@baz.com");
+        assertAgreement("ſoo@bar.com");
+        assertAgreement("foo@Kelvin.com");
+    }
+
+
+    @Test
+    public void testGeneratedCorpus() {
+        final Random random = random();
+        final int iterations = atLeast(50000);
+        for (int i = 0; i < iterations; i++) {
+            final String candidate;
+            switch (random.nextInt(3)) {
+                case 0:
+                    candidate = randomAddress(random);
+                    break;
+                case 1:
+                    candidate = mutate(random, randomAddress(random));
+                    break;
+                default:
+                    candidate = randomString(random, LOCAL_CHARS + DOMAIN_CHARS + NOISE_CHARS, random.nextInt(24));
+                    break;
+            }
+            assertAgreement(candidate);
+        }
+    }
+
+
+    @Test
+    public void testParsedPositions() {
+        final Random random = random();
+        final int iterations = atLeast(10000);
+        for (int i = 0; i < iterations; i++) {
+            final String address = randomAddress(random);
+            if (!REFERENCE.matcher(address).matches()) {
+                continue;
+            }
+            assertTrue(address, scanner.scan(address.toCharArray(), 0, address.length()));
+            final int at = address.indexOf('@');
+            assertThat(address, scanner.at(), equalTo(at));
+            final int plus = address.substring(0, at).indexOf('+');
+            assertThat(address, scanner.plus(), equalTo(plus));
+
+            final List<Integer> labelStarts = new ArrayList<>();
+            int labelStart = at + 1;
+            while (labelStart > 0) {
+                labelStarts.add(labelStart);
+                labelStart = address.indexOf('.', labelStart) + 1;
+            }
+            assertThat(address, scanner.labelCount(), equalTo(labelStarts.size()));
+            for (int label = 0; label < labelStarts.size(); label++) {
+                assertThat(address, scanner.labelStart(label), equalTo((int) labelStarts.get(label)));
+            }
+        }
+    }
+
+
+    @Test
+    public void testUnicode() {
+        final String[] accepted = {"用户@例子.广告", "用户@example.com", "foo@例子.广告", "δοκιμή@παράδειγμα.δοκιμή",
+                "пользователь+тег@пример.рф", "मेल@डाटामेल.भारत"};
+        for (String address : accepted) {
+            assertFalse(address, scanner.scan(address.toCharArray(), 0, address.length()));
+        }
+        scanner.setAllowUnicode(true);
+        for (String address : accepted) {
+            assertTrue(address, scanner.scan(address.toCharArray(), 0, address.length()));
+            final boolean ascii = address.substring(address.indexOf('@')).matches("\\p{ASCII}*");
+            assertThat(address, scanner.asciiDomain(), equalTo(ascii));
+        }
+        assertTrue(scanner.scan("foo@xn--fsqu00a.xn--4rr70v".toCharArray(), 0, 26));
+        assertTrue(scanner.asciiDomain());
+        assertTrue(scanner.scan("пользователь+тег@пример.рф".toCharArray(), 0, 26));
+        assertThat(scanner.plus(), equalTo(12));
+        assertThat(scanner.labelStart(1), equalTo(24));
+
+        for (String address : new String[]{"用 户@例子.广告", "用户@例子 .广告", "用户@例子..广告", "用户@-例子.广告", "用户@例子-.广告",
+                "用户@例子", "用户\u3000@例子.广告", "用户@例子.广告\u3000", "用户@例子。广告", "用户@例_子.广告", "\u0000@例子.广告"}) {
+            assertFalse(address, scanner.scan(address.toCharArray(), 0, address.length()));
+        }
+
+        // ASCII candidates are accepted and rejected exactly as when Unicode is not allowed
+        final Random random = random();
+        final int iterations = atLeast(10000);
+        for (int i = 0; i < iterations; i++) {
+            assertAgreement(random.nextBoolean() ? randomAddress(random) : mutate(random, randomAddress(random)).replace('例', '.')
+                    .replaceAll("[^\\p{ASCII}]", "a"));
+        }
+    }
+
+
+    @Test
+    public void testOffsetRange() {
+        final char[] buffer = "xx foo+bar@example.com yy".toCharArray();
+        assertTrue(scanner.scan(buffer, 3, 22));
+        assertThat(scanner.at(), equalTo(10));
+        assertThat(scanner.plus(), equalTo(6));
+        assertThat(scanner.labelCount(), equalTo(2));
+        assertThat(scanner.labelStart(0), equalTo(11));
+        assertThat(scanner.labelStart(1), equalTo(19));
+
+        assertFalse(scanner.scan(buffer, 0, 22));
+    }
+
+
+    private void assertAgreement(String candidate) {
+        final boolean expected = REFERENCE.matcher(candidate).matches();
+        final char[] padded = ("<" + candidate + ">").toCharArray();
+        assertThat("scanning [" + candidate + "]", scanner.scan(padded, 1, padded.length - 1), equalTo(expected));
+    }
+
+
+    private static String randomAddress(Random random) {
+        StringBuilder builder = new StringBuilder();
+        final int atoms = 1 + random.nextInt(3);
+        for (int i = 0; i < atoms; i++) {
+            if (i > 0) {
+                builder.append('.');
+            }
+            builder.append(randomString(random, LOCAL_CHARS, 1 + random.nextInt(8)));
+        }
+        builder.append('@');
+        final int labels = 1 + random.nextInt(4);
+        for (int i = 0; i < labels; i++) {
+            if (i > 0) {
+                builder.append('.');
+            }
+            builder.append(randomString(random, DOMAIN_CHARS, 1 + random.nextInt(8)));
+        }
+        return builder.toString();
+    }
+
+
+    private static String mutate(Random random, String address) {
+        StringBuilder builder = new StringBuilder(address);
+        final int mutations = 1 + random.nextInt(3);
+        for (int i = 0; i < mutations; i++) {
+            final int position = random.nextInt(builder.length() + 1);
+            final char c = NOISE_CHARS.charAt(random.nextInt(NOISE_CHARS.length()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    builder.insert(position, c);
+                    break;
+                case 1:
+                    if (position < builder.length()) {
+                        builder.setCharAt(position, c);
+                    }
+                    break;
+                default:
+                    if (position < builder.length()) {
+                        builder.deleteCharAt(position);
+                    }
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+
+    private static String randomString(Random random, String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -1,13 +1,43 @@
 package org.elasticsearch.index.analysis.email;
 
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsAction;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsRequest;
+import org.elasticsearch.action.email.stats.EmailAnalysisStatsResponse;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeAction;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeRequest;
+import org.elasticsearch.action.email.tokenize.EmailTokenizeResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.env.NodeEnvironment;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.rest.action.email.RestEmailTokenizeAction;
 import org.elasticsearch.search.SearchHits;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItem;
 
@@ -25,6 +55,22 @@ public class EmailTokenizerIntegrationTest extends EmailAnalysisTestCase {
         assertTokensContain("foo+bar@email.com", "email_all", "foo", "foo+bar", "foo@email.com", "foo+bar@email.com", "email.com", "com");
 
         assertTokensContain("foo+bar@email@com", "email_all", "foo+bar@email@com");
+
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertTokensContain("foo@mail.eu.example.co.uk", "email_registrable_domain", "example.co.uk");
+        assertThat(tokens.size(), equalTo(1));
+        assertThat(tokens.get(0).getType(), equalTo("registrable_domain"));
+    }
+
+
+    @Test
+    public void testDomainFlag() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = assertTokensContain("foo@mail.mailinator.com", "email_flagged",
+                "mail.mailinator.com", "disposable", "mailinator.com", "com");
+        assertThat(tokens.size(), equalTo(4));
+        assertThat(tokens.get(1).getType(), equalTo(EmailDomainFlagFilter.TYPE));
+        assertThat(tokens.get(1).getPosition(), equalTo(tokens.get(0).getPosition()));
+
+        assertThat(analyzeEmail("foo@example.com", "email_flagged").size(), equalTo(2));
     }
 
 
@@ -47,6 +93,255 @@ public class EmailTokenizerIntegrationTest extends EmailAnalysisTestCase {
     }
 
 
+    @Test
+    public void testSearchMode() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeEmail("foo+xyz@email.com", "email_search");
+        assertThat(tokens.size(), equalTo(1));
+        assertThat(tokens.get(0).getTerm(), equalTo("foo@email.com"));
+
+        client().prepareIndex(INDEX, "test", "1").setSource("email", "foo+bar-baz@email.com").get();
+        client().prepareIndex(INDEX, "test", "2").setSource("email", "foo@email.net").get();
+        client().prepareIndex(INDEX, "test", "3").setSource("email", "bar@email.com").get();
+        refresh();
+
+        // with the index time analyzer, the query matches any address sharing a localpart or domain token
+        SearchHits hits = client().prepareSearch(INDEX)
+                .setQuery(QueryBuilders.matchQuery("email", "foo+xyz@email.com").analyzer("email_all")).get().getHits();
+        assertThat(hits.getTotalHits(), equalTo(3L));
+
+        hits = client().prepareSearch(INDEX)
+                .setQuery(QueryBuilders.matchQuery("email", "foo+xyz@email.com").analyzer("email_search")).get().getHits();
+        assertThat(hits.getTotalHits(), equalTo(1L));
+        assertThat(hits.getAt(0).getId(), equalTo("1"));
+    }
+
+
+    @Test
+    public void testCanonicalize() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeEmail("Foo.Bar+news@GoogleMail.com", "email_canonical");
+        AnalyzeResponse.AnalyzeToken canonical = tokens.get(tokens.size() - 1);
+        assertThat(canonical.getTerm(), equalTo("foobar@gmail.com"));
+        assertThat(canonical.getType(), equalTo(EmailTokenizer.CANONICAL_TYPE));
+        assertThat(tokens.get(0).getTerm(), equalTo("googlemail.com"));
+    }
+
+
+    @Test
+    public void testLocalpartDictionary() {
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeEmail("johnsmith1984@example.com", "email_localpart_words");
+        assertThat(tokens.size(), equalTo(4));
+        assertThat(tokens.get(1).getTerm(), equalTo("john"));
+        assertThat(tokens.get(2).getTerm(), equalTo("smith"));
+        assertThat(tokens.get(3).getTerm(), equalTo("1984"));
+    }
+
+
+    @Test
+    public void testStackedPositionsSize() throws IOException {
+        long flat = indexedPositionsSize("email_flat", false);
+        long stacked = indexedPositionsSize("email_stacked", true);
+        logger.info("positions size: [{}] bytes flat, [{}] bytes stacked", flat, stacked);
+        assertThat(stacked, Matchers.lessThan(flat));
+    }
+
+    /**
+     * Index a generated corpus into a new single shard index, and measure its positions files.
+     */
+    private long indexedPositionsSize(String index, boolean stackPositions) throws IOException {
+        client().admin().indices().prepareCreate(index).setSettings(Settings.builder()
+                .put("number_of_shards", 1)
+                .put("number_of_replicas", 0)
+                .put("index.compound_format", false)
+                .put("analysis.tokenizer.email_positions.type", "email")
+                .putArray("analysis.tokenizer.email_positions.split_localpart", ".", "_")
+                .put("analysis.tokenizer.email_positions.stack_positions", stackPositions)
+                .put("analysis.analyzer.email_positions.tokenizer", "email_positions"))
+                .addMapping("test", "email", "type=string,analyzer=email_positions").get();
+        ensureGreen(index);
+
+        Random random = new Random(0);
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 0; i < 5000; i++) {
+            // vary the shape of addresses, so that the same term falls at different positions when positions are not stacked
+            StringBuilder address = new StringBuilder("user" + random.nextInt(1000));
+            for (int j = random.nextInt(3); j > 0; j--) {
+                address.append(random.nextBoolean() ? '.' : '_').append("part").append(random.nextInt(100));
+            }
+            if (random.nextBoolean()) {
+                address.append('+').append("tag").append(random.nextInt(10));
+            }
+            address.append('@');
+            for (int j = random.nextInt(3); j > 0; j--) {
+                address.append("sub").append(random.nextInt(10)).append('.');
+            }
+            address.append("example").append(random.nextInt(100)).append(".com");
+            bulk.add(client().prepareIndex(index, "test").setSource("email", address.toString()));
+        }
+        assertFalse(bulk.get().hasFailures());
+        client().admin().indices().prepareForceMerge(index).setMaxNumSegments(1).setFlush(true).get();
+
+        long size = 0;
+        for (NodeEnvironment environment : internalCluster().getDataNodeInstances(NodeEnvironment.class)) {
+            for (Path shardPath : environment.availableShardPaths(new ShardId(index, 0))) {
+                Path indexPath = shardPath.resolve("index");
+                if (!Files.isDirectory(indexPath)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(indexPath, "*.pos")) {
+                    for (Path file : files) {
+                        size += Files.size(file);
+                    }
+                }
+            }
+        }
+        assertThat(size, Matchers.greaterThan(0L));
+        return size;
+    }
+
+
+    @Test
+    public void testHashedSearch() {
+        client().prepareIndex(INDEX, "test", "1").setSource("email_hashed", "foo+bar@email.com").get();
+        client().prepareIndex(INDEX, "test", "2").setSource("email_hashed", "baz@a.email.net").get();
+        refresh();
+
+        List<AnalyzeResponse.AnalyzeToken> tokens = analyzeEmail("foo+bar@email.com", "email_hashed");
+        for (AnalyzeResponse.AnalyzeToken token : tokens) {
+            assertThat(token.getTerm().length(), equalTo(11));
+        }
+
+        assertThat(hashedHits("foo@email.com"), equalTo(1L));
+        assertThat(hashedHits("email.com"), equalTo(1L));
+        assertThat(hashedHits("email.net"), equalTo(1L));
+        assertThat(hashedHits("baz"), equalTo(1L));
+        assertThat(hashedHits("email.org"), equalTo(0L));
+    }
+
+    private long hashedHits(String value) {
+        return client().prepareSearch(INDEX).setQuery(QueryBuilders.matchQuery("email_hashed", value)).get().getHits().getTotalHits();
+    }
+
+
+    @Test
+    public void testStats() throws Exception {
+        // stats are kept for the lifetime of a node, so may include the analysis done by other tests
+        TokenizerStats before = tokenizerStats("email_all");
+
+        analyzeEmail("foo+bar@email.com", "email_all");
+        analyzeEmail("foo+bar@email@com", "email_all");
+
+        TokenizerStats after = tokenizerStats("email_all");
+        assertThat(after.getDocuments() - before.getDocuments(), equalTo(2L));
+        assertThat(after.getTokens(EmailPart.DOMAIN) - before.getTokens(EmailPart.DOMAIN), equalTo(2L));
+        assertThat(after.getTokens(EmailPart.WHOLE) - before.getTokens(EmailPart.WHOLE), equalTo(3L));
+        assertThat(after.getTotalMalformed() - before.getTotalMalformed(), equalTo(1L));
+
+        EmailAnalysisStatsResponse response = client().execute(EmailAnalysisStatsAction.INSTANCE, new EmailAnalysisStatsRequest()).get();
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+        response.toXContent(builder, new ToXContent.MapParams(Collections.singletonMap("level", "node"))).endObject();
+        Map<String, Object> json = XContentHelper.convertToMap(builder.bytes(), false).v2();
+        assertTrue(((Map<?, ?>) json.get("tokenizers")).containsKey("email_all"));
+        assertThat(((Map<?, ?>) json.get("nodes")).size(), equalTo(cluster().size()));
+    }
+
+
+    @Test
+    public void testBulkTokenize() throws Exception {
+        // enough addresses to be split into several chunks, in a shape which varies so that results out of order would show
+        Random random = new Random(0);
+        String[] addresses = new String[2000];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = i % 97 == 0 ? "malformed" + i + "@" : "user" + i + (random.nextBoolean() ? "+tag" : "") + "@example" + (i % 7) + ".com";
+        }
+        EmailTokenizeResponse response = client().execute(EmailTokenizeAction.INSTANCE,
+                new EmailTokenizeRequest(INDEX).tokenizer("email_all").addresses(addresses)).get();
+        assertThat(response.getAddressCount(), equalTo(addresses.length));
+        for (int i = 0; i < addresses.length; i += 37) {
+            List<AnalyzeResponse.AnalyzeToken> expected = analyzeEmail(addresses[i], "email_all");
+            EmailTokenizeResponse.Token[] tokens = response.getTokens(i);
+            assertThat(addresses[i], tokens.length, equalTo(expected.size()));
+            for (int j = 0; j < tokens.length; j++) {
+                assertThat(tokens[j].getTerm(), equalTo(expected.get(j).getTerm()));
+                assertThat(tokens[j].getType(), equalTo(expected.get(j).getType()));
+                assertThat(tokens[j].getStartOffset(), equalTo(expected.get(j).getStartOffset()));
+                assertThat(tokens[j].getEndOffset(), equalTo(expected.get(j).getEndOffset()));
+                assertThat(tokens[j].getPosition(), equalTo(expected.get(j).getPosition()));
+            }
+        }
+
+        try {
+            client().execute(EmailTokenizeAction.INSTANCE, new EmailTokenizeRequest(INDEX).tokenizer("email_domain").addresses("foo@example.com", "foo")).get();
+            fail("malformed address should be rejected");
+        } catch (Exception e) {
+            assertThat(ExceptionsHelper.detailedMessage(e), containsString("address [1] is malformed"));
+        }
+        // tokenizers are reused by later requests, after the one which failed
+        for (int i = 0; i < 3; i++) {
+            response = client().execute(EmailTokenizeAction.INSTANCE,
+                    new EmailTokenizeRequest(INDEX).tokenizer("email_domain").addresses("foo@mail.example.com")).get();
+            assertThat(response.getTokens(0).length, equalTo(3));
+            assertThat(response.getTokens(0)[0].getTerm(), equalTo("mail.example.com"));
+        }
+        try {
+            client().execute(EmailTokenizeAction.INSTANCE, new EmailTokenizeRequest(INDEX).tokenizer("standard").addresses("foo@example.com")).get();
+            fail("only email tokenizers may be used");
+        } catch (Exception e) {
+            assertThat(ExceptionsHelper.detailedMessage(e), containsString("failed to find email tokenizer [standard]"));
+        }
+    }
+
+
+    @Test
+    public void testThreadTokenizersClosedWithIndex() {
+        List<EmailTokenizerFactory> factories = new ArrayList<>();
+        for (IndicesService indices : internalCluster().getDataNodeInstances(IndicesService.class)) {
+            IndexService indexService = indices.indexService(INDEX);
+            if (indexService != null) {
+                factories.add((EmailTokenizerFactory) indexService.analysisService().tokenizer("email_all"));
+            }
+        }
+        assertFalse(factories.isEmpty());
+        for (EmailTokenizerFactory factory : factories) {
+            assertSame(factory.threadTokenizer(), factory.threadTokenizer());
+        }
+
+        client().admin().indices().prepareClose(INDEX).get();
+        for (EmailTokenizerFactory factory : factories) {
+            assertNotSame(factory.threadTokenizer(), factory.threadTokenizer());
+        }
+    }
+
+
+    @Test
+    public void testBulkTokenizeBody() throws Exception {
+        EmailTokenizeRequest request = new EmailTokenizeRequest(INDEX);
+        RestEmailTokenizeAction.parseBody(new BytesArray("foo@example.com\r\n\nbar@example.com\n"), request);
+        assertArrayEquals(new String[]{"foo@example.com", "", "bar@example.com"}, request.addresses());
+        // blank lines have no tokens, and the results still line up with the lines
+        EmailTokenizeResponse response = client().execute(EmailTokenizeAction.INSTANCE, request.tokenizer("email_domain")).get();
+        assertThat(response.getAddressCount(), equalTo(3));
+        assertThat(response.getTokens(1).length, equalTo(0));
+        assertThat(response.getTokens(2)[0].getTerm(), equalTo("example.com"));
+
+        request = new EmailTokenizeRequest(INDEX);
+        RestEmailTokenizeAction.parseBody(new BytesArray(" [\"foo@example.com\", \"bar@example.com\"]"), request);
+        assertArrayEquals(new String[]{"foo@example.com", "bar@example.com"}, request.addresses());
+
+        request = new EmailTokenizeRequest(INDEX);
+        RestEmailTokenizeAction.parseBody(new BytesArray("{\"tokenizer\": \"email_all\", \"addresses\": [\"foo@example.com\"]}"), request);
+        assertThat(request.tokenizer(), equalTo("email_all"));
+        assertArrayEquals(new String[]{"foo@example.com"}, request.addresses());
+    }
+
+
+    private TokenizerStats tokenizerStats(String tokenizer) throws Exception {
+        EmailAnalysisStatsResponse response = client().execute(EmailAnalysisStatsAction.INSTANCE, new EmailAnalysisStatsRequest()).get();
+        assertThat(response.getNodes().length, equalTo(cluster().size()));
+        TokenizerStats stats = response.getTokenizers().get(tokenizer);
+        return stats == null ? new TokenizerStats() : stats;
+    }
+
+
     private List<AnalyzeResponse.AnalyzeToken> assertTokensContain(String email, String analyzer, String... expected) {
         List<AnalyzeResponse.AnalyzeToken> tokens = analyzeEmail(email, analyzer);
         for (String e : expected) {
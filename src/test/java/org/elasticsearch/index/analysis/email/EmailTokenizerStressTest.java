@@ -0,0 +1,441 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.analysis.EmailTokenizerFactory;
+import org.elasticsearch.index.settings.IndexSettingsService;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives many threads through analyzers built by randomly configured {@link EmailTokenizerFactory} instances. Each
+ * thread reuses its tokenizer through the analyzer's reuse strategy, as Elasticsearch does, in a random sequence of
+ * fully consumed streams, streams abandoned part way through, and streams which fail on malformed input. Every stream
+ * is checked against a reference produced by a fresh factory and a fresh tokenizer per input, so that state leaking
+ * from one input into the next, or between threads through a factory's shared caches, shows up as a mismatch.
+ *
+ * {@link #testThroughputScaling()} also logs the aggregate tokens per second from one thread up to the number of
+ * processors. Run it for longer with {@code -Dtests.multiplier=10}.
+ */
+public class EmailTokenizerStressTest extends BaseTokenStreamTestCase {
+    private static final ESLogger logger = Loggers.getLogger(EmailTokenizerStressTest.class);
+
+    private static final String[] NAMES = {"john", "Jane", "j.smith", "jsmith", "admin", "info", "sales", "kim-lee", "m_jones",
+            "first.last-name_x", "用户", "Ünïcode", "bob", "a"};
+    private static final String[] TAGS = {"+tag", "+news+letter", "+", "-list"};
+    private static final String[] DOMAINS = {"gmail.com", "googlemail.com", "Example.COM", "mail.example.co.uk", "a.b.example.net",
+            "example.io", "xn--fsqu00a.xn--4rr70v", "例子.广告", "bücher.example", "eu.mail.example.de"};
+    private static final String[] MALFORMED = {"", "foo", "foo@", "@example.com", "foo@@example.com", "foo@example",
+            "foo bar@example.com", "foo..bar@example.com", "foo@-example.com", "foo@example.com."};
+    private static final String[] CANONICAL_RULES = {"gmail.com, googlemail.com: lowercase ignore_dots strip_tag alias=gmail.com",
+            "*: strip_tag"};
+    private static final String[] LOCALPART_WORDS = {"j", "john", "smith", "jane", "sales", "info", "用户", "a"};
+
+    private static Environment environment;
+    private static PublicSuffixListService publicSuffixes;
+    private static EmailTokenizerStatsService statsService;
+
+    @BeforeClass
+    public static void setUpServices() throws IOException {
+        Settings nodeSettings = Settings.builder().put("path.home", createTempDir()).build();
+        environment = new Environment(nodeSettings);
+        publicSuffixes = new PublicSuffixListService(nodeSettings, environment);
+        statsService = new EmailTokenizerStatsService(Settings.EMPTY);
+    }
+
+    @AfterClass
+    public static void tearDownServices() {
+        environment = null;
+        publicSuffixes = null;
+        statsService = null;
+    }
+
+
+    @Test
+    public void testRandomReuse() throws Exception {
+        final int configurations = atLeast(10);
+        for (int c = 0; c < configurations; c++) {
+            final Settings settings = randomSettings(random());
+            final List<String> inputs = randomInputs(random(), atLeast(100), settings.get("mode", "single").equals("multi"));
+            final List<Result> reference = reference(settings, inputs);
+            final Analyzer analyzer = analyzer(factory(settings));
+            final int threads = 2 + random().nextInt(Math.max(3, Runtime.getRuntime().availableProcessors()));
+            final int iterations = atLeast(500);
+            final long[] seeds = new long[threads];
+            for (int i = 0; i < threads; i++) {
+                seeds[i] = random().nextLong();
+            }
+
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final long seed = seeds[t];
+                workers[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        final Random random = new Random(seed);
+                        try {
+                            start.await();
+                            for (int i = 0; i < iterations && failure.get() == null; i++) {
+                                final int input = random.nextInt(inputs.size());
+                                final Result expected = reference.get(input);
+                                // abandon some streams before their last token, leaving the tokenizer mid-address
+                                final int abandonAfter = expected.tokens.size() > 0 && random.nextInt(4) == 0
+                                        ? random.nextInt(expected.tokens.size()) : -1;
+                                final Result actual = analyze(analyzer, inputs.get(input), random.nextBoolean(), abandonAfter);
+                                if (abandonAfter == -1 ? !actual.equals(expected) : !actual.isAbandonedPrefixOf(expected)) {
+                                    throw new AssertionError("input [" + inputs.get(input) + "] with settings " + settings.getAsMap()
+                                            + (abandonAfter == -1 ? "" : " abandoned after [" + abandonAfter + "] tokens")
+                                            + "\nexpected: " + expected + "\nactual:   " + actual);
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                };
+                workers[t].start();
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            analyzer.close();
+            if (failure.get() != null) {
+                throw new AssertionError("configuration [" + c + "] failed", failure.get());
+            }
+        }
+    }
+
+
+    @Test
+    public void testThroughputScaling() throws Exception {
+        final Random random = random();
+        final List<Settings> configurations = new ArrayList<>();
+        configurations.add(Settings.builder().put("type", "email").build());
+        configurations.add(Settings.builder().put("type", "email").putArray("split_localpart", ".", "-", "_")
+                .put("allow_malformed", true).build());
+        configurations.add(randomSettings(random));
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(processors);
+        final long millis = 200L * RANDOM_MULTIPLIER;
+        final StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%-8s %8s %14s %10s", "config", "threads", "tokens/s", "speedup"));
+        for (int c = 0; c < configurations.size(); c++) {
+            final Settings settings = configurations.get(c);
+            final List<String> inputs = randomInputs(random, 1000, settings.get("mode", "single").equals("multi"));
+            final List<Result> reference = reference(settings, inputs);
+            double single = 0;
+            for (int threads : threadCounts) {
+                final Analyzer analyzer = analyzer(factory(settings));
+                // warm up with the same number of threads, so that each thread's tokenizer is created and compiled
+                measure(analyzer, inputs, reference, threads, millis / 2, random.nextLong());
+                final double tokensPerSecond = measure(analyzer, inputs, reference, threads, millis, random.nextLong());
+                analyzer.close();
+                if (threads == 1) {
+                    single = tokensPerSecond;
+                }
+                report.append(String.format(Locale.ROOT, "\n%-8d %8d %14.0f %9.2fx", c, threads, tokensPerSecond, tokensPerSecond / single));
+            }
+        }
+        logger.info("email tokenizer throughput, [{}] processors, [{}] ms per run\n{}", processors, millis, report);
+    }
+
+
+    /**
+     * Analyze random inputs on the given number of threads for the given time, checking the token count of each input
+     * against its reference.
+     * @return the aggregate number of tokens per second
+     */
+    private static double measure(final Analyzer analyzer, final List<String> inputs, final List<Result> reference, int threads,
+                                  final long millis, long seed) throws Exception {
+        final AtomicLong tokens = new AtomicLong();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        final Random seeds = new Random(seed);
+        for (int t = 0; t < threads; t++) {
+            final Random random = new Random(seeds.nextLong());
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    long count = 0;
+                    try {
+                        start.await();
+                        while (!stop.get()) {
+                            final int input = random.nextInt(inputs.size());
+                            final int produced = count(analyzer, inputs.get(input));
+                            if (produced != reference.get(input).tokens.size()) {
+                                throw new AssertionError("input [" + inputs.get(input) + "] produced [" + produced + "] tokens, expected "
+                                        + reference.get(input));
+                            }
+                            count += produced;
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    tokens.addAndGet(count);
+                }
+            };
+            workers[t].start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - begin;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        return tokens.get() / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+
+    /**
+     * @return the number of tokens of the given input, or 0 if it is rejected
+     */
+    private static int count(Analyzer analyzer, String input) throws IOException {
+        int count = 0;
+        try (TokenStream stream = analyzer.tokenStream("email", input)) {
+            stream.reset();
+            while (stream.incrementToken()) {
+                count++;
+            }
+            stream.end();
+        } catch (MalformedEmailException e) {
+            return 0;
+        }
+        return count;
+    }
+
+
+    /**
+     * @return the result of each input, each analyzed with a fresh tokenizer from a fresh factory
+     */
+    private static List<Result> reference(Settings settings, List<String> inputs) throws IOException {
+        final EmailTokenizerFactory factory = factory(settings);
+        final List<Result> results = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            final Analyzer analyzer = analyzer(factory);
+            results.add(analyze(analyzer, input, false, -1));
+            analyzer.close();
+        }
+        return results;
+    }
+
+
+    /**
+     * @param reader if true, the input is given to the analyzer as a reader rather than a string
+     * @param abandonAfter the number of tokens after which the stream is closed without being ended, or -1 to consume it
+     */
+    private static Result analyze(Analyzer analyzer, String input, boolean reader, int abandonAfter) throws IOException {
+        final Result result = new Result();
+        try (TokenStream stream = reader ? analyzer.tokenStream("email", new StringReader(input)) : analyzer.tokenStream("email", input)) {
+            final CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            final TypeAttribute type = stream.addAttribute(TypeAttribute.class);
+            final OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+            final PositionIncrementAttribute positionIncrement = stream.addAttribute(PositionIncrementAttribute.class);
+            try {
+                stream.reset();
+                while (result.tokens.size() != abandonAfter && stream.incrementToken()) {
+                    result.tokens.add(term + " " + type.type() + " " + offset.startOffset() + "-" + offset.endOffset() + " +"
+                            + positionIncrement.getPositionIncrement());
+                }
+                if (abandonAfter == -1) {
+                    stream.end();
+                    result.finalOffset = offset.endOffset();
+                }
+            } catch (MalformedEmailException e) {
+                result.error = e.getMessage();
+            }
+        }
+        return result;
+    }
+
+
+    private static Analyzer analyzer(final EmailTokenizerFactory factory) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                return new TokenStreamComponents(factory.create());
+            }
+        };
+    }
+
+
+    private static EmailTokenizerFactory factory(Settings settings) {
+        final Index index = new Index("stress");
+        final Settings indexSettings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT).build();
+        return new EmailTokenizerFactory(index, new IndexSettingsService(index, indexSettings), environment, statsService,
+                publicSuffixes, "email_stress", settings);
+    }
+
+
+    private static Settings randomSettings(Random random) {
+        final Settings.Builder builder = Settings.builder().put("type", "email");
+        if (random.nextInt(5) == 0) {
+            builder.put("mode", "multi");
+        }
+        if (random.nextBoolean()) {
+            builder.put("part", randomFrom(random, new String[]{"domain", "localpart", "whole", "registrable_domain"}));
+        }
+        builder.put("tokenize_domain", random.nextInt(4) != 0);
+        builder.put("domain_format", random.nextBoolean() ? "suffixes" : "reversed");
+        builder.put("allow_unicode", random.nextBoolean());
+        builder.put("idn_format", randomFrom(random, new String[]{"as_written", "ascii", "both"}));
+        final int minDomainDepth = 1 + random.nextInt(2);
+        builder.put("min_domain_depth", minDomainDepth);
+        builder.put("max_domain_depth", random.nextBoolean() ? 0 : minDomainDepth + random.nextInt(3));
+        builder.put("split_on_plus", random.nextBoolean());
+        builder.put("malformed_policy", randomFrom(random, new String[]{"reject", "keep_whole", "drop", "flag"}));
+        if (random.nextInt(4) == 0) {
+            builder.put("max_input_length", 20 + random.nextInt(60));
+        }
+        if (random.nextBoolean()) {
+            final List<String> delimiters = new ArrayList<>();
+            for (String delimiter : new String[]{".", "-", "_", "--"}) {
+                if (random.nextBoolean()) {
+                    delimiters.add(delimiter);
+                }
+            }
+            builder.putArray("split_localpart", delimiters.toArray(new String[delimiters.size()]));
+            builder.put("split_localpart_combined", random.nextBoolean());
+        }
+        builder.put("registrable_domain", random.nextInt(4) == 0);
+        if (random.nextInt(3) == 0) {
+            builder.put("canonicalize", true);
+            builder.put("canonicalize_localpart", random.nextBoolean());
+            builder.putArray("canonical_rules", CANONICAL_RULES);
+        }
+        builder.put("stack_positions", random.nextBoolean());
+        if (random.nextInt(4) == 0) {
+            builder.putArray("localpart_dictionary", LOCALPART_WORDS);
+        }
+        if (random.nextInt(4) == 0) {
+            builder.put("edge_ngrams", true);
+            builder.put("min_gram", 1 + random.nextInt(3));
+            builder.put("max_gram", 3 + random.nextInt(8));
+        }
+        builder.put("search_mode", random.nextInt(5) == 0);
+        if (random.nextBoolean()) {
+            builder.put("token_cache_size", 1 + random.nextInt(64));
+        }
+        if (random.nextInt(4) == 0) {
+            builder.put("hash_tokens", true);
+            builder.put("hash_bits", random.nextBoolean() ? 64 : 128);
+        }
+        return builder.build();
+    }
+
+
+    /**
+     * @return inputs which repeat, so that caches are hit, and include malformed and over length addresses
+     */
+    private static List<String> randomInputs(Random random, int count, boolean multi) {
+        final List<String> inputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (multi) {
+                final StringBuilder text = new StringBuilder();
+                final int addresses = random.nextInt(4);
+                for (int a = 0; a < addresses; a++) {
+                    text.append(randomFrom(random, new String[]{"To: ", ", ", " ", "; <"})).append(randomAddress(random));
+                }
+                inputs.add(text.toString());
+            } else if (random.nextInt(8) == 0) {
+                inputs.add(randomFrom(random, MALFORMED));
+            } else {
+                inputs.add(randomAddress(random));
+            }
+        }
+        return inputs;
+    }
+
+    private static String randomAddress(Random random) {
+        final StringBuilder address = new StringBuilder(randomFrom(random, NAMES));
+        if (random.nextInt(3) == 0) {
+            address.append(randomFrom(random, TAGS));
+        }
+        if (random.nextInt(10) == 0) {
+            // long enough to exceed any max_input_length, and the token cache's default max length
+            for (int i = 0; i < 300; i++) {
+                address.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return address.append('@').append(randomFrom(random, DOMAINS)).toString();
+    }
+
+    private static String randomFrom(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+
+    /**
+     * The tokens produced for an input, and how its stream ended.
+     */
+    private static final class Result {
+        final List<String> tokens = new ArrayList<>();
+        int finalOffset = -1;
+        String error;
+
+        /**
+         * @return true if this is the result of a stream which was abandoned, and its tokens begin the given result
+         */
+        boolean isAbandonedPrefixOf(Result complete) {
+            return error == null && complete.tokens.size() >= tokens.size() && complete.tokens.subList(0, tokens.size()).equals(tokens);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Result)) {
+                return false;
+            }
+            final Result other = (Result) o;
+            return tokens.equals(other.tokens) && finalOffset == other.finalOffset
+                    && (error == null ? other.error == null : error.equals(other.error));
+        }
+
+        @Override
+        public int hashCode() {
+            return tokens.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return tokens + " final offset " + finalOffset + (error == null ? "" : " error " + error);
+        }
+    }
+}
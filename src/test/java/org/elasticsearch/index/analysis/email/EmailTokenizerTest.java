@@ -1,13 +1,30 @@
 package org.elasticsearch.index.analysis.email;
 
 import org.apache.lucene.analysis.BaseTokenStreamTestCase;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttributeImpl;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.elasticsearch.index.analysis.DomainFormat;
 import org.elasticsearch.index.analysis.EmailPart;
+import org.elasticsearch.index.analysis.IdnFormat;
+import org.elasticsearch.index.analysis.InputMode;
+import org.elasticsearch.index.analysis.MalformedPolicy;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static org.elasticsearch.index.analysis.email.IsTokenizerWithTokenAndPosition.hasTokenAtOffset;
+import static org.hamcrest.Matchers.equalTo;
 
 /**
  * Joe Linn
@@ -64,12 +81,643 @@ public class EmailTokenizerTest extends BaseTokenStreamTestCase {
     }
 
 
+    @Test
+    public void testSplitLocalpartCombined() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo.bar_baz@gmail.com", EmailPart.LOCALPART);
+        tokenizer.setLocalpartSplitter(new LocalpartSplitter(new String[]{".", "_"}, true));
+        assertTokenStreamContents(tokenizer, stringArray("foo.bar_baz", "foo", "bar_baz", "foo.bar", "baz", "foo", "bar", "baz"),
+                new int[]{0, 0, 4, 0, 8, 0, 4, 8}, new int[]{11, 3, 11, 7, 11, 3, 7, 11}, null, null, null, 21, false);
+
+        // with a single delimiter, the combined split would repeat it
+        tokenizer = createTokenizer("foo.bar@gmail.com", EmailPart.LOCALPART);
+        tokenizer.setLocalpartSplitter(new LocalpartSplitter(new String[]{".", "_"}, true));
+        assertTokenStreamContents(tokenizer, stringArray("foo.bar", "foo", "bar"));
+    }
+
+
+    @Test
+    public void testTokenizeAll() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo+bar@a.gmail.com", null);
+        assertTokenStreamContents(tokenizer,
+                stringArray("a.gmail.com", "gmail.com", "com", "foo+bar", "foo", "foo+bar@a.gmail.com", "foo@a.gmail.com"),
+                new int[]{8, 10, 16, 0, 0, 0, 0},
+                new int[]{19, 19, 19, 7, 3, 19, 18},
+                stringArray("domain", "domain", "domain", "localpart", "localpart", "whole", "whole"),
+                null, null, 19, false);
+
+        tokenizer = createTokenizer("foo+bar@a.gmail.com", null);
+        tokenizer.setTokenizeDomian(false).setSplitOnPlus(false);
+        assertTokenStreamContents(tokenizer, stringArray("a.gmail.com", "foo+bar", "foo+bar@a.gmail.com"));
+    }
+
+
+    @Test
+    public void testAllowMalformed() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setAllowMalformed(true);
+        assertTokenStreamContents(tokenizer, stringArray("foo@bar@com"), new int[]{0}, new int[]{11}, stringArray("whole"), null, 11);
+    }
+
+
+    @Test
+    public void testMalformedPolicy() throws IOException {
+        EmailTokenizerStats stats = new EmailTokenizerStats();
+
+        EmailTokenizer tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.DROP).setStats(stats);
+        assertTokenStreamContents(tokenizer, new String[0], null, null, 11);
+
+        tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.FLAG).setStats(stats);
+        assertTokenStreamContents(tokenizer, stringArray("foo@bar@com"), new int[]{0}, new int[]{11}, stringArray("malformed"), null, 11);
+
+        tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.KEEP_WHOLE).setStats(stats);
+        // the same offsets as a flagged token: the malformed token spans the whole input
+        assertTokenStreamContents(tokenizer, stringArray("foo@bar@com"), new int[]{0}, new int[]{11}, stringArray("whole"), null, 11);
+
+        tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.REJECT).setStats(stats);
+        try {
+            assertTokenStreamContents(tokenizer, new String[0]);
+            fail("expected the input to be rejected");
+        } catch (MalformedEmailException e) {
+            assertThat(e.getMessage(), equalTo("Malformed email address: foo@bar@com"));
+            assertThat(e.getStackTrace().length, equalTo(0));
+        }
+
+        tokenizer = createTokenizer("foo@bar.com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.DROP).setStats(stats);
+        assertTokenStreamContents(tokenizer, stringArray("bar.com", "com", "foo", "foo@bar.com"));
+
+        for (MalformedPolicy policy : MalformedPolicy.values()) {
+            assertThat(stats.malformedCount(policy), equalTo(1L));
+        }
+        assertThat(stats.malformedCount(), equalTo(4L));
+    }
+
+
+    @Test
+    public void testStats() throws IOException {
+        EmailTokenizerStats stats = new EmailTokenizerStats();
+
+        EmailTokenizer tokenizer = createTokenizer("foo+bar@example.com", null);
+        tokenizer.setStats(stats);
+        assertTokenStreamContents(tokenizer, stringArray("example.com", "com", "foo+bar", "foo", "foo+bar@example.com", "foo@example.com"));
+
+        tokenizer = createTokenizer("foo@bar@com", null);
+        tokenizer.setMalformedPolicy(MalformedPolicy.FLAG).setStats(stats);
+        assertTokenStreamContents(tokenizer, stringArray("foo@bar@com"));
+
+        TokenizerStats snapshot = stats.stats();
+        assertThat(snapshot.getDocuments(), equalTo(2L));
+        assertThat(snapshot.getTokens(EmailPart.DOMAIN), equalTo(2L));
+        assertThat(snapshot.getTokens(EmailPart.LOCALPART), equalTo(2L));
+        assertThat(snapshot.getTokens(EmailPart.WHOLE), equalTo(2L));
+        assertThat(snapshot.getOtherTokens(), equalTo(1L));
+        assertThat(snapshot.getTotalTokens(), equalTo(7L));
+        assertThat(snapshot.getMalformed(MalformedPolicy.FLAG), equalTo(1L));
+        assertThat(snapshot.getInputLengths(0), equalTo(1L));
+        assertThat(snapshot.getInputLengths(1), equalTo(1L));
+        assertTrue(snapshot.getTime().nanos() > 0);
+
+        snapshot.add(stats.stats());
+        assertThat(snapshot.getDocuments(), equalTo(4L));
+        assertThat(snapshot.getTotalTokens(), equalTo(14L));
+
+        assertThat(TokenizerStats.lengthBucket(0), equalTo(0));
+        assertThat(TokenizerStats.lengthBucket(15), equalTo(0));
+        assertThat(TokenizerStats.lengthBucket(16), equalTo(1));
+        assertThat(TokenizerStats.lengthBucket(1023), equalTo(6));
+        assertThat(TokenizerStats.lengthBucket(1024), equalTo(7));
+        assertThat(TokenizerStats.lengthBucket(Integer.MAX_VALUE), equalTo(7));
+    }
+
+
+    @Test
+    public void testStatsTimeExcludesConsumer() throws Exception {
+        EmailTokenizerStats stats = new EmailTokenizerStats();
+        EmailTokenizer tokenizer = createTokenizer("foo+bar@example.com", null);
+        tokenizer.setStats(stats);
+        tokenizer.reset();
+        int tokens = 0;
+        while (tokenizer.incrementToken()) {
+            // a slow consumer, such as the indexing chain
+            Thread.sleep(50);
+            tokens++;
+        }
+        tokenizer.end();
+        tokenizer.close();
+
+        assertThat(tokens, equalTo(6));
+        final long nanos = stats.stats().getTime().nanos();
+        assertTrue(nanos > 0);
+        assertTrue("consumer time was counted: " + nanos, nanos < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+
+    @Test
+    public void testStatsTimeSampled() throws IOException {
+        EmailTokenizerStats stats = new EmailTokenizerStats();
+        EmailTokenizer tokenizer = new EmailTokenizer();
+        tokenizer.setStats(stats);
+        final int documents = EmailTokenizer.TIMED_DOCUMENT_INTERVAL * 2 + 1;
+        for (int i = 0; i < documents; i++) {
+            tokenizer.setReader(new StringReader("foo" + i + "@example.com"));
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                // consume
+            }
+            tokenizer.end();
+            tokenizer.close();
+        }
+
+        // the first document of each interval is timed, and the time of the rest is estimated from them
+        assertThat(stats.documentCount(), equalTo((long) documents));
+        assertThat(stats.timedDocumentCount(), equalTo(3L));
+        assertTrue(stats.stats().getTime().nanos() > 0);
+    }
+
+
+    @Test
+    public void testMaxInputLength() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo@example.com", EmailPart.WHOLE);
+        tokenizer.setMaxInputLength(15);
+        assertTokenStreamContents(tokenizer, stringArray("foo@example.com"), new int[]{0}, new int[]{15}, 15);
+
+        tokenizer = createTokenizer("foo@example.com", EmailPart.WHOLE);
+        tokenizer.setMaxInputLength(7).setAllowMalformed(true);
+        assertTokenStreamContents(tokenizer, stringArray("foo@exa"), new int[]{0}, new int[]{7}, 15);
+
+        tokenizer = createTokenizer("foo@example.com", EmailPart.WHOLE);
+        tokenizer.setMaxInputLength(7);
+        try {
+            assertTokenStreamContents(tokenizer, new String[0]);
+            fail("expected the input to be rejected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), equalTo("Email address exceeds max_input_length of 7 chars"));
+        }
+    }
+
+
+    @Test
+    public void testReuse() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo.bar_baz@gmail.com", EmailPart.LOCALPART);
+        tokenizer.setSplitLocalpart(new String[]{".", "_"});
+        assertTokenStreamContents(tokenizer, stringArray("foo.bar_baz", "foo", "bar_baz", "foo.bar", "baz"));
+
+        tokenizer.setReader(new StringReader("a+b@example.com"));
+        assertTokenStreamContents(tokenizer, stringArray("a+b", "a"), new int[]{0, 0}, new int[]{3, 1}, 15);
+
+        tokenizer.setReader(new StringReader(""));
+        assertTokenStreamContents(tokenizer, new String[0]);
+    }
+
+
+    @Test
+    public void testDomainDepth() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo@a.b.example.com", EmailPart.DOMAIN);
+        tokenizer.setMinDomainDepth(2);
+        assertTokenStreamContents(tokenizer, stringArray("a.b.example.com", "b.example.com", "example.com"),
+                new int[]{4, 6, 8}, new int[]{19, 19, 19}, 19);
+
+        tokenizer = createTokenizer("foo@a.b.example.com", EmailPart.DOMAIN);
+        tokenizer.setMaxDomainDepth(2);
+        assertTokenStreamContents(tokenizer, stringArray("example.com", "com"), new int[]{8, 16}, new int[]{19, 19}, 19);
+
+        tokenizer = createTokenizer("foo@example.com", EmailPart.DOMAIN);
+        tokenizer.setMinDomainDepth(3);
+        assertTokenStreamContents(tokenizer, new String[0]);
+    }
+
+
+    @Test
+    public void testReversedDomain() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo@a.b.example.com", EmailPart.DOMAIN);
+        tokenizer.setDomainFormat(DomainFormat.REVERSED);
+        assertTokenStreamContents(tokenizer, stringArray("com.example.b.a."), new int[]{4}, new int[]{19}, 19);
+
+        // depth limits only apply to suffixes
+        tokenizer = createTokenizer("foo@example.com", EmailPart.DOMAIN);
+        tokenizer.setDomainFormat(DomainFormat.REVERSED).setMinDomainDepth(3);
+        assertTokenStreamContents(tokenizer, stringArray("com.example."), new int[]{4}, new int[]{15}, 15);
+
+        assertThat(DomainFormat.reverse("a.b.example.com"), equalTo("com.example.b.a."));
+        assertThat(DomainFormat.reverse(".example.com."), equalTo("com.example."));
+        assertThat(DomainFormat.reverse(""), equalTo(""));
+    }
+
+
+    @Test
+    public void testRegistrableDomain() throws IOException {
+        PublicSuffixList publicSuffixList = PublicSuffixList.loadBundled();
+        EmailTokenizer tokenizer = createTokenizer("foo@mail.example.co.uk", null);
+        tokenizer.setPublicSuffixList(publicSuffixList).setSplitOnPlus(false);
+        assertTokenStreamContents(tokenizer,
+                stringArray("mail.example.co.uk", "example.co.uk", "co.uk", "uk", "example.co.uk", "foo", "foo@mail.example.co.uk"),
+                new int[]{4, 9, 17, 20, 9, 0, 0}, new int[]{22, 22, 22, 22, 22, 3, 22},
+                stringArray("domain", "domain", "domain", "domain", "registrable_domain", "localpart", "whole"), null, null, 22, false);
+
+        tokenizer = createTokenizer("foo@mail.example.co.uk", EmailPart.REGISTRABLE_DOMAIN);
+        tokenizer.setPublicSuffixList(publicSuffixList);
+        assertTokenStreamContents(tokenizer, stringArray("example.co.uk"));
+
+        // the domain is itself a public suffix
+        tokenizer = createTokenizer("foo@co.uk", EmailPart.REGISTRABLE_DOMAIN);
+        tokenizer.setPublicSuffixList(publicSuffixList);
+        assertTokenStreamContents(tokenizer, new String[0]);
+
+        tokenizer = createTokenizer("foo@mail.example.co.uk", EmailPart.REGISTRABLE_DOMAIN);
+        assertTokenStreamContents(tokenizer, new String[0]);
+    }
+
+
+    @Test
+    public void testMultiAddressList() throws IOException {
+        final String header = "\"Doe, Jane\" <jane@example.com>, bob+lists@mail.example.org; \"x@y.com\" (not an address) foo@bar, alice@example.com.";
+        EmailTokenizer tokenizer = createTokenizer(header, EmailPart.WHOLE);
+        tokenizer.setMode(InputMode.MULTI);
+        assertTokenStreamContents(tokenizer, stringArray("jane@example.com", "bob+lists@mail.example.org", "alice@example.com"),
+                new int[]{13, 32, 96}, new int[]{29, 58, 113}, header.length());
+
+        tokenizer = createTokenizer(header, EmailPart.DOMAIN);
+        tokenizer.setMode(InputMode.MULTI);
+        assertThat(tokenizer, hasTokenAtOffset("example.org", 47, 58));
+
+        tokenizer = createTokenizer("a+b@c.de, f@g.hi", null);
+        tokenizer.setMode(InputMode.MULTI);
+        assertTokenStreamContents(tokenizer,
+                stringArray("c.de", "de", "a+b", "a", "a+b@c.de", "a@c.de", "g.hi", "hi", "f", "f@g.hi"),
+                new int[]{4, 6, 0, 0, 0, 0, 12, 14, 10, 10},
+                new int[]{8, 8, 3, 1, 8, 7, 16, 16, 11, 16},
+                null, null, null, 16, false);
+
+        tokenizer = createTokenizer("no addresses here", null);
+        tokenizer.setMode(InputMode.MULTI);
+        assertTokenStreamContents(tokenizer, new String[0], null, null, 17);
+    }
+
+
+    @Test
+    public void testMultiLongInput() throws IOException {
+        // many buffers worth of text, including a candidate which is longer than the buffer
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < EmailTokenizer.MULTI_BUFFER_SIZE * 2; i++) {
+            text.append('x');
+        }
+        text.append("@example.com ");
+        final int addresses = 1000;
+        int[] starts = new int[addresses];
+        int[] ends = new int[addresses];
+        String[] expected = new String[addresses];
+        for (int i = 0; i < addresses; i++) {
+            text.append("some words between the addresses, ");
+            expected[i] = "user" + i + "@host" + i + ".example.com";
+            starts[i] = text.length();
+            text.append(expected[i]);
+            ends[i] = text.length();
+            text.append('\n');
+        }
+        EmailTokenizer tokenizer = createTokenizer(text.toString(), EmailPart.WHOLE);
+        tokenizer.setMode(InputMode.MULTI);
+        assertTokenStreamContents(tokenizer, expected, starts, ends, text.length());
+    }
+
+
+    @Test
+    public void testStackPositions() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("foo.bar+baz@a.example.com", null);
+        tokenizer.setStackPositions(true).setSplitLocalpart(new String[]{"."});
+        assertTokenStreamContents(tokenizer,
+                stringArray("a.example.com", "example.com", "com", "foo.bar+baz", "foo.bar", "foo", "bar+baz",
+                        "foo.bar+baz@a.example.com", "foo.bar@a.example.com"),
+                null, null, null, new int[]{1, 0, 0, 1, 0, 0, 0, 1, 0}, null, 25, false);
+
+        // each address starts a new position
+        tokenizer = createTokenizer("a@x.com b@y.com", EmailPart.DOMAIN).setMode(InputMode.MULTI).setStackPositions(true);
+        assertTokenStreamContents(tokenizer, stringArray("x.com", "com", "y.com", "com"), null, null, null,
+                new int[]{1, 0, 1, 0}, null, 15, false);
+    }
+
+
+    @Test
+    public void testCanonicalize() throws IOException {
+        CanonicalRules rules = CanonicalRules.parse(Arrays.asList(
+                "# comment",
+                "gmail.com, GoogleMail.com: lowercase ignore_dots strip_tag alias=gmail.com",
+                "yahoo.com: strip_tag=-",
+                ""));
+        assertEquals(3, rules.domainCount());
+
+        // the domain is lowercased in every token, and the canonical address follows the whole address tokens
+        EmailTokenizer tokenizer = createTokenizer("Foo.Bar+news@GoogleMail.COM", null).setCanonicalize(true, false, rules);
+        assertTokenStreamContents(tokenizer,
+                stringArray("googlemail.com", "com", "Foo.Bar+news", "Foo.Bar", "Foo.Bar+news@googlemail.com",
+                        "Foo.Bar@googlemail.com", "foobar@gmail.com"),
+                new int[]{13, 24, 0, 0, 0, 0, 0}, new int[]{27, 27, 12, 7, 27, 26, 27},
+                stringArray("domain", "domain", "localpart", "localpart", "whole", "whole", EmailTokenizer.CANONICAL_TYPE),
+                null, null, 27, false);
+
+        tokenizer = createTokenizer("Foo-bar@Yahoo.com", EmailPart.WHOLE).setCanonicalize(true, true, rules);
+        assertTokenStreamContents(tokenizer, stringArray("foo-bar@yahoo.com", "foo@yahoo.com"));
+
+        // no canonical token when it is the same as the whole address
+        tokenizer = createTokenizer("foo+bar@Example.com", null).setCanonicalize(true, false, rules);
+        assertTokenStreamContents(tokenizer,
+                stringArray("example.com", "com", "foo+bar", "foo", "foo+bar@example.com", "foo@example.com"));
+
+        // the canonical address is the search token
+        tokenizer = createTokenizer("F.o.o+x@gmail.com", null).setCanonicalize(true, false, rules).setSearchMode(true);
+        assertTokenStreamContents(tokenizer, stringArray("foo@gmail.com"), stringArray(EmailTokenizer.CANONICAL_TYPE));
+
+        // malformed input is lowercased following its first '@'
+        tokenizer = createTokenizer("Foo@Bar@Baz", null).setAllowMalformed(true).setCanonicalize(true, false, rules);
+        assertTokenStreamContents(tokenizer, stringArray("Foo@bar@baz"));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCanonicalRule() {
+        CanonicalRules.parse(Arrays.asList("gmail.com: lowercase remove_everything"));
+    }
+
+
+    @Test
+    public void testInternationalized() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("用户@例子.广告", null).setAllowUnicode(true);
+        assertTokenStreamContents(tokenizer, stringArray("例子.广告", "广告", "用户", "用户@例子.广告"),
+                new int[]{3, 6, 0, 0}, new int[]{8, 8, 2, 8}, null, null, null, 8, false);
+
+        tokenizer = createTokenizer("用户@例子.广告", EmailPart.DOMAIN).setAllowUnicode(true).setIdnFormat(IdnFormat.ASCII);
+        assertTokenStreamContents(tokenizer, stringArray("xn--fsqu00a.xn--4rr70v", "xn--4rr70v"), new int[]{3, 6}, new int[]{8, 8});
+
+        tokenizer = createTokenizer("用户@例子.广告", EmailPart.DOMAIN).setAllowUnicode(true).setIdnFormat(IdnFormat.BOTH)
+                .setStackPositions(true);
+        assertTokenStreamContents(tokenizer, stringArray("例子.广告", "广告", "xn--fsqu00a.xn--4rr70v", "xn--4rr70v"),
+                null, null, null, new int[]{1, 0, 0, 0}, null, 8, false);
+
+        // punycode domains are ASCII, and have a Unicode form
+        tokenizer = createTokenizer("foo@mail.xn--fsqu00a.xn--4rr70v", EmailPart.DOMAIN).setIdnFormat(IdnFormat.BOTH).setMinDomainDepth(2);
+        assertTokenStreamContents(tokenizer,
+                stringArray("mail.xn--fsqu00a.xn--4rr70v", "xn--fsqu00a.xn--4rr70v", "mail.例子.广告", "例子.广告"));
+
+        // ASCII domains are unchanged
+        tokenizer = createTokenizer("foo@Example.com", EmailPart.DOMAIN).setIdnFormat(IdnFormat.BOTH);
+        assertTokenStreamContents(tokenizer, stringArray("Example.com", "com"));
+        tokenizer = createTokenizer("foo@Example.com", EmailPart.DOMAIN).setIdnFormat(IdnFormat.ASCII).setTokenizeDomian(false);
+        assertTokenStreamContents(tokenizer, stringArray("Example.com"));
+
+        tokenizer = createTokenizer("пользователь@пример.рф", EmailPart.DOMAIN).setAllowUnicode(true).setIdnFormat(IdnFormat.ASCII)
+                .setSearchMode(true);
+        assertTokenStreamContents(tokenizer, stringArray("xn--e1afmkfd.xn--p1ai"));
+
+        // not accepted unless Unicode is allowed
+        tokenizer = createTokenizer("用户@例子.广告", null).setMalformedPolicy(MalformedPolicy.DROP);
+        assertTokenStreamContents(tokenizer, new String[0]);
+    }
+
+
+    @Test
+    public void testLocalpartDictionary() throws IOException {
+        final LocalpartDictionary dictionary = new LocalpartDictionary(Arrays.asList("john", "smith", "sales", "team"));
+        EmailTokenizer tokenizer = createTokenizer("JohnSmith1984+news@example.com", EmailPart.LOCALPART).setLocalpartDictionary(dictionary);
+        assertTokenStreamContents(tokenizer, stringArray("JohnSmith1984+news", "JohnSmith1984", "John", "Smith", "1984"),
+                new int[]{0, 0, 0, 4, 9}, new int[]{18, 13, 4, 9, 13});
+
+        // words follow the localpart splits
+        tokenizer = createTokenizer("salesteam@example.com", EmailPart.LOCALPART).setLocalpartDictionary(dictionary)
+                .setSplitLocalpart(new String[]{"-"});
+        assertTokenStreamContents(tokenizer, stringArray("salesteam", "sales", "team"));
+
+        // localparts with delimiters, and those which are a single word, are not segmented
+        tokenizer = createTokenizer("john.smith@example.com", EmailPart.LOCALPART).setLocalpartDictionary(dictionary);
+        assertTokenStreamContents(tokenizer, stringArray("john.smith"));
+        tokenizer = createTokenizer("smith@example.com", EmailPart.LOCALPART).setLocalpartDictionary(dictionary);
+        assertTokenStreamContents(tokenizer, stringArray("smith"));
+
+        // without splitting on '+', the '+' is a delimiter
+        tokenizer = createTokenizer("johnsmith+x@example.com", EmailPart.LOCALPART).setLocalpartDictionary(dictionary)
+                .setSplitOnPlus(false);
+        assertTokenStreamContents(tokenizer, stringArray("johnsmith+x"));
+
+        tokenizer = createTokenizer("johnsmith@example.com", null).setLocalpartDictionary(dictionary).setStackPositions(true);
+        assertTokenStreamContents(tokenizer, stringArray("example.com", "com", "johnsmith", "john", "smith", "johnsmith@example.com"),
+                null, null, null, new int[]{1, 0, 1, 0, 0, 1});
+    }
+
+
+    @Test
+    public void testEdgeNGrams() throws IOException {
+        EmailTokenizer tokenizer = createTokenizer("jsmith+x@acme.example.com", EmailPart.LOCALPART).setEdgeNGrams(2, 4);
+        assertTokenStreamContents(tokenizer, stringArray("jsmith+x", "jsmith", "js", "jsm", "jsmi"),
+                new int[]{0, 0, 0, 0, 0}, new int[]{8, 6, 2, 3, 4},
+                new String[]{"localpart", "localpart", "localpart_ngram", "localpart_ngram", "localpart_ngram"}, null, null, 25, false);
+
+        // each label, including the last, up to its whole length
+        tokenizer = createTokenizer("jsmith@acme.ex.com", EmailPart.DOMAIN).setEdgeNGrams(3, 4).setStackPositions(true);
+        assertTokenStreamContents(tokenizer, stringArray("acme.ex.com", "ex.com", "com", "acm", "acme", "com"),
+                new int[]{7, 12, 15, 7, 7, 15}, new int[]{18, 18, 18, 10, 11, 18},
+                new String[]{"domain", "domain", "domain", "domain_ngram", "domain_ngram", "domain_ngram"}, new int[]{1, 0, 0, 0, 0, 0},
+                null, 18, false);
+
+        // both parts, each followed by its n-grams
+        tokenizer = createTokenizer("ab@cd.io", null).setEdgeNGrams(1, 1).setSplitOnPlus(false);
+        assertTokenStreamContents(tokenizer, stringArray("cd.io", "io", "c", "i", "ab", "a", "ab@cd.io"));
+
+        // lengths are in code points, so surrogate pairs are not split
+        tokenizer = createTokenizer("\uD835\uDCB3\uD835\uDCB4z@ab.io", EmailPart.LOCALPART).setAllowUnicode(true).setEdgeNGrams(1, 2);
+        assertTokenStreamContents(tokenizer, stringArray("\uD835\uDCB3\uD835\uDCB4z", "\uD835\uDCB3", "\uD835\uDCB3\uD835\uDCB4"),
+                new int[]{0, 0, 0}, new int[]{5, 2, 4});
+
+        // n-grams of internationalized labels follow the form of the domain tokens, with the offsets of each label
+        tokenizer = createTokenizer("用户@例子.广告", EmailPart.DOMAIN).setAllowUnicode(true).setIdnFormat(IdnFormat.ASCII)
+                .setEdgeNGrams(5, 6).setTokenizeDomian(false);
+        assertTokenStreamContents(tokenizer, stringArray("xn--fsqu00a.xn--4rr70v", "xn--f", "xn--fs", "xn--4", "xn--4r"),
+                new int[]{3, 3, 3, 6, 6}, new int[]{8, 5, 5, 8, 8});
+
+        // no n-grams in search mode
+        tokenizer = createTokenizer("jsmith@acme.com", EmailPart.LOCALPART).setEdgeNGrams(1, 3).setSearchMode(true);
+        assertTokenStreamContents(tokenizer, stringArray("jsmith"));
+    }
+
+
+    @Test
+    public void testSearchMode() throws IOException {
+        assertSearchToken(createTokenizer("foo+bar@a.example.com", null), "foo@a.example.com", "whole");
+        assertSearchToken(createTokenizer("foo+bar@a.example.com", null).setSplitOnPlus(false), "foo+bar@a.example.com", "whole");
+        assertSearchToken(createTokenizer("foo@a.example.com", null), "foo@a.example.com", "whole");
+        assertSearchToken(createTokenizer("foo+bar@a.example.com", EmailPart.WHOLE), "foo+bar@a.example.com", "whole");
+        assertSearchToken(createTokenizer("foo+bar@a.example.com", EmailPart.LOCALPART), "foo", "localpart");
+        assertSearchToken(createTokenizer("foo.bar@a.example.com", EmailPart.LOCALPART), "foo.bar", "localpart");
+        assertSearchToken(createTokenizer("foo@a.example.com", EmailPart.DOMAIN), "a.example.com", "domain");
+        assertSearchToken(createTokenizer("foo@a.b.example.com", EmailPart.DOMAIN).setMaxDomainDepth(2), "example.com", "domain");
+        assertSearchToken(createTokenizer("foo@a.example.com", EmailPart.DOMAIN).setDomainFormat(DomainFormat.REVERSED),
+                "com.example.a.", "domain");
+        assertSearchToken(createTokenizer("foo@mail.example.co.uk", EmailPart.REGISTRABLE_DOMAIN)
+                .setPublicSuffixList(PublicSuffixList.loadBundled()), "example.co.uk", "registrable_domain");
+
+        // nothing is indexed for domains shallower than the minimum depth, so nothing can match
+        EmailTokenizer tokenizer = createTokenizer("foo@example.com", EmailPart.DOMAIN).setMinDomainDepth(3).setSearchMode(true);
+        assertTokenStreamContents(tokenizer, new String[0]);
+
+        tokenizer = createTokenizer("a+x@example.com, \"B\" <b@example.org>", null).setMode(InputMode.MULTI).setSearchMode(true);
+        assertTokenStreamContents(tokenizer, stringArray("a@example.com", "b@example.org"));
+    }
+
+    private void assertSearchToken(EmailTokenizer tokenizer, String token, String type) throws IOException {
+        tokenizer.setSearchMode(true);
+        assertTokenStreamContents(tokenizer, stringArray(token), null, null, stringArray(type), new int[]{1}, null, null, false);
+    }
+
+
+    @Test
+    public void testHashTokens() throws IOException {
+        TokenHasher hasher = new TokenHasher(64, "pepper");
+        EmailTokenizer tokenizer = createTokenizer("foo+bar@example.com", null);
+        tokenizer.setTokenHasher(new TokenHasher(64, "pepper"));
+        assertTokenStreamContents(tokenizer,
+                stringArray(hash(hasher, "example.com"), hash(hasher, "com"), hash(hasher, "foo+bar"), hash(hasher, "foo"),
+                        hash(hasher, "foo+bar@example.com"), hash(hasher, "foo@example.com")),
+                null, null, stringArray("domain", "domain", "localpart", "localpart", "whole", "whole"), null, null, 19, false);
+
+        assertThat(hash(new TokenHasher(64, null), ""), equalTo("AAAAAAAAAAA"));
+        String hash64 = hash(new TokenHasher(64, null), "foo@example.com");
+        String hash128 = hash(new TokenHasher(128, null), "foo@example.com");
+        assertThat(hash64.length(), equalTo(11));
+        assertThat(hash128.length(), equalTo(22));
+        assertTrue(hash64.matches("[A-Za-z0-9_-]+"));
+        // both widths begin with the high bits of the same hash
+        assertThat(hash128.substring(0, 10), equalTo(hash64.substring(0, 10)));
+        assertThat(hash(new TokenHasher(128, null), "foo@example.com"), equalTo(hash128));
+        assertFalse(hash(new TokenHasher(128, "salt"), "foo@example.com").equals(hash128));
+        assertFalse(hash(new TokenHasher(128, null), "foo@example.org").equals(hash128));
+    }
+
+
+    @Test
+    public void testTokenCache() throws IOException {
+        final String[] emails = {"Foo.Bar+news@GoogleMail.com", "foo.bar_baz@a.b.example.co.uk", "x@y.io", "foo@bar@com",
+                "FOO+x@Example.COM", "", "a_b.c@d.e.f.g.h"};
+        final CanonicalRules rules = CanonicalRules.parse(Arrays.asList("gmail.com, googlemail.com: ignore_dots strip_tag alias=gmail.com"));
+        final EmailTokenizerStats stats = new EmailTokenizerStats();
+        EmailTokenizer cachedTokenizer = new EmailTokenizer().setTokenCache(new TokenCache(4, 256)).setStats(stats);
+        EmailTokenizer tokenizer = new EmailTokenizer();
+        for (EmailTokenizer t : new EmailTokenizer[]{cachedTokenizer, tokenizer}) {
+            t.setAllowMalformed(true).setSplitLocalpart(new String[]{".", "_"}).setStackPositions(true)
+                    .setCanonicalize(true, false, rules).setPublicSuffixList(PublicSuffixList.loadBundled())
+                    .setTokenHasher(new TokenHasher(64, "salt"));
+        }
+
+        // replayed tokens are those which the input would produce, through evictions
+        final Random random = random();
+        final int iterations = atLeast(2000);
+        for (int i = 0; i < iterations; i++) {
+            final String email = emails[random.nextInt(emails.length)];
+            assertThat(email, tokens(cachedTokenizer, email), equalTo(tokens(tokenizer, email)));
+        }
+        TokenizerStats snapshot = stats.stats();
+        assertThat(snapshot.getDocuments(), equalTo((long) iterations));
+        assertThat(snapshot.getTokenCache(EmailTokenizerStats.CacheResult.HIT)
+                + snapshot.getTokenCache(EmailTokenizerStats.CacheResult.MISS), equalTo((long) iterations));
+        assertTrue(snapshot.getTokenCacheHitRate() > 0.3);
+        assertThat(snapshot.getTotalMalformed(), equalTo(stats.malformedCount(MalformedPolicy.KEEP_WHOLE)));
+        assertTrue(snapshot.getTotalMalformed() > 0);
+
+        final EmailTokenizerStats counts = new EmailTokenizerStats();
+        cachedTokenizer = new EmailTokenizer().setTokenCache(new TokenCache(2, 10)).setStats(counts).setAllowMalformed(true);
+        tokens(cachedTokenizer, "a@b.com");
+        tokens(cachedTokenizer, "a@b.com");
+        tokens(cachedTokenizer, "a@example.com");
+        tokens(cachedTokenizer, "a@bc");
+        tokens(cachedTokenizer, "a@bc");
+        assertThat(counts.stats().getTokenCache(EmailTokenizerStats.CacheResult.MISS), equalTo(2L));
+        assertThat(counts.stats().getTokenCache(EmailTokenizerStats.CacheResult.HIT), equalTo(2L));
+        assertThat(counts.stats().getTokenCache(EmailTokenizerStats.CacheResult.BYPASS), equalTo(1L));
+        assertThat(counts.malformedCount(), equalTo(2L));
+    }
+
+
+    /**
+     * @return the terms, types, offsets and position increments of the tokens produced for the given input
+     */
+    private List<String> tokens(EmailTokenizer tokenizer, String input) throws IOException {
+        final CharTermAttribute term = tokenizer.getAttribute(CharTermAttribute.class);
+        final TypeAttribute type = tokenizer.getAttribute(TypeAttribute.class);
+        final OffsetAttribute offset = tokenizer.getAttribute(OffsetAttribute.class);
+        final PositionIncrementAttribute positionIncrement = tokenizer.getAttribute(PositionIncrementAttribute.class);
+        final List<String> tokens = new ArrayList<>();
+        tokenizer.setReader(new StringReader(input));
+        tokenizer.reset();
+        while (tokenizer.incrementToken()) {
+            tokens.add(term + " " + type.type() + " " + offset.startOffset() + "-" + offset.endOffset() + " "
+                    + positionIncrement.getPositionIncrement());
+        }
+        tokenizer.end();
+        tokens.add("end " + offset.endOffset());
+        tokenizer.close();
+        return tokens;
+    }
+
+
+    @Test
+    public void testSteadyStateAllocation() throws IOException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation measurement is unavailable", threadMXBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue("thread allocation measurement is disabled", allocations.isThreadAllocatedMemoryEnabled());
+
+        final String[] emails = {"foo+bar@gmail.com", "foo.bar_baz@a.b.example.co.uk", "x@y.io", "foo@bar@com"};
+        final int documents = 20000;
+        StringReader[] readers = new StringReader[documents * 2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new StringReader(emails[i % emails.length]);
+        }
+        EmailTokenizer tokenizer = new EmailTokenizer();
+        tokenizer.setAllowMalformed(true).setSplitLocalpart(new String[]{".", "_"})
+                .setPublicSuffixList(PublicSuffixList.loadBundled()).setTokenHasher(new TokenHasher(128, "salt"));
+
+        // warm up, sizing the tokenizer's reusable buffers
+        consume(tokenizer, readers, 0, documents);
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = allocations.getThreadAllocatedBytes(threadId);
+        final int tokens = consume(tokenizer, readers, documents, readers.length);
+        final long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(tokens > documents);
+        // allow for a small constant overhead incurred by the measurement itself
+        assertTrue("allocated " + allocated + " bytes while tokenizing " + documents + " documents", allocated < 1024);
+    }
+
+
+    private int consume(EmailTokenizer tokenizer, StringReader[] readers, int from, int to) throws IOException {
+        int tokens = 0;
+        for (int i = from; i < to; i++) {
+            tokenizer.setReader(readers[i]);
+            tokenizer.reset();
+            while (tokenizer.incrementToken()) {
+                tokens++;
+            }
+            tokenizer.end();
+            tokenizer.close();
+        }
+        return tokens;
+    }
+
+
     private EmailTokenizer createTokenizer(String input, EmailPart part) throws IOException {
         EmailTokenizer tokenizer = new EmailTokenizer(part);
         tokenizer.setReader(new StringReader(input));
         return tokenizer;
     }
 
+    private String hash(TokenHasher hasher, String term) {
+        CharTermAttributeImpl attribute = new CharTermAttributeImpl();
+        attribute.append(term);
+        hasher.hash(attribute);
+        return attribute.toString();
+    }
+
     private String[] stringArray(String... strings) {
         return strings;
     }
@@ -0,0 +1,173 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Tests {@link LocalpartDictionary} on known localparts, and checks its segmentations of generated localparts against
+ * the best found by trying every segmentation.
+ */
+public class LocalpartDictionaryTest extends LuceneTestCase {
+    private static final List<String> WORDS = Arrays.asList("john", "smith", "sales", "team", "steam", "sale", "a", "an",
+            "and", "dr", "ew", "drew", "andrew", "Info");
+    private static final String CHARS = "adehijmnorstw07";
+
+    private final LocalpartDictionary dictionary = new LocalpartDictionary(WORDS);
+    private final LocalpartDictionary.Segmentation segmentation = new LocalpartDictionary.Segmentation();
+
+
+    @Test
+    public void testKnownLocalparts() {
+        assertThat(segment("johnsmith1984"), equalTo(list("john", "smith", "1984")));
+        assertThat(segment("JohnSmith"), equalTo(list("John", "Smith")));
+        // the longest leading words win ties
+        assertThat(segment("salesteam"), equalTo(list("sales", "team")));
+        assertThat(segment("andrewsmith"), equalTo(list("andrew", "smith")));
+        // chars outside of any word are skipped
+        assertThat(segment("jsmith"), equalTo(list("smith")));
+        assertThat(segment("xyz42"), equalTo(list("42")));
+        assertThat(segment("info2016team"), equalTo(list("info", "2016", "team")));
+        // a single word or number is the localpart itself
+        assertThat(segment("john"), equalTo(list()));
+        assertThat(segment("1984"), equalTo(list()));
+        assertThat(segment("xyz"), equalTo(list()));
+        // only localparts without delimiters are segmented
+        assertThat(segment("john.smith"), equalTo(list()));
+        assertThat(segment("john+smith"), equalTo(list()));
+    }
+
+
+    @Test
+    public void testOffsets() {
+        final char[] buffer = "x+johnsmith@".toCharArray();
+        assertTrue(dictionary.segment(buffer, 2, 11, segmentation));
+        assertThat(segmentation.count(), equalTo(2));
+        assertThat(segmentation.start(0), equalTo(2));
+        assertThat(segmentation.end(0), equalTo(6));
+        assertThat(segmentation.start(1), equalTo(6));
+        assertThat(segmentation.end(1), equalTo(11));
+    }
+
+
+    @Test
+    public void testLongLocalpart() {
+        final StringBuilder localpart = new StringBuilder();
+        while (localpart.length() <= LocalpartDictionary.MAX_LOCALPART_LENGTH) {
+            localpart.append("john");
+        }
+        assertThat(segment(localpart.toString()), equalTo(list()));
+        assertThat(segment(localpart.substring(0, LocalpartDictionary.MAX_LOCALPART_LENGTH)).size(),
+                equalTo(LocalpartDictionary.MAX_LOCALPART_LENGTH / 4));
+    }
+
+
+    @Test
+    public void testEmptyDictionary() {
+        try {
+            new LocalpartDictionary(Arrays.asList("", " "));
+            fail("Expected an empty dictionary to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("Localpart dictionary contains no words"));
+        }
+    }
+
+
+    @Test
+    public void testRamBytesUsed() {
+        assertThat(dictionary.wordCount(), equalTo(WORDS.size()));
+        assertThat(dictionary.ramBytesUsed(), greaterThan(0L));
+    }
+
+
+    @Test
+    public void testGeneratedLocalparts() {
+        final Random random = random();
+        final Set<String> words = new HashSet<>();
+        for (String word : WORDS) {
+            words.add(word.toLowerCase(Locale.ROOT));
+        }
+        final int iterations = atLeast(5000);
+        for (int i = 0; i < iterations; i++) {
+            final StringBuilder localpart = new StringBuilder();
+            final int length = random.nextInt(16);
+            for (int j = 0; j < length; j++) {
+                if (random.nextBoolean()) {
+                    localpart.append(WORDS.get(random.nextInt(WORDS.size())));
+                } else {
+                    localpart.append(CHARS.charAt(random.nextInt(CHARS.length())));
+                }
+            }
+            final String input = localpart.toString();
+            final List<String> segments = segment(input);
+            int matched = 0;
+            for (String segment : segments) {
+                final boolean digits = segment.matches("[0-9]+");
+                assertTrue(input + ": " + segments, digits || words.contains(segment.toLowerCase(Locale.ROOT)));
+                matched += segment.length();
+            }
+
+            final int[] best = best(input.toLowerCase(Locale.ROOT), words);
+            if (segments.isEmpty() && best[0] == 0 && best[1] == 1 || input.length() > LocalpartDictionary.MAX_LOCALPART_LENGTH) {
+                // the localpart itself, or too long to segment
+                continue;
+            }
+            assertThat(input + ": " + segments, input.length() - matched, equalTo(best[0]));
+            assertThat(input + ": " + segments, segments.size(), equalTo(best[1]));
+        }
+    }
+
+
+    /**
+     * @return the fewest unmatched chars of any segmentation of the given localpart, and then the fewest segments
+     */
+    private static int[] best(String localpart, Set<String> words) {
+        final int[][] best = new int[localpart.length() + 1][];
+        best[localpart.length()] = new int[]{0, 0};
+        for (int i = localpart.length() - 1; i >= 0; i--) {
+            int[] candidate = {best[i + 1][0] + 1, best[i + 1][1]};
+            for (int j = i + 1; j <= localpart.length(); j++) {
+                final String segment = localpart.substring(i, j);
+                final boolean digits = segment.matches("[0-9]+") && (i == 0 || !Character.isDigit(localpart.charAt(i - 1)))
+                        && (j == localpart.length() || !Character.isDigit(localpart.charAt(j)));
+                if (digits || words.contains(segment)) {
+                    final int[] rest = {best[j][0], best[j][1] + 1};
+                    if (rest[0] < candidate[0] || rest[0] == candidate[0] && rest[1] < candidate[1]) {
+                        candidate = rest;
+                    }
+                }
+            }
+            best[i] = candidate;
+        }
+        return best[0];
+    }
+
+
+    private List<String> segment(String localpart) {
+        final List<String> segments = new ArrayList<>();
+        final char[] buffer = localpart.toCharArray();
+        if (dictionary.segment(buffer, 0, buffer.length, segmentation)) {
+            for (int i = 0; i < segmentation.count(); i++) {
+                segments.add(localpart.substring(segmentation.start(i), segmentation.end(i)));
+            }
+        } else {
+            assertThat(segmentation.count(), equalTo(0));
+        }
+        return segments;
+    }
+
+
+    private static List<String> list(String... strings) {
+        return Arrays.asList(strings);
+    }
+}
@@ -0,0 +1,114 @@
+package org.elasticsearch.index.analysis.email;
+
+import com.google.common.base.Splitter;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Differential tests which ensure that {@link LocalpartSplitter} splits on each delimiter exactly as the per-delimiter
+ * Guava {@link Splitter} loop it replaced did.
+ */
+public class LocalpartSplitterTest extends LuceneTestCase {
+    private static final String[] DELIMITERS = {"-", "_", ".", "+", "--", "__", "-_", "é", "ſ"};
+    private static final String CHARS = "ab-_.+éſ";
+
+    private final LocalpartSplitter.Matches matches = new LocalpartSplitter.Matches();
+
+
+    @Test
+    public void testKnownLocalparts() {
+        assertAgreement("foo.bar_baz", ".", "_");
+        assertAgreement("foo--bar---baz", "-", "--");
+        assertAgreement("-foo-", "-");
+        assertAgreement("foo", "-", "_");
+        assertAgreement("a-_b", "-_", "-", "_");
+        assertAgreement("fooébar", "é");
+    }
+
+
+    @Test
+    public void testGeneratedLocalparts() {
+        final Random random = random();
+        final int iterations = atLeast(10000);
+        for (int i = 0; i < iterations; i++) {
+            final StringBuilder localpart = new StringBuilder();
+            final int length = random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                localpart.append(CHARS.charAt(random.nextInt(CHARS.length())));
+            }
+            final String[] delimiters = new String[1 + random.nextInt(DELIMITERS.length)];
+            for (int j = 0; j < delimiters.length; j++) {
+                delimiters[j] = DELIMITERS[random.nextInt(DELIMITERS.length)];
+            }
+            assertAgreement(localpart.toString(), delimiters);
+        }
+    }
+
+
+    @Test
+    public void testCombined() {
+        assertThat(combined("foo.bar_baz", ".", "_"), equalTo(list("foo", "bar", "baz")));
+        assertThat(combined("foo--bar-baz", "-", "--"), equalTo(list("foo", "bar", "baz")));
+        assertThat(combined("-foo._bar.", ".", "-", "_"), equalTo(list("foo", "bar")));
+        assertThat(combined("foo", ".", "_"), equalTo(list("foo")));
+    }
+
+
+    private void assertAgreement(String localpart, String... delimiters) {
+        final LocalpartSplitter splitter = new LocalpartSplitter(delimiters, false);
+        final char[] buffer = ("<" + localpart + "@").toCharArray();
+        splitter.match(buffer, 1, buffer.length - 1, matches);
+
+        final List<String> expected = new ArrayList<>();
+        for (String delimiter : delimiters) {
+            if (localpart.contains(delimiter)) {
+                expected.addAll(Splitter.on(delimiter).splitToList(localpart));
+            }
+        }
+        final List<String> actual = new ArrayList<>();
+        for (int d = 0; d < splitter.delimiterCount(); d++) {
+            int start = 1;
+            for (int match = matches.first(d); match != -1; match = matches.next(match)) {
+                actual.add(new String(buffer, start, matches.start(match) - start));
+                start = matches.start(match) + splitter.delimiterLength(d);
+            }
+            if (matches.first(d) != -1) {
+                actual.add(new String(buffer, start, buffer.length - 1 - start));
+            }
+        }
+        assertThat(localpart + " " + String.join(" ", delimiters), actual, equalTo(expected));
+    }
+
+
+    private List<String> combined(String localpart, String... delimiters) {
+        final LocalpartSplitter splitter = new LocalpartSplitter(delimiters, true);
+        final char[] buffer = localpart.toCharArray();
+        splitter.match(buffer, 0, buffer.length, matches);
+        final List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int cut = 0; cut <= matches.cutCount(); cut++) {
+            final int end = cut < matches.cutCount() ? matches.cutStart(cut) : buffer.length;
+            if (end > start) {
+                parts.add(new String(buffer, start, end - start));
+            }
+            if (cut < matches.cutCount()) {
+                start = matches.cutEnd(cut);
+            }
+        }
+        return parts;
+    }
+
+    private static List<String> list(String... values) {
+        final List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,136 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Cases are taken from the Public Suffix List's own test data, where they apply to the bundled list.
+ */
+public class PublicSuffixListTest extends LuceneTestCase {
+    private static PublicSuffixList list;
+
+    @BeforeClass
+    public static void loadList() throws IOException {
+        list = PublicSuffixList.loadBundled();
+    }
+
+    @AfterClass
+    public static void releaseList() {
+        list = null;
+    }
+
+
+    @Test
+    public void testListed() {
+        assertRegistrable("com", null);
+        assertRegistrable("example.com", "example.com");
+        assertRegistrable("b.example.com", "example.com");
+        assertRegistrable("a.b.example.com", "example.com");
+        assertRegistrable("uk.com", null);
+        assertRegistrable("example.uk.com", "example.uk.com");
+        assertRegistrable("b.example.uk.com", "example.uk.com");
+        assertRegistrable("co.uk", null);
+        assertRegistrable("mail.eu.example.co.uk", "example.co.uk");
+        assertRegistrable("test.ac", "test.ac");
+    }
+
+
+    @Test
+    public void testUnlisted() {
+        // the implicit "*" rule makes an unlisted top level domain a public suffix
+        assertRegistrable("example", null);
+        assertRegistrable("example.example", "example.example");
+        assertRegistrable("b.example.example", "example.example");
+        assertRegistrable("a.b.example.example", "example.example");
+    }
+
+
+    @Test
+    public void testWildcardsAndExceptions() {
+        assertRegistrable("ck", null);
+        assertRegistrable("test.ck", null);
+        assertRegistrable("b.test.ck", "b.test.ck");
+        assertRegistrable("a.b.test.ck", "b.test.ck");
+        assertRegistrable("www.ck", "www.ck");
+        assertRegistrable("www.www.ck", "www.ck");
+
+        assertRegistrable("kyoto.jp", null);
+        assertRegistrable("test.kyoto.jp", "test.kyoto.jp");
+        assertRegistrable("ide.kyoto.jp", null);
+        assertRegistrable("b.ide.kyoto.jp", "b.ide.kyoto.jp");
+        assertRegistrable("c.kobe.jp", null);
+        assertRegistrable("b.c.kobe.jp", "b.c.kobe.jp");
+        assertRegistrable("a.b.c.kobe.jp", "b.c.kobe.jp");
+        assertRegistrable("city.kobe.jp", "city.kobe.jp");
+        assertRegistrable("www.city.kobe.jp", "city.kobe.jp");
+    }
+
+
+    @Test
+    public void testIdn() {
+        assertRegistrable("xn--85x722f.xn--55qx5d.cn", "xn--85x722f.xn--55qx5d.cn");
+        assertRegistrable("www.xn--85x722f.xn--55qx5d.cn", "xn--85x722f.xn--55qx5d.cn");
+        assertRegistrable("shishi.xn--55qx5d.cn", "shishi.xn--55qx5d.cn");
+        assertRegistrable("xn--55qx5d.cn", null);
+        assertRegistrable("食狮.公司.cn", "食狮.公司.cn");
+        assertRegistrable("www.食狮.公司.cn", "食狮.公司.cn");
+        assertRegistrable("公司.cn", null);
+    }
+
+
+    @Test
+    public void testCase() {
+        assertRegistrable("WWW.Example.COM", "Example.COM");
+        assertRegistrable("mail.example.CO.UK", "example.CO.UK");
+    }
+
+
+    @Test
+    public void testRange() {
+        final char[] buffer = "foo@mail.example.co.uk>".toCharArray();
+        assertThat(list.publicSuffixStart(buffer, 4, buffer.length - 1), equalTo(17));
+        assertThat(list.registrableDomainStart(buffer, 4, buffer.length - 1), equalTo(9));
+        assertThat(list.registrableDomainStart(buffer, 17, buffer.length - 1), equalTo(-1));
+    }
+
+
+    @Test
+    public void testLoad() throws IOException {
+        final String rules = "// comment\n\ncom\n*.wild.com   trailing text\n!not.wild.com\nmid.*.com\n\tco.uk\n";
+        final PublicSuffixList custom = PublicSuffixList.load(new ByteArrayInputStream(rules.getBytes(StandardCharsets.UTF_8)));
+        assertThat(custom.ruleCount(), equalTo(4));
+        assertThat(custom.registrableDomain("a.b.com"), equalTo("b.com"));
+        assertThat(custom.registrableDomain("a.b.wild.com"), equalTo("a.b.wild.com"));
+        assertThat(custom.registrableDomain("a.not.wild.com"), equalTo("not.wild.com"));
+        assertThat(custom.registrableDomain("a.example.co.uk"), equalTo("example.co.uk"));
+        // unsupported wildcards are ignored
+        assertThat(custom.registrableDomain("a.mid.x.com"), equalTo("x.com"));
+    }
+
+
+    @Test
+    public void testFootprint() {
+        assertThat(list.ruleCount(), greaterThan(8000));
+        assertThat(list.ramBytesUsed(), lessThan(512L * 1024));
+    }
+
+
+    private void assertRegistrable(String domain, String expected) {
+        if (expected == null) {
+            assertThat(domain, list.registrableDomain(domain), nullValue());
+        } else {
+            assertThat(domain, list.registrableDomain(domain), equalTo(expected));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.elasticsearch.index.analysis.email;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the latency of searching an email field with its index time analyzer against the same tokenizer in
+ * {@code search_mode}, on a test cluster. Not run with the unit tests, as it indexes a large corpus; run it with
+ * {@code mvn test -Dtest=SearchModeBenchmark}. Results are logged.
+ */
+public class SearchModeBenchmark extends EmailAnalysisTestCase {
+    private static final int DOCUMENTS = 50000;
+    private static final int WARMUP_QUERIES = 1000;
+    private static final int QUERIES = 5000;
+
+    private static final String[] NAMES = {"john", "jane", "j.smith", "jsmith", "admin", "info", "sales", "support", "bob",
+            "alice", "noreply", "m_jones", "kim-lee", "dev", "ops"};
+    private static final String[] DOMAINS = {"gmail.com", "yahoo.com", "example.com", "mail.example.co.uk", "corp.example.org",
+            "a.b.example.net", "outlook.com", "eu.mail.example.de", "example.io", "hr.corp.example.org"};
+
+    @Test
+    public void testLatency() {
+        final Random random = new Random(0);
+        final String[] addresses = new String[DOCUMENTS];
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            addresses[i] = address(random);
+            bulk.add(client().prepareIndex(INDEX, "test").setSource("email", addresses[i]));
+            if (bulk.numberOfActions() == 5000) {
+                assertFalse(bulk.get().hasFailures());
+                bulk = client().prepareBulk();
+            }
+        }
+        if (bulk.numberOfActions() > 0) {
+            assertFalse(bulk.get().hasFailures());
+        }
+        refresh();
+        client().admin().indices().prepareForceMerge(INDEX).setMaxNumSegments(1).get();
+
+        // look up indexed addresses, with a different tag for some of them
+        final String[] queries = new String[QUERIES];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = addresses[random.nextInt(addresses.length)];
+            if (random.nextInt(4) == 0) {
+                queries[i] = queries[i].replaceFirst("(\\+tag\\d)?@", "+other@");
+            }
+        }
+        final String indexTime = measure("email_all", queries);
+        final String searchTime = measure("email_search", queries);
+        logger.info("search latency over [{}] documents, [{}] queries\n{}\n{}\n{}", DOCUMENTS, QUERIES,
+                String.format(Locale.ROOT, "%-14s %10s %10s %10s %10s %14s", "analyzer", "mean us", "p50 us", "p99 us", "p999 us", "hits/query"),
+                indexTime, searchTime);
+    }
+
+
+    private String measure(String analyzer, String[] queries) {
+        for (int i = 0; i < WARMUP_QUERIES; i++) {
+            search(analyzer, queries[i % queries.length]);
+        }
+        final long[] nanos = new long[queries.length];
+        long hits = 0;
+        for (int i = 0; i < queries.length; i++) {
+            final long start = System.nanoTime();
+            hits += search(analyzer, queries[i]);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return String.format(Locale.ROOT, "%-14s %10.1f %10.1f %10.1f %10.1f %14.1f", analyzer, total / 1000.0 / nanos.length,
+                percentile(nanos, 0.5), percentile(nanos, 0.99), percentile(nanos, 0.999), (double) hits / queries.length);
+    }
+
+    private long search(String analyzer, String address) {
+        return client().prepareSearch(INDEX).setSize(10)
+                .setQuery(QueryBuilders.matchQuery("email", address).analyzer(analyzer))
+                .get().getHits().getTotalHits();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1000.0;
+    }
+
+    private static String address(Random random) {
+        StringBuilder address = new StringBuilder(NAMES[random.nextInt(NAMES.length)]);
+        address.append(random.nextInt(2000));
+        if (random.nextInt(4) == 0) {
+            address.append('+').append("tag").append(random.nextInt(10));
+        }
+        return address.append('@').append(DOMAINS[random.nextInt(DOMAINS.length)]).toString();
+    }
+}
@@ -0,0 +1,191 @@
+package org.elasticsearch.index.mapper.email;
+
+import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.analysis.email.EmailAnalysisTestCase;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.email.EmailDomainQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+public class EmailFieldMapperIntegrationTest extends EmailAnalysisTestCase {
+    @Test
+    public void testSubFields() {
+        client().prepareIndex(INDEX, "test", "1").setSource("email_parsed", "foo+bar-baz@email.com").get();
+        client().prepareIndex(INDEX, "test", "2").setSource("email_parsed", "foo+barbaz@email.net").get();
+        client().prepareIndex(INDEX, "test", "3").setSource("email_parsed", "foo+bar_baz@a.email.net").get();
+        refresh();
+
+        assertHits("email_parsed", "foo+bar-baz@email.com", 1);
+        assertHits("email_parsed", "foo@email.com", 1);
+        assertHits("email_parsed", "email.com", 0);
+
+        assertHits("email_parsed.localpart", "foo", 3);
+        assertHits("email_parsed.localpart", "foo+barbaz", 1);
+        assertHits("email_parsed.localpart", "baz", 2);
+
+        assertHits("email_parsed.domain", "email.net", 2);
+        assertHits("email_parsed.domain", "a.email.net", 1);
+        assertHits("email_parsed.domain", "net", 2);
+
+        Terms domains = client().prepareSearch(INDEX)
+                .addAggregation(AggregationBuilders.terms("domains").field("email_parsed.registrable_domain"))
+                .get().getAggregations().get("domains");
+        assertThat(domains.getBuckets().size(), equalTo(2));
+        assertThat(domains.getBucketByKey("email.net").getDocCount(), equalTo(2L));
+        assertThat(domains.getBucketByKey("email.com").getDocCount(), equalTo(1L));
+    }
+
+
+    @Test
+    public void testDomainDepth() {
+        client().prepareIndex(INDEX, "test", "1").setSource("email_shallow", "foo@a.b.email.com").get();
+        refresh();
+
+        assertHits("email_shallow.domain", "email.com", 1);
+        assertHits("email_shallow.domain", "b.email.com", 0);
+        assertHits("email_shallow.domain", "com", 0);
+        // the registrable domain does not depend on which domain tokens are emitted
+        assertHits("email_shallow.registrable_domain", "email.com", 1);
+    }
+
+
+    @Test
+    public void testReversedDomain() {
+        client().prepareIndex(INDEX, "test", "1").setSource("email_reversed", "foo@email.com").get();
+        client().prepareIndex(INDEX, "test", "2").setSource("email_reversed", "foo@a.b.email.com").get();
+        client().prepareIndex(INDEX, "test", "3").setSource("email_reversed", "foo@emails.com").get();
+        refresh();
+
+        assertHits("email_reversed.domain", "com.email.b.a.", 1);
+        assertHits("email_reversed.domain", "email.com", 0);
+
+        assertDomainHits("email.com", 2);
+        assertDomainHits("b.email.com", 1);
+        assertDomainHits("com", 3);
+        assertDomainHits("a.email.com", 0);
+    }
+
+
+    @Test
+    public void testMalformed() {
+        try {
+            client().prepareIndex(INDEX, "test", "1").setSource("email_parsed", "foo@bar@com").get();
+            fail("expected the document to be rejected");
+        } catch (MapperParsingException e) {
+            assertThat(e.getMessage(), equalTo("failed to parse [email_parsed]"));
+        }
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMapping() throws IOException {
+        GetMappingsResponse response = client().admin().indices().prepareGetMappings(INDEX).setTypes("test").get();
+        Map<String, Object> properties = (Map<String, Object>) response.mappings().get(INDEX).get("test").getSourceAsMap().get("properties");
+        Map<String, Object> mapping = (Map<String, Object>) properties.get("email_parsed");
+        assertThat((String) mapping.get("type"), equalTo("email"));
+        assertThat((Boolean) mapping.get("registrable_domain"), equalTo(true));
+        assertThat(mapping.get("split_localpart").toString(), equalTo("[-, _]"));
+
+        mapping = (Map<String, Object>) properties.get("email_shallow");
+        assertThat((Integer) mapping.get("min_domain_depth"), equalTo(2));
+        assertThat((Integer) mapping.get("max_domain_depth"), equalTo(2));
+
+        mapping = (Map<String, Object>) properties.get("email_reversed");
+        assertThat((String) mapping.get("domain_format"), equalTo("reversed"));
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMerge() throws IOException {
+        // an update which repeats the existing options is accepted, and may change options which do not affect terms
+        assertAcked(client().admin().indices().preparePutMapping(INDEX).setType("test").setSource(jsonBuilder().startObject()
+                .startObject("properties").startObject("email_reversed")
+                .field("type", "email").field("domain_format", "reversed").field("ignore_malformed", true)
+                .endObject().endObject().endObject()).get());
+        GetMappingsResponse response = client().admin().indices().prepareGetMappings(INDEX).setTypes("test").get();
+        Map<String, Object> properties = (Map<String, Object>) response.mappings().get(INDEX).get("test").getSourceAsMap().get("properties");
+        assertThat((Boolean) ((Map<String, Object>) properties.get("email_reversed")).get("ignore_malformed"), equalTo(true));
+
+        assertMergeConflict("email_reversed", jsonBuilder().startObject().field("type", "email").field("domain_format", "suffixes")
+                .endObject(), "[domain_format]");
+        assertMergeConflict("email_shallow", jsonBuilder().startObject().field("type", "email").field("min_domain_depth", 2)
+                .field("max_domain_depth", 3).field("registrable_domain", true).endObject(), "[max_domain_depth]");
+        assertMergeConflict("email_parsed", jsonBuilder().startObject().field("type", "email").array("split_localpart", "-")
+                .field("split_on_plus", false).field("registrable_domain", true).endObject(), "[split_localpart]");
+        assertMergeConflict("email_parsed", jsonBuilder().startObject().field("type", "email").array("split_localpart", "-", "_")
+                .field("split_on_plus", false).field("registrable_domain", true).endObject(), "[split_on_plus]");
+        assertMergeConflict("email_parsed", jsonBuilder().startObject().field("type", "email").array("split_localpart", "-", "_")
+                .field("tokenize_domain", false).field("registrable_domain", true).endObject(), "[tokenize_domain]");
+
+        // nothing was changed by the rejected updates
+        response = client().admin().indices().prepareGetMappings(INDEX).setTypes("test").get();
+        properties = (Map<String, Object>) response.mappings().get(INDEX).get("test").getSourceAsMap().get("properties");
+        assertThat((String) ((Map<String, Object>) properties.get("email_reversed")).get("domain_format"), equalTo("reversed"));
+
+        // adding the registrable domain replaces the field's tokenizers, and documents are still parsed before and after
+        client().prepareIndex(INDEX, "test", "1").setSource("email_reversed", "foo@mail.example.co.uk").get();
+        assertAcked(client().admin().indices().preparePutMapping(INDEX).setType("test").setSource(jsonBuilder().startObject()
+                .startObject("properties").startObject("email_reversed")
+                .field("type", "email").field("domain_format", "reversed").field("registrable_domain", true)
+                .endObject().endObject().endObject()).get());
+        client().prepareIndex(INDEX, "test", "2").setSource("email_reversed", "bar@mail.example.co.uk").get();
+        refresh();
+        assertDomainHits("example.co.uk", 2);
+        assertHits("email_reversed.registrable_domain", "example.co.uk", 1);
+    }
+
+
+    private void assertMergeConflict(String field, XContentBuilder mapping, String option) throws IOException {
+        try {
+            client().admin().indices().preparePutMapping(INDEX).setType("test").setSource(jsonBuilder().startObject()
+                    .startObject("properties").rawField(field, mapping.bytes()).endObject().endObject()).get();
+            fail("changing " + option + " of [" + field + "] should conflict");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("mapper [" + field + "] has different " + option + " values"));
+        }
+    }
+
+
+    @Test
+    public void testRegistrableDomain() {
+        client().prepareIndex(INDEX, "test", "1").setSource("email_parsed", "foo@mail.eu.example.co.uk").get();
+        client().prepareIndex(INDEX, "test", "2").setSource("email_parsed", "bar@example.co.uk").get();
+        client().prepareIndex(INDEX, "test", "3").setSource("email_parsed", "baz@a.b.email.com").get();
+        // the domain is itself a public suffix, so has no registrable domain
+        client().prepareIndex(INDEX, "test", "4").setSource("email_parsed", "qux@co.uk").get();
+        refresh();
+
+        Terms domains = client().prepareSearch(INDEX)
+                .addAggregation(AggregationBuilders.terms("domains").field("email_parsed.registrable_domain"))
+                .get().getAggregations().get("domains");
+        assertThat(domains.getBuckets().size(), equalTo(2));
+        assertThat(domains.getBucketByKey("example.co.uk").getDocCount(), equalTo(2L));
+        assertThat(domains.getBucketByKey("email.com").getDocCount(), equalTo(1L));
+        assertHits("email_parsed.domain", "co.uk", 3);
+    }
+
+
+    private void assertHits(String field, String term, long expected) {
+        long hits = client().prepareSearch(INDEX).setQuery(QueryBuilders.termQuery(field, term)).get().getHits().getTotalHits();
+        assertThat(field + ":" + term, hits, equalTo(expected));
+    }
+
+    private void assertDomainHits(String domain, long expected) {
+        long hits = client().prepareSearch(INDEX).setQuery(new EmailDomainQueryBuilder("email_reversed.domain", domain))
+                .get().getHits().getTotalHits();
+        assertThat(domain, hits, equalTo(expected));
+    }
+}
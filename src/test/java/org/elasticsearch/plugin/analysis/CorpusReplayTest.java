@@ -0,0 +1,60 @@
+package org.elasticsearch.plugin.analysis;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class CorpusReplayTest extends LuceneTestCase {
+    @Test
+    public void testReplay() throws Exception {
+        Path home = createTempDir();
+        Path corpus = home.resolve("corpus.txt");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            // a blank line, a malformed address, and windows' ends falling within lines and on CRLF line endings
+            lines.append(i % 10 == 0 ? "malformed" + i : "user" + i + "+tag@mail.example" + (i % 3) + ".com");
+            lines.append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i == 500) {
+                lines.append('\n');
+            }
+        }
+        Files.write(corpus, lines.toString().getBytes(StandardCharsets.UTF_8));
+        Settings nodeSettings = Settings.builder().put("path.home", home).build();
+        Settings indexSettings = Settings.builder()
+                .put("analysis.tokenizer.email_all.type", "email")
+                .put("analysis.tokenizer.email_all.malformed_policy", "drop")
+                .build();
+
+        for (int threads : new int[]{1, 3}) {
+            CorpusReplay.Report report = CorpusReplay.replay(nodeSettings, indexSettings, "email_all", corpus, threads, 1, 64);
+            assertThat(report.documents, equalTo(1000L));
+            assertThat(report.malformed, equalTo(100L));
+            // three domain tokens, two localpart tokens and two whole address tokens for each well formed address
+            assertThat(report.tokens, equalTo(900L * 7));
+            assertThat(report.latencies.getTotalCount(), equalTo(1000L));
+            assertThat(report.docsPerSecond(), greaterThan(0d));
+        }
+    }
+
+
+    @Test
+    public void testReplayRequiresEmailTokenizer() throws IOException, InterruptedException {
+        Path home = createTempDir();
+        Path corpus = Files.write(home.resolve("corpus.txt"), "foo@example.com\n".getBytes(StandardCharsets.UTF_8));
+        Settings indexSettings = Settings.builder().put("index.analysis.tokenizer.whitespace.type", "whitespace").build();
+        try {
+            CorpusReplay.replay(Settings.builder().put("path.home", home).build(), indexSettings, "whitespace", corpus, 1, 0, 1024);
+            fail("only email tokenizers may be replayed");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("failed to find email tokenizer [whitespace] in the index settings"));
+        }
+    }
+}